@@ -0,0 +1,247 @@
+package com.javallm.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.javallm.config.MilvusConfig.MilvusProperties;
+import com.javallm.config.RetrievalConfig.RetrievalProperties;
+import com.javallm.services.MilvusService;
+
+import io.milvus.v2.service.vector.request.data.FloatVec;
+
+/**
+ * Sweeps ANN search parameters against the live collection and reports QPS
+ * versus recall@k. Ground truth is an exact brute-force search over every
+ * stored vector, and the queries are drawn from them; collections larger
+ * than benchmark.index.max-corpus are refused rather than measured wrong.
+ *
+ * Run with: ./gradlew runIndexBenchmark
+ */
+@Component
+@Profile("benchmark")
+public class IndexBenchmark implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexBenchmark.class);
+
+    private final MilvusService milvusService;
+    private final MilvusProperties milvusProperties;
+    private final RetrievalProperties retrievalProperties;
+    private final ApplicationContext applicationContext;
+
+    @Value("${benchmark.index.queries:200}")
+    private int queryCount;
+    @Value("${benchmark.index.k:7}")
+    private int k;
+    @Value("${benchmark.index.max-corpus:50000}")
+    private int maxCorpus;
+    @Value("${benchmark.index.threads:4}")
+    private int threads;
+    @Value("${benchmark.index.ef-values:16,32,64,128,256}")
+    private List<Integer> efValues;
+    @Value("${benchmark.index.nprobe-values:4,8,16,32,64}")
+    private List<Integer> nprobeValues;
+
+    public IndexBenchmark(MilvusService milvusService, MilvusProperties milvusProperties,
+            RetrievalProperties retrievalProperties, ApplicationContext applicationContext) {
+        this.milvusService = milvusService;
+        this.milvusProperties = milvusProperties;
+        this.retrievalProperties = retrievalProperties;
+        this.applicationContext = applicationContext;
+    }
+
+    /**
+     * Result of one parameter set.
+     */
+    private record Measurement(String label, double qps, double recall, double meanMs, double p95Ms) {
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        try {
+            runBenchmark();
+        } finally {
+            System.exit(SpringApplication.exit(applicationContext, () -> 0));
+        }
+    }
+
+    private void runBenchmark() throws Exception {
+        // The searches run over the whole collection, so ground truth has to as well
+        long stored = milvusService.countChunks();
+        if (stored > maxCorpus) {
+            logger.error("Collection holds {} chunks, more than benchmark.index.max-corpus={}. Recall would "
+                    + "count hits outside the ground truth corpus as misses; raise max-corpus to at least {} "
+                    + "or benchmark a smaller collection.", stored, maxCorpus, stored);
+            return;
+        }
+        Map<Long, float[]> corpus = milvusService.sampleVectors(maxCorpus);
+        if (corpus.isEmpty()) {
+            logger.warn("Collection is empty, nothing to benchmark.");
+            return;
+        }
+        String metric = milvusProperties.getIndex().getMetric();
+        List<Long> ids = new ArrayList<>(corpus.keySet());
+        List<float[]> vectors = new ArrayList<>(corpus.values());
+        if ("COSINE".equals(metric)) {
+            vectors.replaceAll(IndexBenchmark::normalize);
+        }
+
+        // Spread the queries evenly over the sample
+        int step = Math.max(1, vectors.size() / queryCount);
+        List<float[]> queries = new ArrayList<>();
+        for (int i = 0; i < vectors.size() && queries.size() < queryCount; i += step) {
+            queries.add(vectors.get(i));
+        }
+        logger.info("Computing exact top-{} for {} queries over {} vectors ({}).", k, queries.size(),
+                vectors.size(), metric);
+        List<Set<Long>> groundTruth = new ArrayList<>();
+        for (float[] query : queries) {
+            groundTruth.add(exactTopK(query, ids, vectors, metric));
+        }
+
+        List<Measurement> measurements = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> sweep : sweepParameters().entrySet()) {
+            measurements.add(measure(sweep.getKey(), sweep.getValue(), queries, groundTruth));
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%nIndex %s (%s), k=%d, %d queries, %d threads%n",
+                milvusProperties.getIndex().getType(), milvusProperties.getIndex().getParams(), k, queries.size(),
+                threads));
+        report.append(String.format("%-28s %10s %10s %10s %10s%n", "params", "QPS", "recall@k", "mean ms",
+                "p95 ms"));
+        for (Measurement m : measurements) {
+            report.append(String.format("%-28s %10.1f %10.4f %10.2f %10.2f%n", m.label(), m.qps(), m.recall(),
+                    m.meanMs(), m.p95Ms()));
+        }
+        System.out.println(report);
+    }
+
+    /**
+     * Named profiles first, then a grid over the knob that matters for the
+     * configured index type.
+     */
+    private Map<String, Map<String, Object>> sweepParameters() {
+        Map<String, Map<String, Object>> sweep = new LinkedHashMap<>();
+        retrievalProperties.getProfiles().forEach((name, params) -> sweep.put("profile:" + name, params));
+
+        String indexType = milvusService.getIndexType();
+        if ("HNSW".equals(indexType)) {
+            efValues.forEach(ef -> sweep.put("ef=" + ef, Map.of("ef", ef)));
+        } else if (indexType.startsWith("IVF")) {
+            nprobeValues.forEach(nprobe -> sweep.put("nprobe=" + nprobe, Map.of("nprobe", nprobe)));
+        } else if ("DISKANN".equals(indexType)) {
+            efValues.forEach(list -> sweep.put("search_list=" + list, Map.of("search_list", list)));
+        }
+        return sweep;
+    }
+
+    private Measurement measure(String label, Map<String, Object> params, List<float[]> queries,
+            List<Set<Long>> groundTruth) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Warm up caches and connections before timing
+            milvusService.searchIds(new FloatVec(queries.get(0)), k, params);
+
+            List<Future<long[]>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < queries.size(); i++) {
+                final int index = i;
+                futures.add(executor.submit(() -> {
+                    long queryStart = System.nanoTime();
+                    List<Long> hits = milvusService.searchIds(new FloatVec(queries.get(index)), k, params);
+                    long elapsed = System.nanoTime() - queryStart;
+                    long found = hits.stream().filter(groundTruth.get(index)::contains).count();
+                    return new long[] { elapsed, found };
+                }));
+            }
+
+            long[] latencies = new long[futures.size()];
+            long totalFound = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                long[] result = futures.get(i).get();
+                latencies[i] = result[0];
+                totalFound += result[1];
+            }
+            double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            double meanMs = Arrays.stream(latencies).average().orElse(0) / 1e6;
+            double p95Ms = latencies[(int) Math.min(latencies.length - 1, Math.ceil(latencies.length * 0.95) - 1)]
+                    / 1e6;
+            double recall = (double) totalFound / ((long) queries.size() * k);
+            return new Measurement(label, queries.size() / wallSeconds, recall, meanMs, p95Ms);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Set<Long> exactTopK(float[] query, List<Long> ids, List<float[]> vectors, String metric) {
+        // Min-heap on score keeps the k best seen so far
+        PriorityQueue<double[]> heap = new PriorityQueue<>(k + 1, (a, b) -> Double.compare(a[0], b[0]));
+        for (int i = 0; i < vectors.size(); i++) {
+            double score = similarity(query, vectors.get(i), metric);
+            if (heap.size() < k) {
+                heap.add(new double[] { score, i });
+            } else if (score > heap.peek()[0]) {
+                heap.poll();
+                heap.add(new double[] { score, i });
+            }
+        }
+        Set<Long> result = new HashSet<>();
+        for (double[] entry : heap) {
+            result.add(ids.get((int) entry[1]));
+        }
+        return result;
+    }
+
+    private static double similarity(float[] a, float[] b, String metric) {
+        if ("L2".equals(metric)) {
+            double distance = 0;
+            for (int i = 0; i < a.length; i++) {
+                double d = a[i] - b[i];
+                distance += d * d;
+            }
+            return -distance;
+        }
+        // COSINE vectors are normalized up front, so both reduce to a dot product
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        if (norm == 0) {
+            return vector;
+        }
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+}
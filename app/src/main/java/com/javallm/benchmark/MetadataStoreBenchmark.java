@@ -0,0 +1,196 @@
+package com.javallm.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.javallm.services.FileService;
+import com.javallm.services.FileService.FilePage;
+import com.javallm.services.FileService.FileSort;
+
+/**
+ * Concurrent load on the metadata store through FileService: a mix of
+ * inserts, updates, lookups by id and listing pages from several threads,
+ * reporting throughput, latency and failed operations (SQLITE_BUSY among
+ * them) per operation. Rows it writes are removed afterwards.
+ *
+ * Run with: ./gradlew runMetadataBenchmark, which points the datasource at
+ * data/benchmark.db rather than the application database.
+ */
+@Component
+@Profile("metadata-benchmark")
+public class MetadataStoreBenchmark implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadataStoreBenchmark.class);
+
+    private enum Operation {
+        INSERT, UPDATE, GET, LIST
+    }
+
+    private final FileService fileService;
+    private final ApplicationContext applicationContext;
+
+    @Value("${benchmark.metadata.threads:16}")
+    private int threads;
+    @Value("${benchmark.metadata.duration-seconds:20}")
+    private int durationSeconds;
+    @Value("${benchmark.metadata.seed-files:5000}")
+    private int seedFiles;
+    // Share of operations that write, split evenly between inserts and updates
+    @Value("${benchmark.metadata.write-ratio:0.2}")
+    private double writeRatio;
+    @Value("${benchmark.metadata.page-size:100}")
+    private int pageSize;
+
+    private final List<String> ids = new CopyOnWriteArrayList<>();
+    private final Map<Operation, AtomicLong> failures = new ConcurrentHashMap<>();
+    private final AtomicLong busyFailures = new AtomicLong();
+
+    public MetadataStoreBenchmark(FileService fileService, ApplicationContext applicationContext) {
+        this.fileService = fileService;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        try {
+            runBenchmark();
+        } finally {
+            System.exit(SpringApplication.exit(applicationContext, () -> 0));
+        }
+    }
+
+    private void runBenchmark() throws Exception {
+        logger.info("Seeding {} files.", seedFiles);
+        for (int i = 0; i < seedFiles; i++) {
+            insert();
+        }
+        for (Operation operation : Operation.values()) {
+            failures.put(operation, new AtomicLong());
+        }
+
+        logger.info("Running {} threads for {} s, {}% writes.", threads, durationSeconds,
+                Math.round(writeRatio * 100));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Map<Operation, List<Long>>>> futures = new ArrayList<>();
+        long deadline = System.nanoTime() + durationSeconds * 1_000_000_000L;
+        long start = System.nanoTime();
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> work(deadline)));
+            }
+            Map<Operation, List<Long>> latencies = new EnumMap<>(Operation.class);
+            for (Future<Map<Operation, List<Long>>> future : futures) {
+                future.get().forEach((operation, measured) -> latencies
+                        .computeIfAbsent(operation, key -> new ArrayList<>()).addAll(measured));
+            }
+            report(latencies, (System.nanoTime() - start) / 1e9);
+        } finally {
+            executor.shutdownNow();
+            logger.info("Removing {} benchmark files.", ids.size());
+            ids.forEach(fileService::deleteFile);
+        }
+    }
+
+    private Map<Operation, List<Long>> work(long deadline) {
+        Map<Operation, List<Long>> latencies = new EnumMap<>(Operation.class);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            double draw = random.nextDouble();
+            Operation operation = draw < writeRatio / 2 ? Operation.INSERT
+                    : draw < writeRatio ? Operation.UPDATE
+                    : draw < writeRatio + (1 - writeRatio) / 2 ? Operation.GET
+                    : Operation.LIST;
+            long operationStart = System.nanoTime();
+            try {
+                switch (operation) {
+                    case INSERT -> insert();
+                    case UPDATE -> {
+                        String id = ids.get(random.nextInt(ids.size()));
+                        fileService.updateFile(id, "benchmark-" + random.nextInt(1_000_000) + ".pdf",
+                                "uploads/" + id + ".pdf", "application/pdf");
+                    }
+                    case GET -> fileService.getFileById(ids.get(random.nextInt(ids.size())));
+                    case LIST -> listPages(random.nextInt(1, 4));
+                }
+                latencies.computeIfAbsent(operation, key -> new ArrayList<>())
+                        .add(System.nanoTime() - operationStart);
+            } catch (RuntimeException e) {
+                failures.get(operation).incrementAndGet();
+                if (isBusy(e)) {
+                    busyFailures.incrementAndGet();
+                }
+            }
+        }
+        return latencies;
+    }
+
+    private static boolean isBusy(Throwable e) {
+        // Spring and Hibernate wrap the driver's exception
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (String.valueOf(cause.getMessage()).contains("SQLITE_BUSY")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void insert() {
+        String id = UUID.randomUUID().toString();
+        fileService.saveFile(id, "benchmark-" + id + ".pdf", "uploads/" + id + ".pdf", "application/pdf");
+        ids.add(id);
+    }
+
+    /**
+     * Follows the listing for a few pages, as a client paging through it.
+     */
+    private void listPages(int pages) {
+        String cursor = null;
+        for (int i = 0; i < pages; i++) {
+            FilePage page = fileService.listFiles(FileSort.UPLOADED_AT, true, cursor, pageSize);
+            cursor = page.nextCursor();
+            if (cursor == null) {
+                return;
+            }
+        }
+    }
+
+    private void report(Map<Operation, List<Long>> latencies, double seconds) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%nMetadata store, %d threads, %.1f s, %d seeded files%n", threads, seconds,
+                seedFiles));
+        report.append(String.format("%-8s %10s %10s %10s %10s %10s %10s%n", "op", "count", "ops/s", "mean ms",
+                "p99 ms", "max ms", "failed"));
+        for (Operation operation : Operation.values()) {
+            long[] sorted = latencies.getOrDefault(operation, List.of()).stream().mapToLong(Long::longValue)
+                    .sorted().toArray();
+            double meanMs = sorted.length == 0 ? 0 : Arrays.stream(sorted).average().orElse(0) / 1e6;
+            double p99Ms = sorted.length == 0 ? 0
+                    : sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * 0.99) - 1)] / 1e6;
+            double maxMs = sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6;
+            report.append(String.format("%-8s %10d %10.1f %10.2f %10.2f %10.2f %10d%n", operation, sorted.length,
+                    sorted.length / seconds, meanMs, p99Ms, maxMs, failures.get(operation).get()));
+        }
+        report.append(String.format("SQLITE_BUSY failures: %d%n", busyFailures.get()));
+        System.out.println(report);
+    }
+}
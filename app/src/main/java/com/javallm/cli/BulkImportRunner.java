@@ -0,0 +1,104 @@
+package com.javallm.cli;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.javallm.services.BulkImportService;
+import com.javallm.services.BulkImportService.ImportHandle;
+import com.javallm.services.IngestionWorkerPool;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Imports archives and directories given on the command line, waits for
+ * every file to be ingested and writes the per-file report as JSON.
+ *
+ * Run with: ./gradlew runBulkImport -Ppaths=/data/customer.zip,/data/docs
+ */
+@Component
+@Profile("bulk-import")
+public class BulkImportRunner implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportRunner.class);
+
+    private final BulkImportService bulkImportService;
+    private final IngestionWorkerPool workerPool;
+    private final ApplicationContext applicationContext;
+
+    @Value("${bulk-import.report:bulk-import-report.json}")
+    private String reportPath;
+
+    public BulkImportRunner(BulkImportService bulkImportService, IngestionWorkerPool workerPool,
+            ApplicationContext applicationContext) {
+        this.bulkImportService = bulkImportService;
+        this.workerPool = workerPool;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        int exitCode = 0;
+        try {
+            exitCode = runImports(args);
+        } catch (Exception e) {
+            logger.error("Bulk import failed: {}", e.getMessage(), e);
+            exitCode = 1;
+        } finally {
+            int code = exitCode;
+            System.exit(SpringApplication.exit(applicationContext, () -> code));
+        }
+    }
+
+    private int runImports(String... args) throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                paths.add(arg);
+            }
+        }
+        if (paths.isEmpty()) {
+            logger.error("No archives or directories given.");
+            return 2;
+        }
+
+        // Queue everything first so all imports share the worker pool
+        List<ImportHandle> handles = new ArrayList<>();
+        for (String arg : paths) {
+            Path path = Paths.get(arg);
+            handles.add(Files.isDirectory(path)
+                    ? bulkImportService.importDirectory(path)
+                    : bulkImportService.importArchive(path, path.getFileName().toString()));
+        }
+        // Runners execute before the application is ready, so the workers are not up yet
+        workerPool.start();
+
+        Flux.fromIterable(handles)
+                .flatMap(handle -> bulkImportService.progress(handle.importId()))
+                .doOnNext(message -> logger.info(message))
+                .blockLast();
+
+        List<Map<String, Object>> reports = new ArrayList<>();
+        int failed = 0;
+        for (ImportHandle handle : handles) {
+            Map<String, Object> report = bulkImportService.report(handle.importId());
+            failed += (Integer) report.get("failedFiles");
+            reports.add(report);
+        }
+        Files.writeString(Paths.get(reportPath), bulkImportService.toJson(reports));
+        logger.info("Wrote the import report to {} ({} files failed).", reportPath, failed);
+        return failed == 0 ? 0 : 1;
+    }
+}
@@ -0,0 +1,89 @@
+package com.javallm.cli;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.javallm.services.KeywordIndexService;
+import com.javallm.services.KeywordIndexService.IndexedChunk;
+import com.javallm.services.MilvusService;
+
+/**
+ * Rebuilds the keyword index from the serving collection: every chunk is
+ * written to it again, chunks no longer in the collection are removed and
+ * the index is merged. Needed once for chunks stored before the index
+ * existed, and after a re-index changed how documents are chunked. Rows
+ * that did not change are left alone, so running it again is cheap.
+ *
+ * Run with: ./gradlew runKeywordIndex
+ */
+@Component
+@Profile("keyword-index")
+public class KeywordIndexRunner implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeywordIndexRunner.class);
+
+    private final MilvusService milvusService;
+    private final KeywordIndexService keywordIndexService;
+    private final ApplicationContext applicationContext;
+
+    // Chunks written per transaction; the write connection is free between batches
+    @Value("${keyword-index.batch-size:1000}")
+    private int batchSize;
+
+    public KeywordIndexRunner(MilvusService milvusService, KeywordIndexService keywordIndexService,
+            ApplicationContext applicationContext) {
+        this.milvusService = milvusService;
+        this.keywordIndexService = keywordIndexService;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        int exitCode = 0;
+        try {
+            rebuild();
+        } catch (Exception e) {
+            logger.error("Keyword index rebuild failed: {}", e.getMessage(), e);
+            exitCode = 1;
+        } finally {
+            int code = exitCode;
+            System.exit(SpringApplication.exit(applicationContext, () -> code));
+        }
+    }
+
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        milvusService.initializeCollection();
+        Set<Long> seen = new HashSet<>();
+        List<IndexedChunk> batch = new ArrayList<>(batchSize);
+        milvusService.scanChunksForKeywordIndex(chunk -> {
+            seen.add(chunk.id());
+            batch.add(chunk);
+            if (batch.size() >= batchSize) {
+                keywordIndexService.index(batch);
+                batch.clear();
+                if (seen.size() % (batchSize * 50) == 0) {
+                    logger.info("{} chunks indexed.", seen.size());
+                }
+            }
+        });
+        keywordIndexService.index(batch);
+
+        int removed = keywordIndexService.retainOnly(seen);
+        keywordIndexService.optimize();
+        double seconds = (System.currentTimeMillis() - started) / 1000.0;
+        logger.info("Keyword index rebuilt: {} chunks, {} stale ones removed, in {} s.", seen.size(), removed,
+                String.format("%.1f", seconds));
+    }
+}
@@ -0,0 +1,253 @@
+package com.javallm.cli;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonObject;
+import com.javallm.models.FileEntity;
+import com.javallm.services.DocumentIndexService;
+import com.javallm.services.EmbeddingService;
+import com.javallm.services.FileService;
+import com.javallm.services.IngestionService;
+import com.javallm.services.IngestionService.ExtractedChunk;
+import com.javallm.services.MilvusService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Rebuilds the chunk collection from the stored uploads, e.g. after a
+ * chunking or schema change. Every file in the files table is extracted,
+ * embedded in batches and bulk-inserted into a fresh collection while the
+ * serving one keeps answering chat traffic; the alias is switched over only
+ * once the new collection holds every chunk.
+ *
+ * Files that finish uploading during the rebuild are picked up by further
+ * passes. Files still being ingested at the moment of the switch may end up
+ * incomplete, so run this when the ingestion queue is idle. If the chunking
+ * changed, run runKeywordIndex afterwards to bring the keyword index along.
+ *
+ * Run with: ./gradlew runReindex
+ */
+@Component
+@Profile("reindex")
+public class ReindexRunner implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReindexRunner.class);
+    private static final DateTimeFormatter UPLOADED_AT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final FileService fileService;
+    private final IngestionService ingestionService;
+    private final EmbeddingService embeddingService;
+    private final MilvusService milvusService;
+    private final DocumentIndexService documentIndexService;
+    private final ApplicationContext applicationContext;
+
+    // Files processed in parallel; 0 means one per core
+    @Value("${reindex.concurrency:0}")
+    private int concurrency;
+    @Value("${reindex.embed-batch-size:32}")
+    private int embedBatchSize;
+    @Value("${reindex.insert-batch-size:512}")
+    private int insertBatchSize;
+    // Switch over even if some files could not be re-indexed; they are left out of the new collection
+    @Value("${reindex.allow-failures:false}")
+    private boolean allowFailures;
+    @Value("${reindex.drop-previous:false}")
+    private boolean dropPrevious;
+
+    private final Set<String> indexed = ConcurrentHashMap.newKeySet();
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+    private final Map<String, DocumentIndexService.Centroid> centroids = new ConcurrentHashMap<>();
+    private final AtomicLong chunkCount = new AtomicLong();
+
+    public ReindexRunner(FileService fileService, IngestionService ingestionService,
+            EmbeddingService embeddingService, MilvusService milvusService,
+            DocumentIndexService documentIndexService, ApplicationContext applicationContext) {
+        this.fileService = fileService;
+        this.ingestionService = ingestionService;
+        this.embeddingService = embeddingService;
+        this.milvusService = milvusService;
+        this.documentIndexService = documentIndexService;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        int exitCode = 0;
+        try {
+            exitCode = reindex();
+        } catch (Exception e) {
+            logger.error("Re-index failed: {}", e.getMessage(), e);
+            exitCode = 1;
+        } finally {
+            int code = exitCode;
+            System.exit(SpringApplication.exit(applicationContext, () -> code));
+        }
+    }
+
+    private int reindex() {
+        long started = System.currentTimeMillis();
+        milvusService.initializeCollection();
+        String target = milvusService.createRebuildCollection();
+        logger.info("Re-indexing into '{}'.", target);
+
+        while (pass(target) > 0) {
+            // Again, for uploads that finished during the previous pass
+        }
+
+        if (!failed.isEmpty() && !allowFailures) {
+            logger.error("{} files could not be re-indexed; keeping the current collection. "
+                    + "Set reindex.allow-failures=true to switch anyway.", failed.size());
+            milvusService.dropCollection(target);
+            return 1;
+        }
+        milvusService.flush(target);
+        long stored = milvusService.countRows(target);
+        if (stored != chunkCount.get()) {
+            logger.error("'{}' holds {} rows but {} chunks were inserted; keeping the current collection.",
+                    target, stored, chunkCount.get());
+            milvusService.dropCollection(target);
+            return 1;
+        }
+
+        String previous = milvusService.switchAlias(target);
+        // Uploads that completed between the last pass and the switch went to the previous collection
+        pass(target);
+        removeDeletedFiles();
+        centroids.forEach((fileId, centroid) -> fileService.getFileById(fileId).ifPresent(file -> documentIndexService
+                .upsertDocument(fileId, documentName(file), file.getContentType(), centroid)));
+
+        if (dropPrevious && previous != null) {
+            milvusService.dropCollection(previous);
+        }
+        double seconds = (System.currentTimeMillis() - started) / 1000.0;
+        logger.info("Re-indexed {} files ({} chunks) in {} s, {} failed. Previous collection: '{}'.",
+                indexed.size(), chunkCount.get(), String.format("%.1f", seconds), failed.size(), previous);
+        return failed.isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * Re-indexes every file not handled yet. Returns how many were attempted.
+     */
+    private int pass(String target) {
+        List<FileEntity> pending = fileService.getAllFiles().stream()
+                .filter(file -> !indexed.contains(file.getId()) && !failed.contains(file.getId()))
+                .toList();
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        int parallelism = concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+        long passStarted = System.currentTimeMillis();
+        AtomicInteger done = new AtomicInteger();
+        logger.info("Re-indexing {} files, {} at a time.", pending.size(), parallelism);
+
+        Flux.fromIterable(pending)
+                .flatMap(file -> Mono.fromCallable(() -> reindexFile(target, file))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .doOnNext(chunks -> {
+                            indexed.add(file.getId());
+                            chunkCount.addAndGet(chunks);
+                            int count = done.incrementAndGet();
+                            double seconds = Math.max(System.currentTimeMillis() - passStarted, 1) / 1000.0;
+                            logger.info("{}/{} files, {} chunks ({} files/s, {} chunks/s).", count, pending.size(),
+                                    chunkCount.get(), String.format("%.2f", count / seconds),
+                                    String.format("%.1f", chunkCount.get() / seconds));
+                        })
+                        .onErrorResume(e -> {
+                            failed.add(file.getId());
+                            done.incrementAndGet();
+                            logger.error("Failed to re-index '{}' ({}): {}", file.getFilename(), file.getId(),
+                                    e.getMessage());
+                            return Mono.empty();
+                        }), parallelism)
+                .blockLast();
+        return pending.size();
+    }
+
+    private int reindexFile(String target, FileEntity file) throws Exception {
+        Path path = Paths.get(file.getPath());
+        String documentName = documentName(file);
+        List<ExtractedChunk> chunks;
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            chunks = ingestionService.extractChunks(inputStream, documentName, file.getContentType());
+        }
+        List<float[]> embeddings = embeddingService.generateEmbeddings(
+                chunks.stream().map(ExtractedChunk::content).toList(), embedBatchSize).block();
+
+        long uploadedAt = uploadedAtMillis(file);
+        DocumentIndexService.Centroid centroid = new DocumentIndexService.Centroid();
+        List<JsonObject> rows = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            centroid.add(embeddings.get(i));
+            rows.add(MilvusService.chunkRow(file.getId(), i, file.getContentType(), uploadedAt,
+                    chunks.get(i).content(), documentName, chunks.get(i).label(), embeddings.get(i)));
+        }
+        for (List<JsonObject> batch : Lists.partition(rows, insertBatchSize)) {
+            milvusService.insertRows(target, batch);
+        }
+        centroids.put(file.getId(), centroid);
+        return chunks.size();
+    }
+
+    /**
+     * Drops the chunks of files deleted while the rebuild ran.
+     */
+    private void removeDeletedFiles() {
+        Set<String> remaining = fileService.getAllFiles().stream()
+                .map(FileEntity::getId)
+                .collect(Collectors.toSet());
+        for (String fileId : indexed) {
+            if (!remaining.contains(fileId)) {
+                milvusService.deleteEmbeddingsByFileId(fileId);
+                centroids.remove(fileId);
+            }
+        }
+    }
+
+    /**
+     * Chunks are stored under the name of the file in the upload directory.
+     */
+    private static String documentName(FileEntity file) {
+        return Paths.get(file.getPath()).getFileName().toString();
+    }
+
+    private static long uploadedAtMillis(FileEntity file) {
+        if (file.getUploadedAt() == null) {
+            return 0L;
+        }
+        try {
+            return LocalDateTime.parse(file.getUploadedAt(), UPLOADED_AT_FORMAT)
+                    .atZone(ZoneId.systemDefault())
+                    .toInstant()
+                    .toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package com.javallm.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.javallm.services.ChatSessionStore;
+import com.javallm.services.InMemoryChatSessionStore;
+
+@Configuration
+@EnableConfigurationProperties(ChatConfig.ChatProperties.class)
+public class ChatConfig {
+
+    // Replaced by any other ChatSessionStore bean, e.g. a persistent one
+    @Bean
+    @ConditionalOnMissingBean(ChatSessionStore.class)
+    public ChatSessionStore chatSessionStore(ChatProperties chatProperties) {
+        return new InMemoryChatSessionStore(chatProperties);
+    }
+
+    @ConfigurationProperties(prefix = "chat")
+    public static class ChatProperties {
+        private AnswerCache answerCache = new AnswerCache();
+        private Context context = new Context();
+        private Admission admission = new Admission();
+        private Streaming streaming = new Streaming();
+        // OpenAI-compatible backends to route between; empty means the spring.ai.openai client only
+        private List<Backend> backends = new ArrayList<>();
+        private Routing routing = new Routing();
+        private Batch batch = new Batch();
+        private Sessions sessions = new Sessions();
+
+        public AnswerCache getAnswerCache() {
+            return answerCache;
+        }
+
+        public void setAnswerCache(AnswerCache answerCache) {
+            this.answerCache = answerCache;
+        }
+
+        public Context getContext() {
+            return context;
+        }
+
+        public void setContext(Context context) {
+            this.context = context;
+        }
+
+        public Admission getAdmission() {
+            return admission;
+        }
+
+        public void setAdmission(Admission admission) {
+            this.admission = admission;
+        }
+
+        public Streaming getStreaming() {
+            return streaming;
+        }
+
+        public void setStreaming(Streaming streaming) {
+            this.streaming = streaming;
+        }
+
+        public List<Backend> getBackends() {
+            return backends;
+        }
+
+        public void setBackends(List<Backend> backends) {
+            this.backends = backends;
+        }
+
+        public Routing getRouting() {
+            return routing;
+        }
+
+        public void setRouting(Routing routing) {
+            this.routing = routing;
+        }
+
+        public Batch getBatch() {
+            return batch;
+        }
+
+        public void setBatch(Batch batch) {
+            this.batch = batch;
+        }
+
+        public Sessions getSessions() {
+            return sessions;
+        }
+
+        public void setSessions(Sessions sessions) {
+            this.sessions = sessions;
+        }
+    }
+
+    /**
+     * Server-side conversation history for multi-turn chat.
+     */
+    public static class Sessions {
+        // Idle sessions are dropped after this long
+        private Duration ttl = Duration.ofMinutes(30);
+        private int maxSessions = 10000;
+        // History above this size is compacted into the rolling summary
+        private int historyMaxTokens = 1500;
+        // Most recent turns always kept verbatim
+        private int keepRecentTurns = 4;
+        private int summaryMaxTokens = 300;
+        // Rewrite follow-up questions into standalone retrieval queries with the model
+        private boolean rewriteQueries = true;
+        // Recent turns shown to the rewrite
+        private int rewriteTurns = 2;
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getMaxSessions() {
+            return maxSessions;
+        }
+
+        public void setMaxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+        }
+
+        public int getHistoryMaxTokens() {
+            return historyMaxTokens;
+        }
+
+        public void setHistoryMaxTokens(int historyMaxTokens) {
+            this.historyMaxTokens = historyMaxTokens;
+        }
+
+        public int getKeepRecentTurns() {
+            return keepRecentTurns;
+        }
+
+        public void setKeepRecentTurns(int keepRecentTurns) {
+            this.keepRecentTurns = keepRecentTurns;
+        }
+
+        public int getSummaryMaxTokens() {
+            return summaryMaxTokens;
+        }
+
+        public void setSummaryMaxTokens(int summaryMaxTokens) {
+            this.summaryMaxTokens = summaryMaxTokens;
+        }
+
+        public boolean isRewriteQueries() {
+            return rewriteQueries;
+        }
+
+        public void setRewriteQueries(boolean rewriteQueries) {
+            this.rewriteQueries = rewriteQueries;
+        }
+
+        public int getRewriteTurns() {
+            return rewriteTurns;
+        }
+
+        public void setRewriteTurns(int rewriteTurns) {
+            this.rewriteTurns = rewriteTurns;
+        }
+    }
+
+    /**
+     * Batch question answering: questions are embedded and searched together,
+     * then answered with bounded parallelism.
+     */
+    public static class Batch {
+        private int maxQuestions = 1000;
+        // Answers generated at the same time for one batch request
+        private int concurrency = 8;
+        // Texts per TEI /embed call, at most TEI's max-client-batch-size
+        private int embedBatchSize = 32;
+        // Query vectors per Milvus search request
+        private int searchBatchSize = 64;
+
+        public int getMaxQuestions() {
+            return maxQuestions;
+        }
+
+        public void setMaxQuestions(int maxQuestions) {
+            this.maxQuestions = maxQuestions;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public int getEmbedBatchSize() {
+            return embedBatchSize;
+        }
+
+        public void setEmbedBatchSize(int embedBatchSize) {
+            this.embedBatchSize = embedBatchSize;
+        }
+
+        public int getSearchBatchSize() {
+            return searchBatchSize;
+        }
+
+        public void setSearchBatchSize(int searchBatchSize) {
+            this.searchBatchSize = searchBatchSize;
+        }
+    }
+
+    /**
+     * One OpenAI-compatible chat backend.
+     */
+    public static class Backend {
+        private String name;
+        private String baseUrl;
+        private String apiKey = "none";
+        private String model;
+        private Double temperature = 0.7;
+        private int maxConcurrent = 8;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public void setBaseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String getApiKey() {
+            return apiKey;
+        }
+
+        public void setApiKey(String apiKey) {
+            this.apiKey = apiKey;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public void setModel(String model) {
+            this.model = model;
+        }
+
+        public Double getTemperature() {
+            return temperature;
+        }
+
+        public void setTemperature(Double temperature) {
+            this.temperature = temperature;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+    }
+
+    /**
+     * Backend selection by observed time-to-first-token and in-flight load.
+     */
+    public static class Routing {
+        // A backend that has not produced a token by then is abandoned for the next one
+        private Duration firstTokenTimeout = Duration.ofSeconds(10);
+        // Weight of the newest sample in the moving TTFT average
+        private double ttftSmoothing = 0.2;
+        // A backend that just failed is skipped for this long
+        private Duration failureCooldown = Duration.ofSeconds(30);
+
+        public Duration getFirstTokenTimeout() {
+            return firstTokenTimeout;
+        }
+
+        public void setFirstTokenTimeout(Duration firstTokenTimeout) {
+            this.firstTokenTimeout = firstTokenTimeout;
+        }
+
+        public double getTtftSmoothing() {
+            return ttftSmoothing;
+        }
+
+        public void setTtftSmoothing(double ttftSmoothing) {
+            this.ttftSmoothing = ttftSmoothing;
+        }
+
+        public Duration getFailureCooldown() {
+            return failureCooldown;
+        }
+
+        public void setFailureCooldown(Duration failureCooldown) {
+            this.failureCooldown = failureCooldown;
+        }
+    }
+
+    /**
+     * Coalescing of model tokens into fewer SSE frames. The first token is
+     * always sent on its own.
+     */
+    public static class Streaming {
+        private boolean coalesce = false;
+        // A frame is sent once its oldest token has waited this long...
+        private Duration maxDelay = Duration.ofMillis(40);
+        // ...or once it holds this many characters
+        private int maxChars = 128;
+
+        public boolean isCoalesce() {
+            return coalesce;
+        }
+
+        public void setCoalesce(boolean coalesce) {
+            this.coalesce = coalesce;
+        }
+
+        public Duration getMaxDelay() {
+            return maxDelay;
+        }
+
+        public void setMaxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+        }
+
+        public int getMaxChars() {
+            return maxChars;
+        }
+
+        public void setMaxChars(int maxChars) {
+            this.maxChars = maxChars;
+        }
+    }
+
+    /**
+     * Limits on concurrent chat generations. Requests beyond the limit wait in
+     * per-client queues served round-robin, and are rejected with 429 once the
+     * queues are full or the wait exceeds the timeout.
+     */
+    public static class Admission {
+        private boolean enabled = true;
+        private int maxConcurrent = 16;
+        private int maxQueued = 64;
+        // Keeps one client from filling the whole queue
+        private int maxQueuedPerClient = 8;
+        private Duration queueTimeout = Duration.ofSeconds(10);
+        // Sent as Retry-After on rejection
+        private Duration retryAfter = Duration.ofSeconds(5);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        public void setMaxQueued(int maxQueued) {
+            this.maxQueued = maxQueued;
+        }
+
+        public int getMaxQueuedPerClient() {
+            return maxQueuedPerClient;
+        }
+
+        public void setMaxQueuedPerClient(int maxQueuedPerClient) {
+            this.maxQueuedPerClient = maxQueuedPerClient;
+        }
+
+        public Duration getQueueTimeout() {
+            return queueTimeout;
+        }
+
+        public void setQueueTimeout(Duration queueTimeout) {
+            this.queueTimeout = queueTimeout;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+
+        public void setRetryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    /**
+     * Assembly of the retrieved chunks into the prompt context.
+     */
+    public static class Context {
+        // Upper bound on the context size, estimated at ~4 characters per token
+        private int maxTokens = 3000;
+        // Shortest suffix/prefix match treated as the overlap between adjacent chunks
+        private int minOverlapChars = 30;
+        // Word-shingle Jaccard similarity above which the weaker chunk is dropped
+        private double nearDuplicateThreshold = 0.8;
+
+        public int getMaxTokens() {
+            return maxTokens;
+        }
+
+        public void setMaxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+        }
+
+        public int getMinOverlapChars() {
+            return minOverlapChars;
+        }
+
+        public void setMinOverlapChars(int minOverlapChars) {
+            this.minOverlapChars = minOverlapChars;
+        }
+
+        public double getNearDuplicateThreshold() {
+            return nearDuplicateThreshold;
+        }
+
+        public void setNearDuplicateThreshold(double nearDuplicateThreshold) {
+            this.nearDuplicateThreshold = nearDuplicateThreshold;
+        }
+    }
+
+    /**
+     * Semantic cache of final answers, looked up by query embedding similarity.
+     */
+    public static class AnswerCache {
+        private boolean enabled = true;
+        // Minimum cosine similarity between questions to reuse an answer
+        private double similarityThreshold = 0.95;
+        private int maxEntries = 5000;
+        private Duration ttl = Duration.ofHours(1);
+        // Size of the delta frames a cached answer is replayed in
+        private int replayChunkChars = 64;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getSimilarityThreshold() {
+            return similarityThreshold;
+        }
+
+        public void setSimilarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getReplayChunkChars() {
+            return replayChunkChars;
+        }
+
+        public void setReplayChunkChars(int replayChunkChars) {
+            this.replayChunkChars = replayChunkChars;
+        }
+    }
+}
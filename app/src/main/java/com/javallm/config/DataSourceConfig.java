@@ -0,0 +1,149 @@
+package com.javallm.config;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * The SQLite metadata store. SQLite allows one writer at a time, so writes
+ * go through a single-connection pool and queue there instead of failing
+ * with SQLITE_BUSY; read-only transactions use a separate pool of read-only
+ * connections, which WAL mode lets run alongside the writer. Connections are
+ * fetched lazily, on the first statement, so transactions that do not touch
+ * the database do not take the write connection.
+ */
+@Configuration
+@EnableConfigurationProperties(DataSourceConfig.MetadataStoreProperties.class)
+public class DataSourceConfig {
+
+    // SQLITE_OPEN_READONLY, see sqlite-jdbc's SQLiteOpenMode
+    private static final String OPEN_READONLY = "1";
+
+    @ConfigurationProperties(prefix = "metadata-store")
+    public static class MetadataStoreProperties {
+        // Concurrent read-only transactions
+        private int readPoolSize = Runtime.getRuntime().availableProcessors();
+        // Readers never block the writer and the writer never blocks readers
+        private String journalMode = "WAL";
+        // NORMAL is safe in WAL mode: a power loss may only drop the last commits
+        private String synchronous = "NORMAL";
+        // How long a connection waits on a lock held by another process before SQLITE_BUSY
+        private Duration busyTimeout = Duration.ofSeconds(5);
+        private long mmapSizeBytes = 256L * 1024 * 1024;
+        // How long a caller waits for the write connection
+        private Duration connectionTimeout = Duration.ofSeconds(30);
+
+        public int getReadPoolSize() {
+            return readPoolSize;
+        }
+
+        public void setReadPoolSize(int readPoolSize) {
+            this.readPoolSize = readPoolSize;
+        }
+
+        public String getJournalMode() {
+            return journalMode;
+        }
+
+        public void setJournalMode(String journalMode) {
+            this.journalMode = journalMode;
+        }
+
+        public String getSynchronous() {
+            return synchronous;
+        }
+
+        public void setSynchronous(String synchronous) {
+            this.synchronous = synchronous;
+        }
+
+        public Duration getBusyTimeout() {
+            return busyTimeout;
+        }
+
+        public void setBusyTimeout(Duration busyTimeout) {
+            this.busyTimeout = busyTimeout;
+        }
+
+        public long getMmapSizeBytes() {
+            return mmapSizeBytes;
+        }
+
+        public void setMmapSizeBytes(long mmapSizeBytes) {
+            this.mmapSizeBytes = mmapSizeBytes;
+        }
+
+        public Duration getConnectionTimeout() {
+            return connectionTimeout;
+        }
+
+        public void setConnectionTimeout(Duration connectionTimeout) {
+            this.connectionTimeout = connectionTimeout;
+        }
+    }
+
+    /**
+     * Routes read-only transactions to the read pool and everything else,
+     * Flyway included, to the write connection.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("metadataWritePool") DataSource writePool,
+            @Qualifier("metadataReadPool") DataSource readPool) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(writePool);
+        dataSource.setReadOnlyDataSource(readPool);
+        return dataSource;
+    }
+
+    @Bean
+    public HikariDataSource metadataWritePool(DataSourceProperties dataSourceProperties,
+            MetadataStoreProperties properties) {
+        HikariConfig config = pool("metadata-writer", dataSourceProperties, properties, 1);
+        // The journal mode is stored in the database file; read-only connections cannot set it
+        config.addDataSourceProperty("journal_mode", properties.getJournalMode());
+        config.addDataSourceProperty("synchronous", properties.getSynchronous());
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Depends on the write pool, which puts the database into WAL mode first.
+     */
+    @Bean
+    public HikariDataSource metadataReadPool(DataSourceProperties dataSourceProperties,
+            MetadataStoreProperties properties, @Qualifier("metadataWritePool") HikariDataSource writePool) {
+        HikariConfig config = pool("metadata-reader", dataSourceProperties, properties,
+                properties.getReadPoolSize());
+        config.setReadOnly(true);
+        config.addDataSourceProperty("open_mode", OPEN_READONLY);
+        return new HikariDataSource(config);
+    }
+
+    private static HikariConfig pool(String name, DataSourceProperties dataSourceProperties,
+            MetadataStoreProperties properties, int size) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setJdbcUrl(dataSourceProperties.determineUrl());
+        config.setDriverClassName(dataSourceProperties.determineDriverClassName());
+        config.setMaximumPoolSize(size);
+        config.setMinimumIdle(size);
+        config.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+        // SQLite connections do not go stale
+        config.setMaxLifetime(0);
+        config.setIdleTimeout(0);
+        config.addDataSourceProperty("busy_timeout", String.valueOf(properties.getBusyTimeout().toMillis()));
+        config.addDataSourceProperty("mmap_size", String.valueOf(properties.getMmapSizeBytes()));
+        return config;
+    }
+}
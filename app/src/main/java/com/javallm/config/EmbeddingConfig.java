@@ -0,0 +1,95 @@
+package com.javallm.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(EmbeddingConfig.MigrationProperties.class)
+public class EmbeddingConfig {
+
+    /**
+     * Online migration to another embedding model. While target-url is set,
+     * the stored chunks are re-embedded by the model server behind it into a
+     * collection of their own; chat keeps using spring.embedding.service.url
+     * until the alias is switched over.
+     */
+    @ConfigurationProperties(prefix = "spring.embedding.migration")
+    public static class MigrationProperties {
+        // TEI server running the new model; empty means no migration
+        private String targetUrl = "";
+        // Used as the model id when the server does not report one
+        private String targetModel = "";
+        // Re-embedding rate of existing chunks, to leave room for live traffic
+        private double chunksPerSecond = 50;
+        // Texts per embedding request (TEI max-client-batch-size)
+        private int batchSize = 32;
+        private Duration progressInterval = Duration.ofSeconds(30);
+        // Delay before the migration starts over after an error
+        private Duration retryDelay = Duration.ofMinutes(1);
+        // Drop the collection of the previous model after the switch instead of keeping it for a rollback
+        private boolean dropPrevious = false;
+
+        public boolean isEnabled() {
+            return targetUrl != null && !targetUrl.isBlank();
+        }
+
+        public String getTargetUrl() {
+            return targetUrl;
+        }
+
+        public void setTargetUrl(String targetUrl) {
+            this.targetUrl = targetUrl;
+        }
+
+        public String getTargetModel() {
+            return targetModel;
+        }
+
+        public void setTargetModel(String targetModel) {
+            this.targetModel = targetModel;
+        }
+
+        public double getChunksPerSecond() {
+            return chunksPerSecond;
+        }
+
+        public void setChunksPerSecond(double chunksPerSecond) {
+            this.chunksPerSecond = chunksPerSecond;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getProgressInterval() {
+            return progressInterval;
+        }
+
+        public void setProgressInterval(Duration progressInterval) {
+            this.progressInterval = progressInterval;
+        }
+
+        public Duration getRetryDelay() {
+            return retryDelay;
+        }
+
+        public void setRetryDelay(Duration retryDelay) {
+            this.retryDelay = retryDelay;
+        }
+
+        public boolean isDropPrevious() {
+            return dropPrevious;
+        }
+
+        public void setDropPrevious(boolean dropPrevious) {
+            this.dropPrevious = dropPrevious;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.javallm.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(IngestionConfig.IngestionProperties.class)
+public class IngestionConfig {
+
+    @ConfigurationProperties(prefix = "ingestion")
+    public static class IngestionProperties {
+        private Jobs jobs = new Jobs();
+        private Concurrency concurrency = new Concurrency();
+        private Imports imports = new Imports();
+        private ChunkCache chunkCache = new ChunkCache();
+
+        public Jobs getJobs() {
+            return jobs;
+        }
+
+        public void setJobs(Jobs jobs) {
+            this.jobs = jobs;
+        }
+
+        public Concurrency getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(Concurrency concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public Imports getImports() {
+            return imports;
+        }
+
+        public void setImports(Imports imports) {
+            this.imports = imports;
+        }
+
+        public ChunkCache getChunkCache() {
+            return chunkCache;
+        }
+
+        public void setChunkCache(ChunkCache chunkCache) {
+            this.chunkCache = chunkCache;
+        }
+    }
+
+    /**
+     * Background ingestion from the persistent job table.
+     */
+    public static class Jobs {
+        // Jobs processed concurrently by this instance; extraction is CPU bound
+        private int workers = Runtime.getRuntime().availableProcessors();
+        // How often an idle worker looks for new jobs
+        private Duration pollInterval = Duration.ofSeconds(1);
+        // A running job whose lease is not renewed within this time is picked up again; workers renew it
+        // every third of this while a job runs
+        private Duration visibilityTimeout = Duration.ofMinutes(2);
+        private int maxAttempts = 3;
+        // Delay before retry n is n times this
+        private Duration retryBackoff = Duration.ofSeconds(30);
+        // Progress is relayed live but written to the job row at most this often
+        private Duration progressWriteInterval = Duration.ofSeconds(1);
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+
+        public void setPollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+        }
+
+        public Duration getVisibilityTimeout() {
+            return visibilityTimeout;
+        }
+
+        public void setVisibilityTimeout(Duration visibilityTimeout) {
+            this.visibilityTimeout = visibilityTimeout;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getRetryBackoff() {
+            return retryBackoff;
+        }
+
+        public void setRetryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+        }
+
+        public Duration getProgressWriteInterval() {
+            return progressWriteInterval;
+        }
+
+        public void setProgressWriteInterval(Duration progressWriteInterval) {
+            this.progressWriteInterval = progressWriteInterval;
+        }
+    }
+
+    /**
+     * Caps shared by all workers, so that running many jobs in parallel does
+     * not overload the embedding server or Milvus.
+     */
+    public static class Concurrency {
+        private int maxEmbeddingRequests = 8;
+        private int maxMilvusWrites = 4;
+
+        public int getMaxEmbeddingRequests() {
+            return maxEmbeddingRequests;
+        }
+
+        public void setMaxEmbeddingRequests(int maxEmbeddingRequests) {
+            this.maxEmbeddingRequests = maxEmbeddingRequests;
+        }
+
+        public int getMaxMilvusWrites() {
+            return maxMilvusWrites;
+        }
+
+        public void setMaxMilvusWrites(int maxMilvusWrites) {
+            this.maxMilvusWrites = maxMilvusWrites;
+        }
+    }
+
+    /**
+     * Bulk imports of archives and server-side directories.
+     */
+    public static class Imports {
+        // Directories (and their subdirectories) that may be imported from; none by default
+        private List<String> allowedDirectories = new ArrayList<>();
+        private Duration progressInterval = Duration.ofSeconds(2);
+        private int maxFiles = 10000;
+
+        public List<String> getAllowedDirectories() {
+            return allowedDirectories;
+        }
+
+        public void setAllowedDirectories(List<String> allowedDirectories) {
+            this.allowedDirectories = allowedDirectories;
+        }
+
+        public Duration getProgressInterval() {
+            return progressInterval;
+        }
+
+        public void setProgressInterval(Duration progressInterval) {
+            this.progressInterval = progressInterval;
+        }
+
+        public int getMaxFiles() {
+            return maxFiles;
+        }
+
+        public void setMaxFiles(int maxFiles) {
+            this.maxFiles = maxFiles;
+        }
+    }
+
+    /**
+     * Extracted chunks kept on disk, so documents are parsed once per
+     * chunking configuration however often they are ingested again.
+     */
+    public static class ChunkCache {
+        private boolean enabled = true;
+        private String directory = "data/chunk-cache";
+        // Least recently used entries are removed beyond this
+        private long maxSizeBytes = 1024L * 1024 * 1024;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public long getMaxSizeBytes() {
+            return maxSizeBytes;
+        }
+
+        public void setMaxSizeBytes(long maxSizeBytes) {
+            this.maxSizeBytes = maxSizeBytes;
+        }
+    }
+}
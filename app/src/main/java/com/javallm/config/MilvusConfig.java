@@ -1,5 +1,8 @@
 package com.javallm.config;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -39,6 +42,15 @@ public class MilvusConfig {
         private long keepAliveTimeoutMs = 20000;
         private boolean keepAliveWithoutCalls = false;
         private boolean secure = false;
+        // Partitions hashed from the file_id partition key
+        private int numPartitions = 64;
+        // Copy rows from a collection with an older schema into the current one in the background after
+        // startup. Until then, or when disabled, the old collection keeps serving searches but writes are refused
+        private boolean rehomeLegacyCollection = true;
+        // Drop the old collection once re-homed instead of keeping it for a rollback
+        private boolean dropLegacyCollection = false;
+        // Vector index used when a collection is created
+        private Index index = new Index();
 
         // SSL/TLS properties
         private String clientKeyPath;
@@ -128,6 +140,38 @@ public class MilvusConfig {
             this.secure = secure;
         }
 
+        public int getNumPartitions() {
+            return numPartitions;
+        }
+
+        public void setNumPartitions(int numPartitions) {
+            this.numPartitions = numPartitions;
+        }
+
+        public boolean isRehomeLegacyCollection() {
+            return rehomeLegacyCollection;
+        }
+
+        public void setRehomeLegacyCollection(boolean rehomeLegacyCollection) {
+            this.rehomeLegacyCollection = rehomeLegacyCollection;
+        }
+
+        public boolean isDropLegacyCollection() {
+            return dropLegacyCollection;
+        }
+
+        public void setDropLegacyCollection(boolean dropLegacyCollection) {
+            this.dropLegacyCollection = dropLegacyCollection;
+        }
+
+        public Index getIndex() {
+            return index;
+        }
+
+        public void setIndex(Index index) {
+            this.index = index;
+        }
+
         public String getClientKeyPath() {
             return clientKeyPath;
         }
@@ -168,4 +212,39 @@ public class MilvusConfig {
             this.serverName = serverName;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Vector index settings. type is any Milvus IndexType (AUTOINDEX, HNSW,
+     * IVF_FLAT, IVF_PQ, DISKANN, ...) and params are passed through as build
+     * parameters, e.g. M/efConstruction for HNSW or nlist for IVF.
+     */
+    public static class Index {
+        private String type = "AUTOINDEX";
+        private String metric = "COSINE";
+        private Map<String, Object> params = new LinkedHashMap<>();
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public String getMetric() {
+            return metric;
+        }
+
+        public void setMetric(String metric) {
+            this.metric = metric;
+        }
+
+        public Map<String, Object> getParams() {
+            return params;
+        }
+
+        public void setParams(Map<String, Object> params) {
+            this.params = params;
+        }
+    }
+}
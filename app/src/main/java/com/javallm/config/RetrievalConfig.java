@@ -0,0 +1,252 @@
+package com.javallm.config;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(RetrievalConfig.RetrievalProperties.class)
+public class RetrievalConfig {
+
+    @ConfigurationProperties(prefix = "retrieval")
+    public static class RetrievalProperties {
+        // Number of chunks handed to the chat model
+        private int topK = 7;
+        private Hybrid hybrid = new Hybrid();
+        private TwoStage twoStage = new TwoStage();
+        private ResultCache cache = new ResultCache();
+        // Named search parameter sets (ef, nprobe, ...) selectable per request
+        private Map<String, Map<String, Object>> profiles = new LinkedHashMap<>();
+        private String defaultProfile = "balanced";
+        private SearchApi searchApi = new SearchApi();
+
+        public int getTopK() {
+            return topK;
+        }
+
+        public void setTopK(int topK) {
+            this.topK = topK;
+        }
+
+        public Hybrid getHybrid() {
+            return hybrid;
+        }
+
+        public void setHybrid(Hybrid hybrid) {
+            this.hybrid = hybrid;
+        }
+
+        public TwoStage getTwoStage() {
+            return twoStage;
+        }
+
+        public void setTwoStage(TwoStage twoStage) {
+            this.twoStage = twoStage;
+        }
+
+        public ResultCache getCache() {
+            return cache;
+        }
+
+        public void setCache(ResultCache cache) {
+            this.cache = cache;
+        }
+
+        public Map<String, Map<String, Object>> getProfiles() {
+            return profiles;
+        }
+
+        public void setProfiles(Map<String, Map<String, Object>> profiles) {
+            this.profiles = profiles;
+        }
+
+        public String getDefaultProfile() {
+            return defaultProfile;
+        }
+
+        public void setDefaultProfile(String defaultProfile) {
+            this.defaultProfile = defaultProfile;
+        }
+
+        public SearchApi getSearchApi() {
+            return searchApi;
+        }
+
+        public void setSearchApi(SearchApi searchApi) {
+            this.searchApi = searchApi;
+        }
+    }
+
+    /**
+     * Limits of the retrieval-only /search endpoint.
+     */
+    public static class SearchApi {
+        private int defaultTopK = 10;
+        private int maxTopK = 100;
+        // Milvus rejects searches where offset + topK exceeds 16384
+        private int maxWindow = 16384;
+
+        public int getDefaultTopK() {
+            return defaultTopK;
+        }
+
+        public void setDefaultTopK(int defaultTopK) {
+            this.defaultTopK = defaultTopK;
+        }
+
+        public int getMaxTopK() {
+            return maxTopK;
+        }
+
+        public void setMaxTopK(int maxTopK) {
+            this.maxTopK = maxTopK;
+        }
+
+        public int getMaxWindow() {
+            return maxWindow;
+        }
+
+        public void setMaxWindow(int maxWindow) {
+            this.maxWindow = maxWindow;
+        }
+    }
+
+    /**
+     * Dense + BM25 search fused with reciprocal-rank fusion.
+     */
+    public static class Hybrid {
+        private boolean enabled = true;
+        // Candidates pulled from each leg before fusion
+        private int denseCandidates = 50;
+        private int sparseCandidates = 50;
+        // RRF smoothing constant, score = sum(1 / (k + rank))
+        private int rrfK = 60;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getDenseCandidates() {
+            return denseCandidates;
+        }
+
+        public void setDenseCandidates(int denseCandidates) {
+            this.denseCandidates = denseCandidates;
+        }
+
+        public int getSparseCandidates() {
+            return sparseCandidates;
+        }
+
+        public void setSparseCandidates(int sparseCandidates) {
+            this.sparseCandidates = sparseCandidates;
+        }
+
+        public int getRrfK() {
+            return rrfK;
+        }
+
+        public void setRrfK(int rrfK) {
+            this.rrfK = rrfK;
+        }
+    }
+
+    /**
+     * Document-then-chunk retrieval: stage one searches one centroid per file,
+     * stage two searches only the chunks of the best documents.
+     */
+    public static class TwoStage {
+        private boolean enabled = false;
+        // Documents kept from stage one
+        private int documents = 20;
+        // Below this top document score stage one is not trusted and a flat search runs
+        private float minScore = 0.35f;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getDocuments() {
+            return documents;
+        }
+
+        public void setDocuments(int documents) {
+            this.documents = documents;
+        }
+
+        public float getMinScore() {
+            return minScore;
+        }
+
+        public void setMinScore(float minScore) {
+            this.minScore = minScore;
+        }
+    }
+
+    /**
+     * Cache of retrieval results keyed by the quantized query vector, filters,
+     * search params and collection generation.
+     */
+    public static class ResultCache {
+        private boolean enabled = true;
+        // Approximate upper bound on the memory held by cached results
+        private long maxSizeBytes = 64L * 1024 * 1024;
+        private Duration ttl = Duration.ofMinutes(10);
+        // Vector components are rounded to 1/quantizationSteps before hashing
+        private int quantizationSteps = 256;
+        // Results are not cached this soon after a write, while Milvus may not see it yet
+        private Duration consistencyWindow = Duration.ofSeconds(5);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxSizeBytes() {
+            return maxSizeBytes;
+        }
+
+        public void setMaxSizeBytes(long maxSizeBytes) {
+            this.maxSizeBytes = maxSizeBytes;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getQuantizationSteps() {
+            return quantizationSteps;
+        }
+
+        public void setQuantizationSteps(int quantizationSteps) {
+            this.quantizationSteps = quantizationSteps;
+        }
+
+        public Duration getConsistencyWindow() {
+            return consistencyWindow;
+        }
+
+        public void setConsistencyWindow(Duration consistencyWindow) {
+            this.consistencyWindow = consistencyWindow;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.javallm.controllers;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.javallm.controllers.dto.FileDto.DirectoryImportRequest;
+import com.javallm.services.BulkImportService;
+import com.javallm.services.BulkImportService.ImportHandle;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Bulk imports. Both entry points queue every supported file and then stream
+ * the aggregate progress of the import; disconnecting does not stop it, and
+ * the stream or the final report can be fetched again by import id.
+ */
+@RestController
+@RequestMapping("/files/imports")
+@CrossOrigin(origins = "*")
+public class BulkImport {
+
+    private final BulkImportService bulkImportService;
+
+    public BulkImport(BulkImportService bulkImportService) {
+        this.bulkImportService = bulkImportService;
+    }
+
+    /**
+     * Imports the files in a .zip, .tar, .tar.gz or .tgz archive.
+     */
+    @PostMapping(value = "", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> importArchive(@RequestPart("archive") FilePart archive) {
+        Mono<ImportHandle> started = Mono.fromCallable(() -> Files.createTempFile("import-", ".archive"))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(tempFile -> archive.transferTo(tempFile)
+                        .then(Mono.fromCallable(() -> bulkImportService.importArchive(tempFile, archive.filename()))
+                                .subscribeOn(Schedulers.boundedElastic()))
+                        .doFinally(signal -> tempFile.toFile().delete()));
+        return follow(started);
+    }
+
+    /**
+     * Imports the files under a server-side directory. Only directories within
+     * ingestion.imports.allowed-directories can be read.
+     */
+    @PostMapping(value = "/directory", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> importDirectory(@RequestBody DirectoryImportRequest request) {
+        if (request.getPath() == null || request.getPath().isBlank()) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "path must be set"));
+        }
+        Path directory = Paths.get(request.getPath());
+        Mono<ImportHandle> started = Mono.fromCallable(() -> {
+            if (!bulkImportService.isAllowedDirectory(directory)) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN,
+                        "Directory is not in ingestion.imports.allowed-directories");
+            }
+            return bulkImportService.importDirectory(directory);
+        }).subscribeOn(Schedulers.boundedElastic());
+        return follow(started);
+    }
+
+    @GetMapping(value = "/{importId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, Object>> getReport(@PathVariable String importId) {
+        return Mono.fromCallable(() -> bulkImportService.report(importId))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @GetMapping(value = "/{importId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> importEvents(@PathVariable String importId) {
+        return bulkImportService.progress(importId).map(BulkImport::event);
+    }
+
+    private Flux<ServerSentEvent<String>> follow(Mono<ImportHandle> started) {
+        return started.flatMapMany(handle -> {
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("type", "IMPORT_STARTED");
+            message.put("importId", handle.importId());
+            message.put("queuedFiles", handle.queued());
+            message.put("skippedFiles", handle.skipped().size());
+            return Flux.just(bulkImportService.toJson(message))
+                    .concatWith(bulkImportService.progress(handle.importId()));
+        }).map(BulkImport::event);
+    }
+
+    private static ServerSentEvent<String> event(String message) {
+        return ServerSentEvent.<String>builder()
+                .data(message)
+                .build();
+    }
+}
@@ -2,23 +2,54 @@ package com.javallm.controllers;
 
 import static java.util.stream.Collectors.joining;
 
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map; // Import Map
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import com.javallm.config.ChatConfig.Batch;
+import com.javallm.config.ChatConfig.ChatProperties;
+import com.javallm.controllers.dto.ChatDto.BatchChatRequest;
 import com.javallm.controllers.dto.ChatDto.ChatRequest;
+import com.javallm.controllers.dto.DeltaFrame;
+import com.javallm.services.ChatAdmissionController;
+import com.javallm.services.ChatMetrics;
+import com.javallm.services.ChatMetrics.Stopwatch;
+import com.javallm.services.ChatSession;
+import com.javallm.services.ChatSessionService;
+import com.javallm.services.ContextBuilder;
+import com.javallm.services.DeltaCoalescer;
 import com.javallm.services.EmbeddingService;
+import com.javallm.services.LlmRouter;
 import com.javallm.services.MilvusService;
 import com.javallm.services.MilvusService.QueryResult;
+import com.javallm.services.MilvusService.SearchFilter;
+import com.javallm.services.RetrievalService;
+import com.javallm.services.SemanticAnswerCache;
+import com.javallm.services.SemanticAnswerCache.CachedAnswer;
+
 import io.milvus.v2.service.vector.request.data.FloatVec;
 import reactor.core.publisher.Flux;
-
-import org.springframework.ai.chat.client.ChatClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuples;
+import reactor.util.retry.Retry;
 
 @RestController
 @RequestMapping("/chat")
@@ -41,64 +72,319 @@ public class Chat {
             Question:
             %s
             """;
+    private static final String HISTORY_TEMPLATE = """
+            Conversation so far:
+            %s
+
+            """;
+
+    private static final String API_KEY_HEADER = "X-API-Key";
 
-    private final ChatClient chatClient;
+    private final LlmRouter llmRouter;
     private final MilvusService milvusService;
+    private final RetrievalService retrievalService;
     private final EmbeddingService embeddingService;
+    private final SemanticAnswerCache answerCache;
+    private final ContextBuilder contextBuilder;
+    private final ChatMetrics chatMetrics;
+    private final ChatAdmissionController admissionController;
+    private final DeltaCoalescer deltaCoalescer;
+    private final ChatProperties chatProperties;
+    private final ChatSessionService sessionService;
 
-    public Chat(ChatClient.Builder chatClientBuilder,
+    public Chat(LlmRouter llmRouter,
             MilvusService milvusService,
-            EmbeddingService embeddingService) {
-        this.chatClient = chatClientBuilder.build();
+            RetrievalService retrievalService,
+            EmbeddingService embeddingService,
+            SemanticAnswerCache answerCache,
+            ContextBuilder contextBuilder,
+            ChatMetrics chatMetrics,
+            ChatAdmissionController admissionController,
+            DeltaCoalescer deltaCoalescer,
+            ChatProperties chatProperties,
+            ChatSessionService sessionService) {
+        this.llmRouter = llmRouter;
         this.milvusService = milvusService;
+        this.retrievalService = retrievalService;
         this.embeddingService = embeddingService;
+        this.answerCache = answerCache;
+        this.contextBuilder = contextBuilder;
+        this.chatMetrics = chatMetrics;
+        this.admissionController = admissionController;
+        this.deltaCoalescer = deltaCoalescer;
+        this.chatProperties = chatProperties;
+        this.sessionService = sessionService;
     }
 
+    /**
+     * Streams the answer as delta frames followed by the results. Events are
+     * typed as Object so each is serialized by its own class; see
+     * {@link DeltaFrame}.
+     */
     @PostMapping("/message")
-    public Flux<Map<String, Object>> streamChat(@RequestBody ChatRequest request) {
+    public Flux<Object> streamChat(@RequestBody ChatRequest request, ServerHttpRequest httpRequest) {
         String question = request.getMessage();
         if (question == null || question.isEmpty()) {
             return Flux.just(Map.of("error", "Message cannot be null or empty"));
         }
 
-        return embeddingService.generateEmbedding(question)
-                .flatMapMany(vec -> {
-                    // 1) Query Milvus
-                    FloatVec vect = new FloatVec(vec);
-                    List<QueryResult> results = milvusService.queryCollection(vect);
-
-                    // 2) Turn your QueryResult objects into JSON‐friendly maps
-                    List<Map<String, Object>> resultsList = results.stream()
-                            .map(r -> Map.<String, Object>of(
-                                    "title", r.getDocumentName(),
-                                    "pages", r.getDocumentPages(),
-                                    "fileId", r.getFileId()))
-
-                            .toList();
-
-                    // 3) Assemble the context for the chat model
-                    String context = results.stream()
-                            .map(r -> String.format(
-                                    "Title: %s (pages: %s)%nExcerpt: %s",
-                                    r.getDocumentName(), r.getDocumentPages(), r.getText()))
-                            .collect(joining("\n---\n"));
-                    String userPrompt = String.format(USER_PROMPT_TEMPLATE, context, question);
-
-                    // 4) Create your token‐stream Flux
-                    Flux<Map<String, Object>> tokenFlux = chatClient
-                            .prompt()
-                            .system(SYSTEM_PROMPT)
-                            .user(userPrompt)
-                            .stream()
-                            .content()
-                            .map(chunk -> Map.<String, Object>of("delta", chunk))
-                            .onErrorResume(e -> Flux.just(Map.of("error", "Stream error: " + e.getMessage())));
-
-                    // 5) Concatenate your final "results" event
-                    Flux<Map<String, Object>> doneFlux = Flux.just(Map.of("results", resultsList));
-
-                    return tokenFlux.concatWith(doneFlux);
+        SearchFilter filter = new SearchFilter(request.getFileIds(), request.getDocumentNames(),
+                request.getContentTypes());
+        Map<String, Object> searchParams;
+        try {
+            searchParams = milvusService.resolveSearchParams(request.getSearchProfile(), request.getSearchParams());
+        } catch (IllegalArgumentException e) {
+            return Flux.just(Map.of("error", e.getMessage()));
+        }
+
+        // Holding a permit for the whole stream bounds concurrent searches and generations
+        String clientId = clientId(httpRequest);
+        return Flux.usingWhen(admissionController.acquire(clientId),
+                permit -> answer(request, question, filter, searchParams, clientId),
+                permit -> Mono.fromRunnable(permit::release));
+    }
+
+    private Flux<Object> answer(ChatRequest request, String question, SearchFilter filter,
+            Map<String, Object> searchParams, String clientId) {
+        return Flux.defer(() -> {
+            Stopwatch timings = chatMetrics.start();
+            Flux<Object> timingsEvent = request.isIncludeTimings()
+                    ? Flux.defer(() -> {
+                        timings.finish();
+                        return Flux.<Object>just(Map.of("timings", timings.toMillis()));
+                    })
+                    : Flux.empty();
+
+            // Sessions are bound to the client that started them
+            String sessionId = request.getSessionId();
+            ChatSession session = null;
+            Flux<Object> sessionEvent = Flux.empty();
+            if (request.isNewSession()) {
+                session = sessionService.start(clientId);
+                sessionEvent = Flux.just(Map.of("sessionId", session.getId()));
+            } else if (sessionId != null && !sessionId.isBlank()) {
+                Optional<ChatSession> opened = sessionService.open(sessionId, clientId);
+                if (opened.isEmpty()) {
+                    return Flux.just(Map.of("error", "Unknown or expired session: " + sessionId));
+                }
+                session = opened.get();
+            }
+            ChatSession chatSession = session;
+            String history = chatSession != null ? sessionService.history(chatSession) : "";
+            // Answers that depend on earlier turns are not shared through the cache
+            boolean useAnswerCache = answerCache.isEnabled() && history.isEmpty();
+            Mono<String> retrievalQuery = chatSession != null
+                    ? sessionService.retrievalQuery(chatSession, question)
+                            .doOnNext(query -> timings.lap(ChatMetrics.REWRITE))
+                    : Mono.just(question);
+
+            return retrievalQuery
+                    .flatMap(query -> embeddingService.generateEmbedding(query)
+                            .map(vec -> Tuples.of(query, vec)))
+                    .doOnNext(queryAndVec -> timings.lap(ChatMetrics.EMBED))
+                    .flatMapMany(queryAndVec -> {
+                        String query = queryAndVec.getT1();
+                        float[] vec = queryAndVec.getT2();
+
+                        // 0) A close enough question may already have been answered
+                        String scope = SemanticAnswerCache.scopeKey(filter, searchParams);
+                        long invalidations = answerCache.invalidationCount();
+                        if (useAnswerCache) {
+                            Optional<CachedAnswer> cached = answerCache.lookup(vec, scope);
+                            if (cached.isPresent()) {
+                                // A first turn answered from the cache still starts the session's history
+                                Mono<Object> recordTurn = Mono.fromRunnable(() -> {
+                                    if (chatSession != null) {
+                                        sessionService.recordTurn(chatSession, question, cached.get().answer());
+                                    }
+                                });
+                                return answerCache.replay(cached.get())
+                                        .<Object>map(DeltaFrame::new)
+                                        .concatWith(recordTurn)
+                                        .concatWith(Flux.just(Map.of("results", cached.get().results())));
+                            }
+                        }
+
+                        // 1) Query Milvus (or the retrieval cache)
+                        List<QueryResult> results = retrievalService.retrieve(query, vec, filter,
+                                searchParams);
+                        timings.lap(ChatMetrics.SEARCH);
+
+                        // 2) Turn your QueryResult objects into JSON‐friendly maps
+                        List<Map<String, Object>> resultsList = toResultMaps(results);
+
+                        // 3) Assemble the context for the chat model, merged and within the token budget
+                        String userPrompt = buildUserPrompt(results, question, history);
+                        timings.lap(ChatMetrics.CONTEXT);
+
+                        // 4) Create your token‐stream Flux
+                        StringBuilder answer = new StringBuilder();
+                        AtomicBoolean failed = new AtomicBoolean();
+                        AtomicBoolean firstToken = new AtomicBoolean(true);
+                        Flux<Object> tokenFlux = llmRouter
+                                .stream(SYSTEM_PROMPT, userPrompt)
+                                .doOnNext(chunk -> {
+                                    if (firstToken.getAndSet(false)) {
+                                        timings.lap(ChatMetrics.TTFT);
+                                    }
+                                    answer.append(chunk);
+                                })
+                                .doOnComplete(() -> timings.lap(ChatMetrics.GENERATION))
+                                .transform(deltaCoalescer::coalesce)
+                                .<Object>map(DeltaFrame::new)
+                                .onErrorResume(e -> {
+                                    failed.set(true);
+                                    return Flux.just(Map.of("error", "Stream error: " + e.getMessage()));
+                                });
+
+                        // 5) Remember complete answers for similar questions and for the session
+                        Mono<Object> storeAnswer = Mono.fromRunnable(() -> {
+                            if (chatSession != null && !failed.get()) {
+                                sessionService.recordTurn(chatSession, question, answer.toString());
+                            }
+                            if (useAnswerCache && !failed.get()) {
+                                Set<String> fileIds = new LinkedHashSet<>();
+                                results.stream()
+                                        .map(QueryResult::getFileId)
+                                        .filter(id -> id != null)
+                                        .forEach(fileIds::add);
+                                answerCache.store(vec, scope, filter,
+                                        new CachedAnswer(answer.toString(), resultsList), fileIds, invalidations);
+                            }
+                        });
+
+                        // 6) Concatenate your final "results" event
+                        Flux<Object> doneFlux = Flux.just(Map.of("results", resultsList));
+
+                        return tokenFlux.concatWith(storeAnswer).concatWith(doneFlux);
+                    })
+                    .onErrorResume(e -> Flux.just(Map.of("error", e.getMessage())))
+                    .concatWith(timingsEvent)
+                    .startWith(sessionEvent)
+                    .doFinally(signal -> timings.finish());
+        });
+    }
+
+    /**
+     * Ends a session. Only the client that started it can; any other gets 404.
+     */
+    @DeleteMapping("/sessions/{sessionId}")
+    public Map<String, Object> deleteSession(@PathVariable String sessionId, ServerHttpRequest httpRequest) {
+        if (!sessionService.delete(sessionId, clientId(httpRequest))) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown or expired session: " + sessionId);
+        }
+        return Map.of("deleted", sessionId);
+    }
+
+    /**
+     * Answers many questions in one request. Questions are embedded in batched
+     * TEI calls and searched with one multi-vector Milvus request per group,
+     * then answered with bounded parallelism. Each answer is streamed as an
+     * NDJSON line as soon as it completes, so lines arrive out of order and
+     * carry the question's index.
+     *
+     * Every generation holds an admission permit like an interactive one.
+     * Batch work queues as a client of its own, so it takes its round-robin
+     * share of the slots without filling the caller's interactive queue, and
+     * it waits for a slot instead of failing when chat is saturated.
+     */
+    @PostMapping(value = "/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Map<String, Object>> batchChat(@RequestBody BatchChatRequest request,
+            ServerHttpRequest httpRequest) {
+        Batch batch = chatProperties.getBatch();
+        List<String> questions = request.getQuestions();
+        if (questions == null || questions.isEmpty()) {
+            return Flux.just(Map.of("error", "Questions cannot be null or empty"));
+        }
+        if (questions.size() > batch.getMaxQuestions()) {
+            return Flux.just(Map.of("error", "At most " + batch.getMaxQuestions() + " questions per batch"));
+        }
+
+        SearchFilter filter = new SearchFilter(request.getFileIds(), request.getDocumentNames(),
+                request.getContentTypes());
+        Map<String, Object> searchParams;
+        try {
+            searchParams = milvusService.resolveSearchParams(request.getSearchProfile(), request.getSearchParams());
+        } catch (IllegalArgumentException e) {
+            return Flux.just(Map.of("error", e.getMessage()));
+        }
+        int concurrency = request.getConcurrency() != null && request.getConcurrency() > 0
+                ? Math.min(request.getConcurrency(), batch.getConcurrency())
+                : batch.getConcurrency();
+        String admissionClientId = "batch:" + clientId(httpRequest);
+
+        return Flux.range(0, questions.size())
+                .buffer(batch.getSearchBatchSize())
+                .concatMap(indexes -> {
+                    List<String> texts = indexes.stream().map(questions::get).toList();
+                    return embeddingService.generateEmbeddings(texts, batch.getEmbedBatchSize())
+                            .publishOn(Schedulers.boundedElastic())
+                            .flatMapIterable(vectors -> {
+                                List<List<QueryResult>> hits = milvusService.queryCollectionBatch(texts,
+                                        vectors.stream().map(FloatVec::new).toList(), filter, searchParams);
+                                List<BatchItem> items = new ArrayList<>();
+                                for (int i = 0; i < indexes.size(); i++) {
+                                    items.add(new BatchItem(indexes.get(i), texts.get(i), hits.get(i)));
+                                }
+                                return items;
+                            });
                 })
-                .onErrorResume(e -> Flux.just(Map.of("error", e.getMessage())));
+                .flatMap(item -> answerBatchItem(item, admissionClientId), concurrency);
+    }
+
+    private record BatchItem(int index, String question, List<QueryResult> results) {
+    }
+
+    private Mono<Map<String, Object>> answerBatchItem(BatchItem item, String admissionClientId) {
+        Mono<ChatAdmissionController.Permit> permit = admissionController.acquire(admissionClientId)
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, chatProperties.getAdmission().getRetryAfter())
+                        .filter(ChatAdmissionController.SaturatedException.class::isInstance));
+        return Mono.usingWhen(permit,
+                p -> llmRouter.stream(SYSTEM_PROMPT, buildUserPrompt(item.results(), item.question(), ""))
+                        .collect(joining()),
+                p -> Mono.fromRunnable(p::release))
+                .<Map<String, Object>>map(answer -> Map.of(
+                        "index", item.index(),
+                        "question", item.question(),
+                        "answer", answer,
+                        "results", toResultMaps(item.results())))
+                .onErrorResume(e -> Mono.just(Map.of(
+                        "index", item.index(),
+                        "question", item.question(),
+                        "error", String.valueOf(e.getMessage()))));
+    }
+
+    private static List<Map<String, Object>> toResultMaps(List<QueryResult> results) {
+        return results.stream()
+                .map(r -> Map.<String, Object>of(
+                        "title", r.getDocumentName(),
+                        "pages", r.getDocumentPages(),
+                        "fileId", r.getFileId()))
+                .toList();
+    }
+
+    private String buildUserPrompt(List<QueryResult> results, String question, String history) {
+        String context = contextBuilder.build(results).stream()
+                .map(p -> String.format(
+                        "Title: %s (pages: %s)%nExcerpt: %s",
+                        p.documentName(), p.pages(), p.text()))
+                .collect(joining("\n---\n"));
+        String prompt = String.format(USER_PROMPT_TEMPLATE, context, question);
+        return history.isEmpty() ? prompt : String.format(HISTORY_TEMPLATE, history) + prompt;
+    }
+
+    /**
+     * Admission is shared per API key when one is sent, otherwise per remote
+     * address.
+     */
+    private static String clientId(ServerHttpRequest httpRequest) {
+        String apiKey = httpRequest.getHeaders().getFirst(API_KEY_HEADER);
+        if (apiKey != null && !apiKey.isBlank()) {
+            return "key:" + apiKey;
+        }
+        InetSocketAddress remoteAddress = httpRequest.getRemoteAddress();
+        return remoteAddress != null && remoteAddress.getAddress() != null
+                ? "ip:" + remoteAddress.getAddress().getHostAddress()
+                : "unknown";
     }
-}
\ No newline at end of file
+}
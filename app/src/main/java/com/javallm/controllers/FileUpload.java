@@ -2,11 +2,15 @@ package com.javallm.controllers;
 
 import com.javallm.controllers.dto.FileDto;
 import com.javallm.controllers.dto.FileDto.FileDeleteResponse;
-import com.javallm.services.ExcelProcessingService;
+import com.javallm.models.FileEntity;
+import com.javallm.models.IngestionJobEntity;
+import com.javallm.services.DocumentIndexService;
 import com.javallm.services.FileService;
+import com.javallm.services.FileService.FilePage;
+import com.javallm.services.FileService.FileSort;
+import com.javallm.services.IngestionJobService;
+import com.javallm.services.IngestionService;
 import com.javallm.services.MilvusService;
-import com.javallm.services.PdfProcessingService;
-import com.javallm.services.WordProcessingService;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -24,11 +28,9 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
@@ -37,117 +39,51 @@ import java.util.UUID;
 @RequestMapping("/files")
 @CrossOrigin(origins = "*")
 public class FileUpload {
-    private static final List<String> ALLOWED_MIME_TYPES = Arrays.asList(
-            "application/pdf",
-            "application/msword",
-            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
-            "application/vnd.ms-excel",
-            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
-            "application/vnd.ms-excel.sheet.macroEnabled.12",  // .xlsm files
-            "application/vnd.ms-excel.sheet.binary.macroEnabled.12",  // .xlsb files
-            "text/plain");
-
-    private final String uploadDirectory = "uploads";
-    private final PdfProcessingService pdfProcessingService;
-    private final WordProcessingService wordProcessingService;
-    private final ExcelProcessingService excelProcessingService;  // NEW: Add Excel service
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final String uploadDirectory = IngestionService.UPLOAD_DIRECTORY;
     private final FileService fileService;
     private final MilvusService milvusService;
+    private final DocumentIndexService documentIndexService;
+    private final IngestionJobService ingestionJobService;
 
-    public FileUpload(PdfProcessingService pdfProcessingService,
-            WordProcessingService wordProcessingService,
-            ExcelProcessingService excelProcessingService,  // NEW: Inject Excel service
-            FileService fileService,
-            MilvusService milvusService) {
-        this.pdfProcessingService = pdfProcessingService;
-        this.wordProcessingService = wordProcessingService;
-        this.excelProcessingService = excelProcessingService;  // NEW: Assign Excel service
+    public FileUpload(FileService fileService,
+            MilvusService milvusService,
+            DocumentIndexService documentIndexService,
+            IngestionJobService ingestionJobService) {
         this.fileService = fileService;
         this.milvusService = milvusService;
+        this.documentIndexService = documentIndexService;
+        this.ingestionJobService = ingestionJobService;
         System.out.println("FileUpload controller initialized with upload directory: " + uploadDirectory);
     }
 
+    /**
+     * Stores the file and queues it for ingestion, returning as soon as the
+     * file is on disk. Progress is available from /files/jobs/{jobId}/events.
+     */
+    @PostMapping(value = "/upload", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<FileDto.IngestionJobResponse> uploadFile(@RequestPart("file") FilePart filePart) {
+        System.out.println("Received file upload request for: " + filePart.filename());
+        return storeAndEnqueue(filePart).map(FileDto.IngestionJobResponse::new);
+    }
+
+    /**
+     * Stores and queues the file like /upload, then streams the job's
+     * progress. Disconnecting no longer stops the ingestion.
+     */
     @PostMapping(value = "/upload-sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<ServerSentEvent<String>> uploadFileSse(@RequestPart("file") FilePart filePart) {
         System.out.println("Received SSE file upload request for: " + filePart.filename());
 
-        if (filePart.filename() == null || filePart.filename().isEmpty()) {
-            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "Cannot upload empty file or file without a name."));
-        }
-
-        String contentType = Objects.requireNonNull(filePart.headers().getContentType()).toString();
-        if (!ALLOWED_MIME_TYPES.contains(contentType)) {
-            System.err.println("Unsupported file type attempted: " + contentType + " for file: " + filePart.filename());
-            return Flux.error(new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
-                    "Unsupported file type. Only PDF, Word, Excel, and .txt files are allowed."));
-        }
-
-        String originalFilename = Objects.requireNonNull(filePart.filename());
-        String fileExtension = "";
-        int dotIndex = originalFilename.lastIndexOf('.');
-        if (dotIndex > 0 && dotIndex < originalFilename.length() - 1) {
-            fileExtension = originalFilename.substring(dotIndex);
-        }
-        String fileUUID = UUID.randomUUID().toString();
-        String uniqueFileName = originalFilename + fileUUID + fileExtension;
-        Path filePath = Paths.get(uploadDirectory, uniqueFileName);
-
-        return Mono.fromCallable(() -> {
-            Files.createDirectories(filePath.getParent());
-            return filePath;
-        })
-                .flatMap(createdFilePath -> filePart.transferTo(createdFilePath).thenReturn(createdFilePath))
-                .flatMapMany(finalFilePath -> {
-                    // Handle the IOException from Files.newInputStream reactively
-                    return Mono.fromCallable(() -> Files.newInputStream(finalFilePath))
-                            .flatMapMany(inputStream -> {
-                                // Determine which processing service to use based on file type
-                                Flux<String> processingFlux = determineProcessingService(contentType, originalFilename)
-                                        .flatMapMany(service -> service.apply(inputStream, uniqueFileName, fileUUID));
-
-                                // Convert processing flux to ServerSentEvent flux
-                                Flux<ServerSentEvent<String>> sseProcessingFlux = processingFlux
-                                        .map(message -> ServerSentEvent.<String>builder()
-                                                .data(message)
-                                                .build())
-                                        .doFinally(signalType -> { // Ensure InputStream is closed
-                                            try {
-                                                if (inputStream != null) {
-                                                    inputStream.close();
-                                                }
-                                            } catch (IOException e) {
-                                                System.err.println("Error closing input stream: " + e.getMessage());
-                                            }
-                                        });
-
-                                // Define the database saving Mono
-                                Mono<ServerSentEvent<String>> saveToDbCompletionEvent = Mono.fromRunnable(() -> {
-                                    fileService.saveFile(fileUUID, originalFilename, finalFilePath.toString(),
-                                            contentType);
-                                    System.out.println("File metadata saved to DB for: " + uniqueFileName);
-                                })
-                                        .subscribeOn(Schedulers.boundedElastic())
-                                        .then(Mono.just(ServerSentEvent.<String>builder()
-                                                .data(String.format(
-                                                        "{\"type\": \"DATABASE_SAVE_COMPLETED\", \"documentName\": \"%s\"}",
-                                                        uniqueFileName))
-                                                .build()));
-
-                                return sseProcessingFlux.concatWith(saveToDbCompletionEvent);
-                            })
-                            .onErrorResume(IOException.class, e -> {
-                                System.err.println("Failed to open input stream for file " + finalFilePath + ": "
-                                        + e.getMessage());
-                                return Flux.just(ServerSentEvent.<String>builder()
-                                        .event("error")
-                                        .data("{\"type\": \"ERROR\", \"message\": \"Failed to open file for processing: "
-                                                + e.getMessage() + "\"}")
-                                        .build());
-                            });
-                })
+        return storeAndEnqueue(filePart)
+                .flatMapMany(job -> ingestionJobService.events(job.getId()))
+                .map(message -> ServerSentEvent.<String>builder()
+                        .data(message)
+                        .build())
                 .onErrorResume(IOException.class, e -> {
-                    System.err.println("Failed to upload file " + originalFilename + ": " + e.getMessage());
+                    System.err.println("Failed to upload file " + filePart.filename() + ": " + e.getMessage());
                     e.printStackTrace();
                     return Flux.just(ServerSentEvent.<String>builder()
                             .event("error")
@@ -166,67 +102,197 @@ public class FileUpload {
     }
 
     /**
-     * Determines which processing service to use based on the file's content type
-     * and filename.
-     * Returns a Mono that emits a function that can process the file.
+     * Replaces a stored file with a new revision, keeping its id. The
+     * revision is queued like an upload; only the chunks it changes are
+     * embedded again, and the previous revision keeps serving until then.
      */
-    private Mono<TriFunction<InputStream, String, String, Flux<String>>> determineProcessingService(
-            String contentType, String filename) {
+    @PutMapping(value = "/{fileId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<FileDto.IngestionJobResponse> replaceFile(@PathVariable String fileId,
+            @RequestPart("file") FilePart filePart) {
+        System.out.println("Received revision of file " + fileId + ": " + filePart.filename());
+        ResponseStatusException invalid = validate(filePart);
+        if (invalid != null) {
+            return Mono.error(invalid);
+        }
+        String contentType = Objects.requireNonNull(filePart.headers().getContentType()).toString();
+        String originalFilename = filePart.filename();
+        String uniqueFileName = IngestionService.storedName(originalFilename, fileId);
+        // Staged apart from the upload directory until it has been applied
+        Path stagedPath = Paths.get(uploadDirectory, "revisions", UUID.randomUUID().toString(), uniqueFileName);
 
-        return Mono.fromCallable(() -> {
-            // Check for PDF files
-            if ("application/pdf".equals(contentType)) {
-                System.out.println("Processing as PDF: " + filename);
-                return (InputStream inputStream, String documentName, String fileUUID) -> pdfProcessingService
-                        .processPdf(inputStream, documentName, fileUUID);
-            }
+        return Mono.fromCallable(() -> fileService.getFileById(fileId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found: " + fileId)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(file -> Mono.fromCallable(() -> Files.createDirectories(stagedPath.getParent())))
+                .flatMap(directory -> filePart.transferTo(stagedPath))
+                .publishOn(Schedulers.boundedElastic())
+                .then(Mono.fromCallable(() -> {
+                    IngestionJobEntity job = ingestionJobService.enqueueRevision(fileId, originalFilename,
+                            uniqueFileName, stagedPath.toString(), contentType);
+                    System.out.println("Queued revision job " + job.getId() + " for: " + uniqueFileName);
+                    return new FileDto.IngestionJobResponse(job);
+                }));
+    }
 
-            // Check for Word files (.doc and .docx)
-            if ("application/msword".equals(contentType) ||
-                    "application/vnd.openxmlformats-officedocument.wordprocessingml.document".equals(contentType)) {
-                System.out.println("Processing as Word document: " + filename);
-                return (InputStream inputStream, String documentName, String fileUUID) -> wordProcessingService
-                        .processWord(inputStream, documentName, fileUUID);
-            }
+    @GetMapping(value = "/jobs/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<FileDto.IngestionJobResponse> getJob(@PathVariable String jobId) {
+        return Mono.fromCallable(() -> ingestionJobService.find(jobId)
+                .map(FileDto.IngestionJobResponse::new)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Ingestion job not found: " + jobId)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
 
-            // NEW: Check for Excel files (.xls, .xlsx, .xlsm, .xlsb)
-            if ("application/vnd.ms-excel".equals(contentType) ||
-                    "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet".equals(contentType) ||
-                    "application/vnd.ms-excel.sheet.macroEnabled.12".equals(contentType) ||
-                    "application/vnd.ms-excel.sheet.binary.macroEnabled.12".equals(contentType)) {
-                System.out.println("Processing as Excel document: " + filename);
-                return (InputStream inputStream, String documentName, String fileUUID) -> excelProcessingService
-                        .processExcel(inputStream, documentName, fileUUID);
-            }
+    /**
+     * The job's current state followed by its progress until it completes or
+     * fails. Can be subscribed to any number of times.
+     */
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> jobEvents(@PathVariable String jobId) {
+        return ingestionJobService.events(jobId)
+                .map(message -> ServerSentEvent.<String>builder()
+                        .data(message)
+                        .build());
+    }
 
-            // For other supported file types, you can add additional processing services
-            // here
-            // For now, throw an exception for unsupported types
-            throw new IllegalArgumentException("No processing service available for content type: " + contentType);
-        });
+    /**
+     * Validates the upload, writes it to the upload directory and adds an
+     * ingestion job for it.
+     */
+    private Mono<IngestionJobEntity> storeAndEnqueue(FilePart filePart) {
+        ResponseStatusException invalid = validate(filePart);
+        if (invalid != null) {
+            return Mono.error(invalid);
+        }
+
+        String contentType = Objects.requireNonNull(filePart.headers().getContentType()).toString();
+        String originalFilename = Objects.requireNonNull(filePart.filename());
+        String fileUUID = UUID.randomUUID().toString();
+        String uniqueFileName = IngestionService.storedName(originalFilename, fileUUID);
+        Path filePath = Paths.get(uploadDirectory, uniqueFileName);
+
+        return Mono.fromCallable(() -> {
+            Files.createDirectories(filePath.getParent());
+            return filePath;
+        })
+                .flatMap(createdFilePath -> filePart.transferTo(createdFilePath).thenReturn(createdFilePath))
+                .publishOn(Schedulers.boundedElastic())
+                .map(storedPath -> {
+                    IngestionJobEntity job = ingestionJobService.enqueue(fileUUID, originalFilename,
+                            uniqueFileName, storedPath.toString(), contentType);
+                    System.out.println("Queued ingestion job " + job.getId() + " for: " + uniqueFileName);
+                    return job;
+                });
     }
 
     /**
-     * Functional interface for the processing service methods.
+     * The error to reject an upload with, or null if it can be ingested.
      */
-    @FunctionalInterface
-    private interface TriFunction<T, U, V, R> {
-        R apply(T t, U u, V v);
+    private ResponseStatusException validate(FilePart filePart) {
+        if (filePart.filename() == null || filePart.filename().isEmpty()) {
+            return new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Cannot upload empty file or file without a name.");
+        }
+
+        String contentType = Objects.requireNonNull(filePart.headers().getContentType()).toString();
+        if (!IngestionService.isSupported(contentType)) {
+            System.err.println("Unsupported file type attempted: " + contentType + " for file: " + filePart.filename());
+            return new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                    "Unsupported file type. Only PDF, Word, Excel, and .txt files are allowed.");
+        }
+        return null;
     }
 
-    // listFiles endpoint to return a list of files
+    /**
+     * One page of the stored files, newest first unless sort (uploadedAt or
+     * filename) and order (asc or desc) say otherwise. The response carries
+     * the cursor of the next page.
+     */
     @GetMapping(value = "", produces = MediaType.APPLICATION_JSON_VALUE)
-    public Flux<FileDto.FileListResponse> listFiles() {
-        return Flux.fromIterable(fileService.getAllFiles())
-                .map(fileEntity -> {
-                    return new FileDto.FileListResponse(
-                            fileEntity.getId(),
-                            fileEntity.getFilename(),
-                            fileEntity.getPath(),
-                            fileEntity.getUploadedAt() != null
-                                    ? fileEntity.getUploadedAt()
-                                    : null);
-                });
+    public Mono<FileDto.FileListPage> listFiles(@RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "uploadedAt") String sort,
+            @RequestParam(defaultValue = "desc") String order) {
+        return page(parseSort(sort), parseDescending(order), cursor, parseLimit(limit))
+                .map(page -> new FileDto.FileListPage(
+                        page.files().stream().map(FileUpload::toListResponse).toList(),
+                        page.nextCursor()));
+    }
+
+    /**
+     * Every stored file from the cursor on as NDJSON, fetched limit at a time
+     * as the client reads, so the listing is never held in memory whole.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<FileDto.FileListResponse> streamFiles(@RequestParam(defaultValue = "500") int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "uploadedAt") String sort,
+            @RequestParam(defaultValue = "desc") String order) {
+        FileSort fileSort = parseSort(sort);
+        boolean descending = parseDescending(order);
+        int pageSize = parseLimit(limit);
+        return page(fileSort, descending, cursor, pageSize)
+                .expand(page -> page.nextCursor() == null
+                        ? Mono.empty()
+                        : page(fileSort, descending, page.nextCursor(), pageSize))
+                .flatMapIterable(FilePage::files)
+                .map(FileUpload::toListResponse);
+    }
+
+    /**
+     * Files whose name matches q, best match first: words match whole words
+     * of the name, a trailing * a prefix and "quoted words" a phrase.
+     */
+    @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<List<FileDto.FileListResponse>> searchFiles(@RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit) {
+        int pageSize = parseLimit(limit);
+        return Mono.fromCallable(() -> fileService.searchFilesByFilename(q, pageSize).stream()
+                .map(FileUpload::toListResponse)
+                .toList())
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+    }
+
+    private Mono<FilePage> page(FileSort sort, boolean descending, String cursor, int limit) {
+        return Mono.fromCallable(() -> fileService.listFiles(sort, descending, cursor, limit))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+    }
+
+    private static FileSort parseSort(String sort) {
+        return switch (sort) {
+            case "uploadedAt" -> FileSort.UPLOADED_AT;
+            case "filename" -> FileSort.FILENAME;
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "sort must be uploadedAt or filename");
+        };
+    }
+
+    private static boolean parseDescending(String order) {
+        if (!order.equalsIgnoreCase("asc") && !order.equalsIgnoreCase("desc")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "order must be asc or desc");
+        }
+        return order.equalsIgnoreCase("desc");
+    }
+
+    private static int parseLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
+    private static FileDto.FileListResponse toListResponse(FileEntity fileEntity) {
+        return new FileDto.FileListResponse(
+                fileEntity.getId(),
+                fileEntity.getFilename(),
+                fileEntity.getPath(),
+                fileEntity.getUploadedAt());
     }
 
     @GetMapping("/{fileId}")
@@ -277,7 +343,10 @@ public class FileUpload {
     public Mono<FileDeleteResponse> deleteFile(@PathVariable String fileId) {
         System.out.println("Received request to delete file with ID: " + fileId);
 
-        return Mono.fromRunnable(() -> milvusService.deleteEmbeddingsByFileId(fileId)) // delete embeddings
+        // Cancelled first, so a job still running cannot store the file again once it is gone
+        return Mono.fromRunnable(() -> ingestionJobService.cancelForFile(fileId)) // cancel open jobs
+                .then(Mono.fromRunnable(() -> milvusService.deleteEmbeddingsByFileId(fileId))) // delete embeddings
+                .then(Mono.fromRunnable(() -> documentIndexService.deleteDocument(fileId))) // delete centroid
                 .then(Mono.fromRunnable(() -> fileService.deleteFile(fileId))) // delete DB entry
                 .subscribeOn(Schedulers.boundedElastic())
                 .thenReturn(new FileDeleteResponse(fileId));
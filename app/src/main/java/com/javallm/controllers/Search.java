@@ -0,0 +1,229 @@
+package com.javallm.controllers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.google.common.hash.Hashing;
+import com.javallm.config.RetrievalConfig.RetrievalProperties;
+import com.javallm.config.RetrievalConfig.SearchApi;
+import com.javallm.controllers.dto.SearchDto.KeywordSearchRequest;
+import com.javallm.controllers.dto.SearchDto.SearchRequest;
+import com.javallm.services.EmbeddingService;
+import com.javallm.services.KeywordIndexService;
+import com.javallm.services.KeywordIndexService.KeywordHit;
+import com.javallm.services.MilvusService;
+import com.javallm.services.MilvusService.QueryResult;
+import com.javallm.services.MilvusService.SearchFilter;
+
+import io.milvus.v2.service.vector.request.data.FloatVec;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Retrieval without generation: the ranked chunks for a query, one page at a
+ * time, streamed as NDJSON. Each chunk is one line; the last line carries the
+ * cursor of the next page (null when there is none). /search ranks by vector
+ * similarity, /search/keyword by BM25 over the keyword index.
+ * <p>
+ * Pages are cut from one ranking, with ties broken by chunk id, so a cursor
+ * neither repeats nor skips hits as long as nothing is written. A cursor is
+ * bound to the collection generation it was issued at and is refused with
+ * 409 once the collection has changed, rather than paging through a
+ * different ranking.
+ */
+@RestController
+@RequestMapping("/search")
+@CrossOrigin(origins = "*")
+public class Search {
+
+    private final MilvusService milvusService;
+    private final EmbeddingService embeddingService;
+    private final KeywordIndexService keywordIndexService;
+    private final RetrievalProperties retrievalProperties;
+
+    public Search(MilvusService milvusService, EmbeddingService embeddingService,
+            KeywordIndexService keywordIndexService, RetrievalProperties retrievalProperties) {
+        this.milvusService = milvusService;
+        this.embeddingService = embeddingService;
+        this.keywordIndexService = keywordIndexService;
+        this.retrievalProperties = retrievalProperties;
+    }
+
+    @PostMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Map<String, Object>> search(@RequestBody SearchRequest request) {
+        String query = request.getQuery();
+        if (query == null || query.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Query cannot be null or empty");
+        }
+        int topK = topK(request.getTopK());
+
+        SearchFilter filter = new SearchFilter(request.getFileIds(), request.getDocumentNames(),
+                request.getContentTypes());
+        Map<String, Object> searchParams;
+        try {
+            searchParams = milvusService.resolveSearchParams(request.getSearchProfile(), request.getSearchParams());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        String fingerprint = fingerprint(query, filter, searchParams);
+        // Read before searching, so a write during the search makes the next cursor stale
+        long generation = milvusService.getGeneration();
+        int offset = offset(request.getOffset(), request.getCursor(), fingerprint, generation, topK);
+
+        return embeddingService.generateEmbedding(query)
+                .publishOn(Schedulers.boundedElastic())
+                .map(vec -> milvusService.searchPage(query, new FloatVec(vec), filter, searchParams, topK, offset))
+                .flatMapMany(results -> Flux.range(0, results.size())
+                        .map(i -> toHit(offset + i + 1, results.get(i)))
+                        .concatWith(Mono.just(page(offset, results.size(), topK, fingerprint, generation))));
+    }
+
+    /**
+     * Keyword search over the chunk text and document names, without
+     * embedding the query: words match whole words, "quoted text" a phrase
+     * and a trailing * a prefix, and every term must match. Ranked by BM25
+     * and paged like the semantic search; each hit carries a snippet with the
+     * matches highlighted.
+     */
+    @PostMapping(value = "/keyword", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Map<String, Object>> keywordSearch(@RequestBody KeywordSearchRequest request) {
+        String match;
+        try {
+            match = KeywordIndexService.matchExpression(request.getQuery());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        int topK = topK(request.getTopK());
+        String fingerprint = fingerprint("keyword:" + match, new SearchFilter(request.getFileIds(), null, null),
+                Map.of());
+        // The keyword index follows the collection, so the collection generation covers it
+        long generation = milvusService.getGeneration();
+        int offset = offset(request.getOffset(), request.getCursor(), fingerprint, generation, topK);
+
+        return Mono.fromCallable(() -> keywordIndexService.search(match, request.getFileIds(), topK, offset))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(hits -> Flux.range(0, hits.size())
+                        .map(i -> toHit(offset + i + 1, hits.get(i)))
+                        .concatWith(Mono.just(page(offset, hits.size(), topK, fingerprint, generation))));
+    }
+
+    private int topK(Integer requested) {
+        SearchApi limits = retrievalProperties.getSearchApi();
+        int topK = requested != null ? requested : limits.getDefaultTopK();
+        if (topK < 1 || topK > limits.getMaxTopK()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "topK must be between 1 and " + limits.getMaxTopK());
+        }
+        return topK;
+    }
+
+    private int offset(Integer requested, String cursor, String fingerprint, long generation, int topK) {
+        int maxWindow = retrievalProperties.getSearchApi().getMaxWindow();
+        int offset = cursor != null
+                ? decodeCursor(cursor, fingerprint, generation)
+                : requested != null ? requested : 0;
+        // Written so that a huge offset cannot overflow past the check
+        if (offset < 0 || offset > maxWindow - topK) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "offset + topK must be at most " + maxWindow);
+        }
+        return offset;
+    }
+
+    /**
+     * The last line of a page.
+     */
+    private Map<String, Object> page(int offset, int returned, int topK, String fingerprint, long generation) {
+        int nextOffset = offset + returned;
+        boolean hasMore = returned == topK && nextOffset + topK <= retrievalProperties.getSearchApi().getMaxWindow();
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("offset", offset);
+        page.put("returned", returned);
+        page.put("nextCursor", hasMore ? encodeCursor(nextOffset, generation, fingerprint) : null);
+        return page;
+    }
+
+    private static Map<String, Object> toHit(int rank, QueryResult result) {
+        Map<String, Object> hit = new LinkedHashMap<>();
+        hit.put("rank", rank);
+        hit.put("score", result.getScore());
+        hit.put("fileId", result.getFileId());
+        hit.put("documentName", result.getDocumentName());
+        hit.put("pages", result.getDocumentPages());
+        hit.put("text", result.getText());
+        return hit;
+    }
+
+    private static Map<String, Object> toHit(int rank, KeywordHit result) {
+        Map<String, Object> hit = new LinkedHashMap<>();
+        hit.put("rank", rank);
+        hit.put("score", result.score());
+        hit.put("chunkId", result.chunkId());
+        hit.put("fileId", result.fileId());
+        hit.put("documentName", result.documentName());
+        hit.put("chunkIndex", result.chunkIndex());
+        hit.put("pages", result.pages());
+        hit.put("snippet", result.snippet());
+        return hit;
+    }
+
+    /**
+     * Ties a cursor to the query it was issued for, so it cannot page through
+     * a different ranking: the query, filters and search params, each list
+     * sorted so that the order they were given in does not matter.
+     */
+    private static String fingerprint(String query, SearchFilter filter, Map<String, Object> searchParams) {
+        String key = String.join("|", query, sorted(filter.fileIds()), sorted(filter.documentNames()),
+                sorted(filter.contentTypes()), new TreeMap<>(searchParams).toString());
+        return Hashing.murmur3_32_fixed().hashString(key, StandardCharsets.UTF_8).toString();
+    }
+
+    private static String sorted(List<String> values) {
+        List<String> copy = values == null ? new ArrayList<>() : new ArrayList<>(values);
+        Collections.sort(copy);
+        return copy.toString();
+    }
+
+    private static String encodeCursor(int offset, long generation, String fingerprint) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((offset + ":" + generation + ":" + fingerprint).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int decodeCursor(String cursor, String fingerprint, long generation) {
+        List<String> parts;
+        try {
+            parts = List.of(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 3));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed cursor");
+        }
+        if (parts.size() != 3 || !parts.get(2).equals(fingerprint)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor does not match this query");
+        }
+        try {
+            if (Long.parseLong(parts.get(1)) != generation) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "The collection changed since this cursor was issued; search again from the first page");
+            }
+            return Integer.parseInt(parts.get(0));
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed cursor");
+        }
+    }
+}
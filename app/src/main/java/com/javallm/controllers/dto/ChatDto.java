@@ -1,8 +1,25 @@
 package com.javallm.controllers.dto;
 
+import java.util.List;
+import java.util.Map;
+
 public class ChatDto {
     public static class ChatRequest {
         private String message;
+        // Optional retrieval scope, applied as Milvus filter expressions
+        private List<String> fileIds;
+        private List<String> documentNames;
+        private List<String> contentTypes;
+        // Named recall/latency trade-off ("fast", "balanced", "accurate")
+        private String searchProfile;
+        // Raw ANN search params (ef, nprobe, ...) applied on top of the profile
+        private Map<String, Object> searchParams;
+        // Emit a final "timings" event with the per-stage latency breakdown
+        private boolean includeTimings;
+        // Starts a server-side conversation; its id is sent as the first event of the answer
+        private boolean newSession;
+        // Continues a conversation started by the same client; earlier turns need not be resent
+        private String sessionId;
 
         public ChatRequest() {
         }
@@ -18,6 +35,138 @@ public class ChatDto {
         public void setMessage(String message) {
             this.message = message;
         }
+
+        public List<String> getFileIds() {
+            return fileIds;
+        }
+
+        public void setFileIds(List<String> fileIds) {
+            this.fileIds = fileIds;
+        }
+
+        public List<String> getDocumentNames() {
+            return documentNames;
+        }
+
+        public void setDocumentNames(List<String> documentNames) {
+            this.documentNames = documentNames;
+        }
+
+        public List<String> getContentTypes() {
+            return contentTypes;
+        }
+
+        public void setContentTypes(List<String> contentTypes) {
+            this.contentTypes = contentTypes;
+        }
+
+        public String getSearchProfile() {
+            return searchProfile;
+        }
+
+        public void setSearchProfile(String searchProfile) {
+            this.searchProfile = searchProfile;
+        }
+
+        public Map<String, Object> getSearchParams() {
+            return searchParams;
+        }
+
+        public void setSearchParams(Map<String, Object> searchParams) {
+            this.searchParams = searchParams;
+        }
+
+        public boolean isIncludeTimings() {
+            return includeTimings;
+        }
+
+        public void setIncludeTimings(boolean includeTimings) {
+            this.includeTimings = includeTimings;
+        }
+
+        public boolean isNewSession() {
+            return newSession;
+        }
+
+        public void setNewSession(boolean newSession) {
+            this.newSession = newSession;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public void setSessionId(String sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+
+    public static class BatchChatRequest {
+        private List<String> questions;
+        // Retrieval scope and search settings shared by every question
+        private List<String> fileIds;
+        private List<String> documentNames;
+        private List<String> contentTypes;
+        private String searchProfile;
+        private Map<String, Object> searchParams;
+        // Answers generated in parallel, capped by chat.batch.concurrency
+        private Integer concurrency;
+
+        public List<String> getQuestions() {
+            return questions;
+        }
+
+        public void setQuestions(List<String> questions) {
+            this.questions = questions;
+        }
+
+        public List<String> getFileIds() {
+            return fileIds;
+        }
+
+        public void setFileIds(List<String> fileIds) {
+            this.fileIds = fileIds;
+        }
+
+        public List<String> getDocumentNames() {
+            return documentNames;
+        }
+
+        public void setDocumentNames(List<String> documentNames) {
+            this.documentNames = documentNames;
+        }
+
+        public List<String> getContentTypes() {
+            return contentTypes;
+        }
+
+        public void setContentTypes(List<String> contentTypes) {
+            this.contentTypes = contentTypes;
+        }
+
+        public String getSearchProfile() {
+            return searchProfile;
+        }
+
+        public void setSearchProfile(String searchProfile) {
+            this.searchProfile = searchProfile;
+        }
+
+        public Map<String, Object> getSearchParams() {
+            return searchParams;
+        }
+
+        public void setSearchParams(Map<String, Object> searchParams) {
+            this.searchParams = searchParams;
+        }
+
+        public Integer getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(Integer concurrency) {
+            this.concurrency = concurrency;
+        }
     }
 
     public static class ChatResponse {
@@ -0,0 +1,43 @@
+package com.javallm.controllers.dto;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+/**
+ * The {"delta": "..."} chat stream frame, which writes itself instead of
+ * going through Jackson's generic map serialization for every token. It must
+ * not be a Map: Jackson serializes any Map with its MapSerializer and never
+ * asks it to write itself, so the chat stream is typed as Object and Jackson
+ * picks the serializer by the runtime class of each frame.
+ */
+public final class DeltaFrame implements JsonSerializable {
+
+    private static final String FIELD = "delta";
+
+    private final String delta;
+
+    public DeltaFrame(String delta) {
+        this.delta = delta;
+    }
+
+    public String getDelta() {
+        return delta;
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField(FIELD, delta);
+        gen.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+            throws IOException {
+        serialize(gen, serializers);
+    }
+}
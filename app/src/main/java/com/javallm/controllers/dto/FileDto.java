@@ -1,5 +1,9 @@
 package com.javallm.controllers.dto;
 
+import java.util.List;
+
+import com.javallm.models.IngestionJobEntity;
+
 public class FileDto {
     public static class FileListResponse {
         private String fileId;
@@ -46,6 +50,28 @@ public class FileDto {
         }
     }
 
+    public static class FileListPage {
+        private List<FileListResponse> files;
+        // Pass as cursor to get the next page; null on the last one
+        private String nextCursor;
+
+        public FileListPage() {
+        }
+
+        public FileListPage(List<FileListResponse> files, String nextCursor) {
+            this.files = files;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<FileListResponse> getFiles() {
+            return files;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
     public static class FileDeleteResponse {
         private String message = "File deleted successfully";
         private String fileId;
@@ -74,4 +100,80 @@ public class FileDto {
         }
 
     }
+
+    public static class IngestionJobResponse {
+        private String jobId;
+        private String fileId;
+        private String filename;
+        private String documentName;
+        private String status;
+        private int attempts;
+        private int processedChunks;
+        private Integer totalChunks;
+        private String error;
+
+        public IngestionJobResponse() {
+        }
+
+        public IngestionJobResponse(IngestionJobEntity job) {
+            this.jobId = job.getId();
+            this.fileId = job.getFileId();
+            this.filename = job.getFilename();
+            this.documentName = job.getDocumentName();
+            this.status = job.getStatus().name();
+            this.attempts = job.getAttempts();
+            this.processedChunks = job.getProcessedChunks();
+            this.totalChunks = job.getTotalChunks();
+            this.error = job.getLastError();
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        public String getFileId() {
+            return fileId;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public String getDocumentName() {
+            return documentName;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public int getProcessedChunks() {
+            return processedChunks;
+        }
+
+        public Integer getTotalChunks() {
+            return totalChunks;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    public static class DirectoryImportRequest {
+        // Server-side directory, within ingestion.imports.allowed-directories
+        private String path;
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+    }
 }
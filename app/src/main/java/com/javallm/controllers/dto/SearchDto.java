@@ -0,0 +1,142 @@
+package com.javallm.controllers.dto;
+
+import java.util.List;
+import java.util.Map;
+
+public class SearchDto {
+    public static class SearchRequest {
+        private String query;
+        // Page size; defaults to retrieval.search-api.default-top-k
+        private Integer topK;
+        // Either an explicit offset or the cursor returned by the previous page
+        private Integer offset;
+        private String cursor;
+        // Same retrieval scope and search settings as ChatRequest
+        private List<String> fileIds;
+        private List<String> documentNames;
+        private List<String> contentTypes;
+        private String searchProfile;
+        private Map<String, Object> searchParams;
+
+        public String getQuery() {
+            return query;
+        }
+
+        public void setQuery(String query) {
+            this.query = query;
+        }
+
+        public Integer getTopK() {
+            return topK;
+        }
+
+        public void setTopK(Integer topK) {
+            this.topK = topK;
+        }
+
+        public Integer getOffset() {
+            return offset;
+        }
+
+        public void setOffset(Integer offset) {
+            this.offset = offset;
+        }
+
+        public String getCursor() {
+            return cursor;
+        }
+
+        public void setCursor(String cursor) {
+            this.cursor = cursor;
+        }
+
+        public List<String> getFileIds() {
+            return fileIds;
+        }
+
+        public void setFileIds(List<String> fileIds) {
+            this.fileIds = fileIds;
+        }
+
+        public List<String> getDocumentNames() {
+            return documentNames;
+        }
+
+        public void setDocumentNames(List<String> documentNames) {
+            this.documentNames = documentNames;
+        }
+
+        public List<String> getContentTypes() {
+            return contentTypes;
+        }
+
+        public void setContentTypes(List<String> contentTypes) {
+            this.contentTypes = contentTypes;
+        }
+
+        public String getSearchProfile() {
+            return searchProfile;
+        }
+
+        public void setSearchProfile(String searchProfile) {
+            this.searchProfile = searchProfile;
+        }
+
+        public Map<String, Object> getSearchParams() {
+            return searchParams;
+        }
+
+        public void setSearchParams(Map<String, Object> searchParams) {
+            this.searchParams = searchParams;
+        }
+    }
+
+    public static class KeywordSearchRequest {
+        // Words, "quoted phrases" and prefix* terms, all of which must match
+        private String query;
+        private Integer topK;
+        private Integer offset;
+        private String cursor;
+        private List<String> fileIds;
+
+        public String getQuery() {
+            return query;
+        }
+
+        public void setQuery(String query) {
+            this.query = query;
+        }
+
+        public Integer getTopK() {
+            return topK;
+        }
+
+        public void setTopK(Integer topK) {
+            this.topK = topK;
+        }
+
+        public Integer getOffset() {
+            return offset;
+        }
+
+        public void setOffset(Integer offset) {
+            this.offset = offset;
+        }
+
+        public String getCursor() {
+            return cursor;
+        }
+
+        public void setCursor(String cursor) {
+            this.cursor = cursor;
+        }
+
+        public List<String> getFileIds() {
+            return fileIds;
+        }
+
+        public void setFileIds(List<String> fileIds) {
+            this.fileIds = fileIds;
+        }
+    }
+}
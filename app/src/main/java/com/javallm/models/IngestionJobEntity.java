@@ -0,0 +1,238 @@
+package com.javallm.models;
+
+import org.springframework.data.domain.Persistable;
+
+import jakarta.persistence.*;
+
+/**
+ * A queued or running ingestion of one uploaded file. Workers claim a job by
+ * taking a lease on it; a job whose lease runs out (the worker died or the
+ * instance restarted) is claimed again.
+ */
+@Entity
+@Table(name = "ingestion_jobs")
+public class IngestionJobEntity implements Persistable<String> {
+
+    public enum Status {
+        // CANCELLED: the file was deleted before the job finished
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED;
+
+        public boolean isTerminal() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    @Id
+    private String id;
+
+    @Column(name = "file_id", nullable = false)
+    private String fileId;
+
+    @Column(name = "filename", nullable = false)
+    private String filename;
+
+    @Column(name = "document_name", nullable = false)
+    private String documentName;
+
+    @Column(name = "path", nullable = false)
+    private String path;
+
+    @Column(name = "content_type", nullable = false)
+    private String contentType;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Status status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "max_attempts", nullable = false)
+    private int maxAttempts;
+
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+
+    // Epoch millis
+    @Column(name = "lease_expires_at")
+    private Long leaseExpiresAt;
+
+    @Column(name = "available_at", nullable = false)
+    private long availableAt;
+
+    @Column(name = "processed_chunks", nullable = false)
+    private int processedChunks;
+
+    @Column(name = "total_chunks")
+    private Integer totalChunks;
+
+    // Hash of the chunking settings processed_chunks was counted with
+    @Column(name = "chunking_hash")
+    private String chunkingHash;
+
+    @Column(name = "import_id")
+    private String importId;
+
+    @Column(name = "priority", nullable = false)
+    private int priority;
+
+    // A new revision of a stored file, applied as a diff against its chunks
+    @Column(name = "revision", nullable = false)
+    private boolean revision;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private long createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private long updatedAt;
+
+    // Ids are assigned, so saving a new job would otherwise cost a SELECT to tell it is new
+    @Transient
+    private boolean persisted;
+
+    public IngestionJobEntity() {
+        // Default constructor required by JPA
+    }
+
+    public IngestionJobEntity(String id, String fileId, String filename, String documentName, String path,
+            String contentType, int maxAttempts) {
+        this(id, fileId, filename, documentName, path, contentType, maxAttempts, null, 0);
+    }
+
+    public IngestionJobEntity(String id, String fileId, String filename, String documentName, String path,
+            String contentType, int maxAttempts, String importId, int priority) {
+        long now = System.currentTimeMillis();
+        this.id = id;
+        this.fileId = fileId;
+        this.filename = filename;
+        this.documentName = documentName;
+        this.path = path;
+        this.contentType = contentType;
+        this.status = Status.QUEUED;
+        this.maxAttempts = maxAttempts;
+        this.importId = importId;
+        this.priority = priority;
+        this.availableAt = now;
+        this.createdAt = now;
+        this.updatedAt = now;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        persisted = true;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getDocumentName() {
+        return documentName;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public Long getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public long getAvailableAt() {
+        return availableAt;
+    }
+
+    public int getProcessedChunks() {
+        return processedChunks;
+    }
+
+    public Integer getTotalChunks() {
+        return totalChunks;
+    }
+
+    public String getChunkingHash() {
+        return chunkingHash;
+    }
+
+    public String getImportId() {
+        return importId;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public boolean isRevision() {
+        return revision;
+    }
+
+    public void setRevision(boolean revision) {
+        this.revision = revision;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestionJobEntity{" +
+                "id=" + id +
+                ", fileId='" + fileId + '\'' +
+                ", filename='" + filename + '\'' +
+                ", status=" + status +
+                ", attempts=" + attempts +
+                ", processedChunks=" + processedChunks +
+                ", totalChunks=" + totalChunks +
+                '}';
+    }
+}
@@ -3,6 +3,8 @@ package com.javallm.repository;
 
 import com.javallm.models.FileEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -16,6 +18,34 @@ public interface FileRepository extends JpaRepository<FileEntity, String> {
     // delete(entity)
     // count()
 
-    // You can also define custom query methods just by naming convention:
-    List<FileEntity> findByFilenameContaining(String filename);
+    // Files whose name matches an FTS5 match expression (see KeywordIndexService.matchExpression), best
+    // match first. The index (V10) is searched before the join, so only the returned files are read; its
+    // rowids are the keys of file_keys.
+    @Query(value = "SELECT f.* FROM (SELECT rowid, rank FROM files_fts WHERE files_fts MATCH :match "
+            + "ORDER BY rank LIMIT :limit) m JOIN file_keys k ON k.key = m.rowid JOIN files f ON f.id = k.file_id "
+            + "ORDER BY m.rank", nativeQuery = true)
+    List<FileEntity> findByFilenameMatch(@Param("match") String match, @Param("limit") int limit);
+
+    // Keyset pages for the file listing: the files after (or before) the given sort key and id, which is
+    // the position of the last file of the previous page. Each runs as a range scan of its V6 index.
+
+    @Query(value = "SELECT * FROM files WHERE (IFNULL(uploaded_at, ''), id) > (:key, :id) "
+            + "ORDER BY IFNULL(uploaded_at, ''), id LIMIT :limit", nativeQuery = true)
+    List<FileEntity> findPageByUploadedAtAsc(@Param("key") String key, @Param("id") String id,
+            @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM files WHERE (IFNULL(uploaded_at, ''), id) < (:key, :id) "
+            + "ORDER BY IFNULL(uploaded_at, '') DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<FileEntity> findPageByUploadedAtDesc(@Param("key") String key, @Param("id") String id,
+            @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM files WHERE (filename, id) > (:key, :id) "
+            + "ORDER BY filename, id LIMIT :limit", nativeQuery = true)
+    List<FileEntity> findPageByFilenameAsc(@Param("key") String key, @Param("id") String id,
+            @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM files WHERE (filename, id) < (:key, :id) "
+            + "ORDER BY filename DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<FileEntity> findPageByFilenameDesc(@Param("key") String key, @Param("id") String id,
+            @Param("limit") int limit);
 }
\ No newline at end of file
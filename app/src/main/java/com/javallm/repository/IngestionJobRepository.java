@@ -0,0 +1,83 @@
+package com.javallm.repository;
+
+import com.javallm.models.IngestionJobEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * State changes on a job go through single UPDATE statements guarded by the
+ * lease owner, so a worker that lost its lease cannot overwrite the work of
+ * the one that took over.
+ */
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJobEntity, String> {
+
+    /**
+     * Leases the oldest job of the highest priority that is due, or running
+     * under an expired lease, to the given owner token. Returns the number of jobs claimed (0 or 1).
+     * Jobs of a file that has a job running under a live lease wait for it,
+     * so two revisions of a file are never applied at the same time.
+     */
+    @Modifying
+    @Query(value = "UPDATE ingestion_jobs SET status = 'RUNNING', lease_owner = :owner, "
+            + "lease_expires_at = :leaseUntil, attempts = attempts + 1, updated_at = :now "
+            + "WHERE id = (SELECT j.id FROM ingestion_jobs j "
+            + "WHERE ((j.status = 'QUEUED' AND j.available_at <= :now) "
+            + "OR (j.status = 'RUNNING' AND j.lease_expires_at < :now)) "
+            + "AND NOT EXISTS (SELECT 1 FROM ingestion_jobs r WHERE r.file_id = j.file_id "
+            + "AND r.status = 'RUNNING' AND r.lease_expires_at >= :now) "
+            + "ORDER BY j.priority, j.created_at LIMIT 1)", nativeQuery = true)
+    int claimNext(@Param("owner") String owner, @Param("leaseUntil") long leaseUntil, @Param("now") long now);
+
+    Optional<IngestionJobEntity> findByLeaseOwner(String leaseOwner);
+
+    List<IngestionJobEntity> findByImportIdOrderByCreatedAt(String importId);
+
+    /**
+     * Sets the checkpoint an attempt starts from and the chunking settings it
+     * is counted with. Returns 0 if the lease was lost.
+     */
+    @Modifying
+    @Query(value = "UPDATE ingestion_jobs SET processed_chunks = :processed, chunking_hash = :chunkingHash, "
+            + "updated_at = :now WHERE id = :id AND lease_owner = :owner AND status = 'RUNNING'", nativeQuery = true)
+    int startAttempt(@Param("id") String id, @Param("owner") String owner, @Param("processed") int processed,
+            @Param("chunkingHash") String chunkingHash, @Param("now") long now);
+
+    /**
+     * Records progress (null counts are left as they are) and extends the lease. Returns 0 if the lease was lost.
+     */
+    @Modifying
+    @Query(value = "UPDATE ingestion_jobs SET processed_chunks = COALESCE(:processed, processed_chunks), "
+            + "total_chunks = COALESCE(:total, total_chunks), lease_expires_at = :leaseUntil, updated_at = :now "
+            + "WHERE id = :id AND lease_owner = :owner AND status = 'RUNNING'", nativeQuery = true)
+    int heartbeat(@Param("id") String id, @Param("owner") String owner, @Param("processed") Integer processed,
+            @Param("total") Integer total, @Param("leaseUntil") long leaseUntil, @Param("now") long now);
+
+    /**
+     * Moves a leased job to COMPLETED, FAILED or back to QUEUED (available
+     * again at availableAt) and drops the lease. Returns 0 if the lease was lost.
+     */
+    @Modifying
+    @Query(value = "UPDATE ingestion_jobs SET status = :status, lease_owner = NULL, lease_expires_at = NULL, "
+            + "available_at = :availableAt, last_error = :error, updated_at = :now "
+            + "WHERE id = :id AND lease_owner = :owner", nativeQuery = true)
+    int release(@Param("id") String id, @Param("owner") String owner, @Param("status") String status,
+            @Param("availableAt") long availableAt, @Param("error") String error, @Param("now") long now);
+
+    /**
+     * Cancels the queued and running jobs of a file and drops their leases, so
+     * a worker running one loses it at its next lease check. Returns the
+     * number of jobs cancelled.
+     */
+    @Modifying
+    @Query(value = "UPDATE ingestion_jobs SET status = 'CANCELLED', lease_owner = NULL, lease_expires_at = NULL, "
+            + "last_error = :reason, updated_at = :now WHERE file_id = :fileId AND status IN ('QUEUED', 'RUNNING')",
+            nativeQuery = true)
+    int cancelByFileId(@Param("fileId") String fileId, @Param("reason") String reason, @Param("now") long now);
+}
@@ -0,0 +1,315 @@
+package com.javallm.services;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.javallm.config.IngestionConfig.Imports;
+import com.javallm.config.IngestionConfig.IngestionProperties;
+import com.javallm.models.IngestionJobEntity;
+import com.javallm.models.IngestionJobEntity.Status;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Imports many files at once from a ZIP or TAR archive or a server-side
+ * directory. Every supported file is copied to the upload directory and
+ * queued as an ingestion job tagged with the import id, so the files are
+ * processed in parallel by the worker pool under its global caps. Progress
+ * and the final report are computed from those jobs.
+ */
+@Service
+public class BulkImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportService.class);
+
+    private static final int ENQUEUE_BATCH_SIZE = 100;
+
+    /**
+     * A file of the import that was not queued, and why.
+     */
+    public record SkippedEntry(String name, String reason) {
+    }
+
+    public record ImportHandle(String importId, long startedAt, int queued, List<SkippedEntry> skipped) {
+    }
+
+    private final IngestionJobService jobService;
+    private final Imports config;
+    private final ObjectMapper objectMapper;
+    // Start time and skipped entries; the queued files themselves are in the job table
+    private final Cache<String, ImportHandle> imports = CacheBuilder.newBuilder()
+            .expireAfterWrite(Duration.ofDays(1))
+            .build();
+
+    public BulkImportService(IngestionJobService jobService, IngestionProperties ingestionProperties,
+            ObjectMapper objectMapper) {
+        this.jobService = jobService;
+        this.config = ingestionProperties.getImports();
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Whether the directory lies within one of the configured
+     * ingestion.imports.allowed-directories.
+     */
+    public boolean isAllowedDirectory(Path directory) {
+        try {
+            Path real = directory.toRealPath();
+            for (String allowed : config.getAllowedDirectories()) {
+                if (real.startsWith(Paths.get(allowed).toRealPath())) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            // A directory that does not resolve is not allowed
+        }
+        return false;
+    }
+
+    /**
+     * Queues the supported files of a .zip, .tar, .tar.gz or .tgz archive.
+     * Blocking.
+     */
+    public ImportHandle importArchive(Path archive, String archiveName) throws IOException {
+        Collector collector = new Collector();
+        String name = archiveName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".zip")) {
+            try (ZipFile zip = new ZipFile(archive.toFile())) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory()) {
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            collector.add(entry.getName(), in);
+                        }
+                    }
+                }
+            }
+        } else if (name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            InputStream in = new BufferedInputStream(Files.newInputStream(archive));
+            if (!name.endsWith(".tar")) {
+                in = new GzipCompressorInputStream(in);
+            }
+            try (TarArchiveInputStream tar = new TarArchiveInputStream(in)) {
+                TarArchiveEntry entry;
+                while ((entry = tar.getNextEntry()) != null) {
+                    if (entry.isFile()) {
+                        // The stream ends with the current entry
+                        collector.add(entry.getName(), tar);
+                    }
+                }
+            }
+        } else {
+            throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                    "Unsupported archive. Use .zip, .tar, .tar.gz or .tgz.");
+        }
+        return collector.finish("archive " + archiveName);
+    }
+
+    /**
+     * Queues the supported files under a directory, recursively. Blocking; the
+     * caller is responsible for checking the directory may be read.
+     */
+    public ImportHandle importDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Not a directory: " + directory);
+        }
+        Collector collector = new Collector();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    collector.add(directory.relativize(file).toString(), in);
+                }
+            }
+        }
+        return collector.finish("directory " + directory);
+    }
+
+    /**
+     * Copies entries into the upload directory and queues them under one
+     * import id.
+     */
+    private class Collector {
+        private final String importId = UUID.randomUUID().toString();
+        private final long startedAt = System.currentTimeMillis();
+        private final List<SkippedEntry> skipped = new ArrayList<>();
+        // Copied but not queued yet; queued in batches to keep the write connection free for the workers
+        private final List<IngestionJobEntity> pending = new ArrayList<>();
+        private int queued;
+
+        void add(String entryName, InputStream content) throws IOException {
+            String baseName = Paths.get(entryName).getFileName().toString();
+            if (baseName.startsWith(".") || entryName.startsWith("__MACOSX/")) {
+                return;
+            }
+            String contentType = IngestionService.contentTypeFor(baseName);
+            if (contentType == null) {
+                skipped.add(new SkippedEntry(entryName, "unsupported file type"));
+                return;
+            }
+            if (queued >= config.getMaxFiles()) {
+                skipped.add(new SkippedEntry(entryName, "import file limit reached"));
+                return;
+            }
+            String fileId = UUID.randomUUID().toString();
+            Path target = Paths.get(IngestionService.UPLOAD_DIRECTORY, IngestionService.storedName(baseName, fileId));
+            Files.createDirectories(target.getParent());
+            Files.copy(content, target, StandardCopyOption.REPLACE_EXISTING);
+            pending.add(jobService.importJob(fileId, entryName, target.getFileName().toString(),
+                    target.toString(), contentType, importId));
+            queued++;
+            if (pending.size() >= ENQUEUE_BATCH_SIZE) {
+                enqueuePending();
+            }
+        }
+
+        private void enqueuePending() {
+            jobService.enqueueAll(List.copyOf(pending));
+            pending.clear();
+        }
+
+        ImportHandle finish(String source) {
+            enqueuePending();
+            ImportHandle handle = new ImportHandle(importId, startedAt, queued, List.copyOf(skipped));
+            imports.put(importId, handle);
+            logger.info("Import {} from {}: queued {} files, skipped {}.", importId, source, queued,
+                    skipped.size());
+            return handle;
+        }
+    }
+
+    /**
+     * Aggregate progress of an import every progress interval, ending with the
+     * per-file report once every job has completed or failed.
+     */
+    public Flux<String> progress(String importId) {
+        return Mono.fromCallable(() -> jobService.findByImport(importId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(initial -> {
+                    if (initial.isEmpty() && imports.getIfPresent(importId) == null) {
+                        return Flux.error(new ResponseStatusException(HttpStatus.NOT_FOUND,
+                                "Import not found: " + importId));
+                    }
+                    return Flux.interval(Duration.ZERO, config.getProgressInterval())
+                            .concatMap(tick -> Mono.fromCallable(() -> jobService.findByImport(importId))
+                                    .subscribeOn(Schedulers.boundedElastic()))
+                            .takeUntil(BulkImportService::isFinished)
+                            .map(jobs -> toJson(progressMessage(importId, jobs)))
+                            .concatWith(Mono.fromCallable(() -> toJson(report(importId)))
+                                    .subscribeOn(Schedulers.boundedElastic()));
+                });
+    }
+
+    private static boolean isFinished(List<IngestionJobEntity> jobs) {
+        return jobs.stream().allMatch(job -> job.getStatus().isTerminal());
+    }
+
+    /**
+     * Per-file outcome of an import, plus the summary counts. Blocking.
+     */
+    public Map<String, Object> report(String importId) {
+        List<IngestionJobEntity> jobs = jobService.findByImport(importId);
+        ImportHandle handle = imports.getIfPresent(importId);
+        if (jobs.isEmpty() && handle == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Import not found: " + importId);
+        }
+        Map<String, Object> report = progressMessage(importId, jobs);
+        report.put("type", "IMPORT_REPORT");
+        List<Map<String, Object>> files = new ArrayList<>();
+        for (IngestionJobEntity job : jobs) {
+            Map<String, Object> file = new LinkedHashMap<>();
+            file.put("name", job.getFilename());
+            file.put("jobId", job.getId());
+            file.put("fileId", job.getFileId());
+            file.put("status", job.getStatus().name());
+            file.put("attempts", job.getAttempts());
+            file.put("chunks", job.getProcessedChunks());
+            file.put("error", job.getLastError());
+            files.add(file);
+        }
+        report.put("files", files);
+        // Not known any more if the import was started before a restart
+        report.put("skipped", handle != null ? handle.skipped() : null);
+        return report;
+    }
+
+    private Map<String, Object> progressMessage(String importId, List<IngestionJobEntity> jobs) {
+        ImportHandle handle = imports.getIfPresent(importId);
+        long startedAt = handle != null
+                ? handle.startedAt()
+                : jobs.stream().mapToLong(IngestionJobEntity::getCreatedAt).min().orElse(System.currentTimeMillis());
+        boolean finished = isFinished(jobs);
+        long endedAt = finished
+                ? jobs.stream().mapToLong(IngestionJobEntity::getUpdatedAt).max().orElse(startedAt)
+                : System.currentTimeMillis();
+        double seconds = Math.max(endedAt - startedAt, 1) / 1000.0;
+
+        int completed = 0;
+        int failed = 0;
+        int running = 0;
+        long chunks = 0;
+        for (IngestionJobEntity job : jobs) {
+            if (job.getStatus() == Status.COMPLETED) {
+                completed++;
+            } else if (job.getStatus() == Status.FAILED || job.getStatus() == Status.CANCELLED) {
+                failed++;
+            } else if (job.getStatus() == Status.RUNNING) {
+                running++;
+            }
+            chunks += job.getProcessedChunks();
+        }
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", finished ? "IMPORT_FINISHED" : "IMPORT_PROGRESS");
+        message.put("importId", importId);
+        message.put("totalFiles", jobs.size());
+        message.put("completedFiles", completed);
+        message.put("failedFiles", failed);
+        message.put("runningFiles", running);
+        message.put("skippedFiles", handle != null ? handle.skipped().size() : null);
+        message.put("processedChunks", chunks);
+        message.put("elapsedSeconds", seconds);
+        message.put("filesPerSecond", (completed + failed) / seconds);
+        message.put("chunksPerSecond", chunks / seconds);
+        return message;
+    }
+
+    public String toJson(Object message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.javallm.services;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.javallm.config.ChatConfig.Admission;
+import com.javallm.config.ChatConfig.ChatProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Caps the number of chat generations in flight. Requests over the cap wait in
+ * one queue per client, and queues are served round-robin so a single busy
+ * client cannot starve the others. A full queue or an expired wait fails fast
+ * with 429 and Retry-After.
+ */
+@Service
+public class ChatAdmissionController {
+
+    private final Admission config;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    // Guarded by this; insertion order is the round-robin order of clients
+    private final LinkedHashMap<String, Deque<Waiter>> queues = new LinkedHashMap<>();
+    private int active;
+    private int queued;
+
+    public ChatAdmissionController(ChatProperties chatProperties, MeterRegistry meterRegistry) {
+        this.config = chatProperties.getAdmission();
+        this.waitTimer = Timer.builder("chat.admission.wait")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("chat.admission.rejected").register(meterRegistry);
+        Gauge.builder("chat.admission.active", this, ChatAdmissionController::activeCount).register(meterRegistry);
+        Gauge.builder("chat.admission.queued", this, ChatAdmissionController::queuedCount).register(meterRegistry);
+    }
+
+    /**
+     * Thrown when a request cannot be admitted; rendered as 429 with a
+     * Retry-After header.
+     */
+    public static class SaturatedException extends ResponseStatusException {
+        private final Duration retryAfter;
+
+        public SaturatedException(String reason, Duration retryAfter) {
+            super(HttpStatus.TOO_MANY_REQUESTS, reason);
+            this.retryAfter = retryAfter;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())));
+            return headers;
+        }
+    }
+
+    /**
+     * A slot for one generation. Releasing more than once is harmless.
+     */
+    public class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+        // Permits handed out while admission control is disabled hold no slot
+        private final boolean counted;
+
+        private Permit(boolean counted) {
+            this.counted = counted;
+        }
+
+        public void release() {
+            if (counted && released.compareAndSet(false, true)) {
+                releaseSlot();
+            }
+        }
+    }
+
+    private final class Waiter {
+        final String clientId;
+        final Sinks.One<Permit> sink = Sinks.one();
+        final long enqueuedNanos = System.nanoTime();
+        Permit permit;
+
+        Waiter(String clientId) {
+            this.clientId = clientId;
+        }
+    }
+
+    /**
+     * Emits a permit once a slot is free, or errors with
+     * {@link SaturatedException}. The caller must release the permit.
+     */
+    public Mono<Permit> acquire(String clientId) {
+        return Mono.defer(() -> {
+            if (!config.isEnabled()) {
+                return Mono.just(new Permit(false));
+            }
+            Waiter waiter;
+            synchronized (this) {
+                if (active < config.getMaxConcurrent() && queued == 0) {
+                    active++;
+                    waitTimer.record(0, TimeUnit.NANOSECONDS);
+                    return Mono.just(new Permit(true));
+                }
+                Deque<Waiter> queue = queues.get(clientId);
+                int clientQueued = queue == null ? 0 : queue.size();
+                if (queued >= config.getMaxQueued() || clientQueued >= config.getMaxQueuedPerClient()) {
+                    rejected.increment();
+                    return Mono.error(saturated("Too many chat requests in progress, try again later"));
+                }
+                waiter = new Waiter(clientId);
+                queues.computeIfAbsent(clientId, key -> new ArrayDeque<>()).addLast(waiter);
+                queued++;
+            }
+            return waiter.sink.asMono()
+                    .timeout(config.getQueueTimeout())
+                    .onErrorMap(TimeoutException.class, e -> {
+                        rejected.increment();
+                        return saturated("Timed out waiting for a free chat slot");
+                    })
+                    .doFinally(signal -> {
+                        if (signal != SignalType.ON_COMPLETE) {
+                            abandon(waiter);
+                        }
+                    });
+        });
+    }
+
+    private SaturatedException saturated(String reason) {
+        return new SaturatedException(reason, config.getRetryAfter());
+    }
+
+    private void releaseSlot() {
+        Waiter next;
+        synchronized (this) {
+            active--;
+            next = dequeue();
+            if (next == null) {
+                return;
+            }
+            active++;
+            next.permit = new Permit(true);
+        }
+        waitTimer.record(System.nanoTime() - next.enqueuedNanos, TimeUnit.NANOSECONDS);
+        if (next.sink.tryEmitValue(next.permit).isFailure()) {
+            next.permit.release();
+        }
+    }
+
+    /**
+     * Takes the head of the next client's queue and moves that client to the
+     * back of the rotation.
+     */
+    private Waiter dequeue() {
+        Iterator<Map.Entry<String, Deque<Waiter>>> iterator = queues.entrySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Map.Entry<String, Deque<Waiter>> head = iterator.next();
+        iterator.remove();
+        Waiter waiter = head.getValue().pollFirst();
+        if (!head.getValue().isEmpty()) {
+            queues.put(head.getKey(), head.getValue());
+        }
+        queued--;
+        return waiter;
+    }
+
+    /**
+     * A waiter that timed out or was cancelled either leaves the queue or, if
+     * it was granted a slot in the meantime, gives the slot back.
+     */
+    private void abandon(Waiter waiter) {
+        Permit granted;
+        synchronized (this) {
+            Deque<Waiter> queue = queues.get(waiter.clientId);
+            if (queue != null && queue.remove(waiter)) {
+                queued--;
+                if (queue.isEmpty()) {
+                    queues.remove(waiter.clientId);
+                }
+                return;
+            }
+            granted = waiter.permit;
+        }
+        if (granted != null) {
+            granted.release();
+        }
+    }
+
+    private synchronized int activeCount() {
+        return active;
+    }
+
+    private synchronized int queuedCount() {
+        return queued;
+    }
+}
@@ -0,0 +1,87 @@
+package com.javallm.services;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Per-stage latency of chat requests, exported as the "chat.latency" timer
+ * tagged by stage: rewrite (follow-up questions in a session), embed, search,
+ * context, ttft (prompt sent to first token), generation (first to last
+ * token) and total.
+ */
+@Component
+public class ChatMetrics {
+
+    public static final String REWRITE = "rewrite";
+    public static final String EMBED = "embed";
+    public static final String SEARCH = "search";
+    public static final String CONTEXT = "context";
+    public static final String TTFT = "ttft";
+    public static final String GENERATION = "generation";
+    public static final String TOTAL = "total";
+
+    private static final List<String> STAGES = List.of(REWRITE, EMBED, SEARCH, CONTEXT, TTFT, GENERATION, TOTAL);
+
+    private final Map<String, Timer> timers = new LinkedHashMap<>();
+
+    public ChatMetrics(MeterRegistry meterRegistry) {
+        for (String stage : STAGES) {
+            timers.put(stage, Timer.builder("chat.latency")
+                    .tag("stage", stage)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    public Stopwatch start() {
+        return new Stopwatch();
+    }
+
+    /**
+     * Times the consecutive stages of one request. Each lap covers the time
+     * since the previous lap (or the start).
+     */
+    public class Stopwatch {
+        private final long startNanos = System.nanoTime();
+        private final Map<String, Long> laps = new LinkedHashMap<>();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private long lastNanos = startNanos;
+
+        public synchronized void lap(String stage) {
+            long now = System.nanoTime();
+            long elapsed = now - lastNanos;
+            lastNanos = now;
+            laps.put(stage, elapsed);
+            timers.get(stage).record(elapsed, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Records the total once; later calls are no-ops.
+         */
+        public synchronized void finish() {
+            if (finished.compareAndSet(false, true)) {
+                long elapsed = System.nanoTime() - startNanos;
+                laps.put(TOTAL, elapsed);
+                timers.get(TOTAL).record(elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Stage durations in milliseconds, in the order they were recorded.
+         */
+        public synchronized Map<String, Object> toMillis() {
+            Map<String, Object> millis = new LinkedHashMap<>();
+            laps.forEach((stage, nanos) -> millis.put(stage, nanos / 1_000_000.0));
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.javallm.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conversation state of one chat session: a rolling summary of the older
+ * turns followed by the recent turns verbatim.
+ */
+public class ChatSession {
+
+    public record Turn(String question, String answer) {
+    }
+
+    private final String id;
+    // The client (API key or address) that started the session; only it may use the session
+    private final String ownerId;
+    private String summary = "";
+    private final List<Turn> turns = new ArrayList<>();
+
+    public ChatSession(String id, String ownerId) {
+        this.id = id;
+        this.ownerId = ownerId;
+    }
+
+    public ChatSession(String id, String ownerId, String summary, List<Turn> turns) {
+        this.id = id;
+        this.ownerId = ownerId;
+        this.summary = summary;
+        this.turns.addAll(turns);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOwnerId() {
+        return ownerId;
+    }
+
+    public synchronized String getSummary() {
+        return summary;
+    }
+
+    public synchronized List<Turn> getTurns() {
+        return List.copyOf(turns);
+    }
+
+    public synchronized boolean isEmpty() {
+        return summary.isEmpty() && turns.isEmpty();
+    }
+
+    public synchronized void addTurn(Turn turn) {
+        turns.add(turn);
+    }
+
+    /**
+     * Replaces the summary and drops the oldest turns it now covers. Turns
+     * added while the summary was being written are kept.
+     */
+    public synchronized void compact(String newSummary, int summarisedTurns) {
+        summary = newSummary;
+        turns.subList(0, Math.min(summarisedTurns, turns.size())).clear();
+    }
+}
@@ -0,0 +1,199 @@
+package com.javallm.services;
+
+import static java.util.stream.Collectors.joining;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.javallm.config.ChatConfig.ChatProperties;
+import com.javallm.config.ChatConfig.Sessions;
+import com.javallm.services.ChatSession.Turn;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Keeps per-turn prompts bounded for multi-turn chat. Recent turns are sent
+ * verbatim; once the history outgrows its token budget the older turns are
+ * folded into a rolling summary by the model. Follow-up questions are
+ * rewritten into standalone queries before retrieval.
+ */
+@Service
+public class ChatSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatSessionService.class);
+
+    private static final String REWRITE_PROMPT = """
+            Rewrite the final question of this conversation as a standalone search query that can be \
+            understood without the conversation. Reply with the query only.
+
+            %s
+            Final question: %s
+            /no_think
+            """;
+    private static final String SUMMARY_PROMPT = """
+            Update the summary of a conversation with the turns below. Keep names, numbers, documents \
+            and decisions; drop pleasantries. Reply with the summary only, in at most %d words.
+
+            Current summary:
+            %s
+
+            New turns:
+            %s
+            /no_think
+            """;
+
+    private final ChatSessionStore store;
+    private final LlmRouter llmRouter;
+    private final Sessions config;
+    // Sessions with a compaction in flight
+    private final Set<String> compacting = ConcurrentHashMap.newKeySet();
+
+    public ChatSessionService(ChatSessionStore store, LlmRouter llmRouter, ChatProperties chatProperties) {
+        this.store = store;
+        this.llmRouter = llmRouter;
+        this.config = chatProperties.getSessions();
+    }
+
+    /**
+     * Starts an empty session for the client. Its id is random, so it cannot
+     * be guessed by other clients.
+     */
+    public ChatSession start(String ownerId) {
+        ChatSession session = new ChatSession(UUID.randomUUID().toString(), ownerId);
+        store.save(session);
+        return session;
+    }
+
+    /**
+     * The session with this id if the client started it. A session of another
+     * client is reported as missing, like an expired one.
+     */
+    public Optional<ChatSession> open(String sessionId, String ownerId) {
+        return store.find(sessionId).filter(session -> session.getOwnerId().equals(ownerId));
+    }
+
+    /**
+     * Ends the session if the client started it. Returns whether it did.
+     */
+    public boolean delete(String sessionId, String ownerId) {
+        if (open(sessionId, ownerId).isEmpty()) {
+            return false;
+        }
+        store.delete(sessionId);
+        return true;
+    }
+
+    /**
+     * The query to retrieve with: the question itself on the first turn,
+     * otherwise a standalone rewrite that resolves references to earlier turns.
+     * Falls back to the raw question if the rewrite fails.
+     */
+    public Mono<String> retrievalQuery(ChatSession session, String question) {
+        List<Turn> turns = session.getTurns();
+        if (!config.isRewriteQueries() || turns.isEmpty()) {
+            return Mono.just(question);
+        }
+        List<Turn> recent = turns.subList(Math.max(0, turns.size() - config.getRewriteTurns()), turns.size());
+        String prompt = String.format(REWRITE_PROMPT, formatTurns(recent), question);
+        return llmRouter.stream(null, prompt)
+                .collect(joining())
+                .map(String::strip)
+                .filter(rewritten -> !rewritten.isEmpty())
+                .defaultIfEmpty(question)
+                .doOnNext(rewritten -> logger.debug("Rewrote '{}' as '{}'.", question, rewritten))
+                .onErrorResume(e -> {
+                    logger.warn("Query rewrite failed, retrieving with the raw question: {}", e.getMessage());
+                    return Mono.just(question);
+                });
+    }
+
+    /**
+     * Summary and recent turns formatted for the prompt, or an empty string for
+     * a new session. Turns that do not fit the history budget (because a
+     * compaction is still pending, or the recent turns alone are too long) are
+     * left out, newest kept first.
+     */
+    public String history(ChatSession session) {
+        String summary = session.getSummary();
+        String summaryBlock = summary.isEmpty() ? "" : "Summary of earlier conversation: " + summary + "\n\n";
+        int remaining = config.getHistoryMaxTokens() - ContextBuilder.estimateTokens(summaryBlock);
+
+        List<Turn> turns = session.getTurns();
+        List<Turn> kept = new ArrayList<>();
+        for (int i = turns.size() - 1; i >= 0; i--) {
+            int tokens = ContextBuilder.estimateTokens(formatTurns(List.of(turns.get(i))));
+            if (tokens > remaining) {
+                break;
+            }
+            kept.add(0, turns.get(i));
+            remaining -= tokens;
+        }
+        return (summaryBlock + formatTurns(kept)).strip();
+    }
+
+    private static int historyTokens(ChatSession session) {
+        return ContextBuilder.estimateTokens(session.getSummary() + formatTurns(session.getTurns()));
+    }
+
+    /**
+     * Appends a completed turn and, if the history is now over budget, starts
+     * compacting it in the background.
+     */
+    public void recordTurn(ChatSession session, String question, String answer) {
+        Optional<ChatSession> updated = store.update(session.getId(),
+                current -> current.addTurn(new Turn(question, answer)));
+        if (updated.isPresent() && historyTokens(updated.get()) > config.getHistoryMaxTokens()
+                && compacting.add(session.getId())) {
+            compact(session.getId())
+                    .doFinally(signal -> compacting.remove(session.getId()))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .subscribe(null, e -> logger.warn("Failed to compact session '{}': {}", session.getId(),
+                            e.getMessage()));
+        }
+    }
+
+    /**
+     * Summarises the older turns of the session as stored now. The summary is
+     * applied to the session as stored once it is written, keeping the turns
+     * recorded meanwhile; only one compaction per session runs at a time.
+     */
+    private Mono<Void> compact(String sessionId) {
+        Optional<ChatSession> stored = store.find(sessionId);
+        if (stored.isEmpty()) {
+            return Mono.empty();
+        }
+        ChatSession session = stored.get();
+        List<Turn> turns = session.getTurns();
+        int summarised = turns.size() - config.getKeepRecentTurns();
+        if (summarised <= 0) {
+            return Mono.empty();
+        }
+        String prompt = String.format(SUMMARY_PROMPT,
+                // Roughly three quarters of a word per token
+                config.getSummaryMaxTokens() * 3 / 4,
+                session.getSummary().isEmpty() ? "(none)" : session.getSummary(),
+                formatTurns(turns.subList(0, summarised)));
+        return llmRouter.stream(null, prompt)
+                .collect(joining())
+                .doOnNext(summary -> {
+                    store.update(sessionId, current -> current.compact(summary.strip(), summarised));
+                    logger.info("Compacted {} turns of session '{}' into the summary.", summarised, sessionId);
+                })
+                .then();
+    }
+
+    private static String formatTurns(List<Turn> turns) {
+        return turns.stream()
+                .map(turn -> "User: " + turn.question() + "\nAssistant: " + turn.answer())
+                .collect(joining("\n\n"));
+    }
+}
@@ -0,0 +1,29 @@
+package com.javallm.services;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Storage for chat sessions. The in-memory implementation is the default; a
+ * persistent one can replace it by being registered as a bean.
+ */
+public interface ChatSessionStore {
+
+    Optional<ChatSession> find(String sessionId);
+
+    /**
+     * Stores a new session.
+     */
+    void save(ChatSession session);
+
+    /**
+     * Applies a change to the stored session and stores the result, returning
+     * it, or empty if the session no longer exists. The change must be
+     * applied to the current state of the session, so that concurrent turns
+     * and compactions do not overwrite each other: a persistent store reads,
+     * changes and writes the session under a lock or in a transaction.
+     */
+    Optional<ChatSession> update(String sessionId, Consumer<ChatSession> change);
+
+    void delete(String sessionId);
+}
@@ -0,0 +1,80 @@
+package com.javallm.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The sliding window the text extractors split documents with, anchored so
+ * that an edit only moves the chunks around it. The window is restarted at
+ * every section start (a page, a sheet), and each step moves it to the start
+ * of a line rather than a fixed number of characters on. Where a window
+ * starts therefore depends only on the text since the last anchor, and an
+ * inserted character shifts the chunks up to the next line the windows of
+ * both revisions agree on, usually one or two windows on, instead of every
+ * chunk after it.
+ */
+final class ChunkWindows {
+
+    /**
+     * A window over the text, from start inclusive to end exclusive.
+     */
+    record Window(int start, int end) {
+    }
+
+    private ChunkWindows() {
+    }
+
+    /**
+     * Splits text into windows of at most size characters that overlap by
+     * about overlap characters, without crossing the section starts given.
+     */
+    static List<Window> split(String text, List<Integer> sectionStarts, int size, int overlap) {
+        List<Window> windows = new ArrayList<>();
+        List<Integer> lineStarts = new ArrayList<>();
+        for (int i = text.indexOf('\n'); i >= 0 && i + 1 < text.length(); i = text.indexOf('\n', i + 1)) {
+            lineStarts.add(i + 1);
+        }
+        TreeSet<Integer> bounds = new TreeSet<>(sectionStarts);
+        bounds.add(0);
+        bounds.add(text.length());
+        Integer from = bounds.first();
+        for (Integer to = bounds.higher(from); to != null; from = to, to = bounds.higher(to)) {
+            splitSection(text, from, to, lineStarts, size, size - overlap, windows);
+        }
+        return windows;
+    }
+
+    private static void splitSection(String text, int from, int to, List<Integer> lineStarts, int size, int stride,
+            List<Window> windows) {
+        int start = from;
+        while (start < to) {
+            int end = Math.min(start + size, to);
+            // To avoid cutting words in half, find the last space before the hard limit.
+            if (end < to) {
+                int lastSpace = text.lastIndexOf(' ', end);
+                if (lastSpace > start) {
+                    end = lastSpace;
+                }
+            }
+            windows.add(new Window(start, end));
+            if (end == to) {
+                return;
+            }
+            // The last line starting in the second half of the stride, so the window still moves on far enough
+            int next = lastLineStart(lineStarts, start + stride / 2, start + stride);
+            if (next < 0) {
+                next = start + stride;
+            }
+            // Ensure we always make forward progress without skipping text.
+            start = Math.min(next, end);
+        }
+    }
+
+    private static int lastLineStart(List<Integer> lineStarts, int from, int to) {
+        int found = Collections.binarySearch(lineStarts, to);
+        int index = found >= 0 ? found : -found - 2;
+        return index >= 0 && lineStarts.get(index) >= from ? lineStarts.get(index) : -1;
+    }
+}
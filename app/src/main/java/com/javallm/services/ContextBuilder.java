@@ -0,0 +1,203 @@
+package com.javallm.services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.javallm.config.ChatConfig.ChatProperties;
+import com.javallm.config.ChatConfig.Context;
+import com.javallm.services.MilvusService.QueryResult;
+
+/**
+ * Turns retrieved chunks into prompt context. Chunks are cut with an overlap,
+ * so hits from neighbouring windows of the same file are stitched back into
+ * one passage; near-duplicates are dropped and the remainder is packed by
+ * score into a token budget.
+ */
+@Service
+public class ContextBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContextBuilder.class);
+
+    private static final int CHARS_PER_TOKEN = 4;
+    // A passage cut to fit the budget should still be worth reading
+    private static final int MIN_TRUNCATED_TOKENS = 64;
+    private static final int SHINGLE_WORDS = 3;
+
+    private final ChatProperties chatProperties;
+
+    public ContextBuilder(ChatProperties chatProperties) {
+        this.chatProperties = chatProperties;
+    }
+
+    /**
+     * A stretch of one document's text as it goes into the prompt.
+     */
+    public record ContextPassage(String documentName, String pages, String text, float score, String fileId) {
+    }
+
+    private static final class Passage {
+        final String fileId;
+        final String documentName;
+        final Set<String> labels = new LinkedHashSet<>();
+        String text;
+        float score;
+
+        Passage(QueryResult result) {
+            this.fileId = result.getFileId();
+            this.documentName = result.getDocumentName();
+            this.labels.add(result.getDocumentPages());
+            this.text = result.getText() == null ? "" : result.getText();
+            this.score = result.getScore();
+        }
+
+        void absorb(Passage other, String mergedText) {
+            text = mergedText;
+            labels.addAll(other.labels);
+            score = Math.max(score, other.score);
+        }
+    }
+
+    public static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    public List<ContextPassage> build(List<QueryResult> results) {
+        Context config = chatProperties.getContext();
+
+        // 1) Stitch overlapping neighbours within each file
+        Map<Object, List<Passage>> byFile = new LinkedHashMap<>();
+        for (QueryResult result : results) {
+            Passage passage = new Passage(result);
+            Object key = passage.fileId != null ? passage.fileId : passage;
+            byFile.computeIfAbsent(key, k -> new ArrayList<>()).add(passage);
+        }
+        List<Passage> passages = new ArrayList<>();
+        for (List<Passage> group : byFile.values()) {
+            passages.addAll(mergeNeighbours(group, config.getMinOverlapChars()));
+        }
+
+        // 2) Drop near-duplicates, keeping the better scored copy
+        passages.sort(Comparator.comparingDouble((Passage p) -> p.score).reversed());
+        List<Passage> distinct = new ArrayList<>();
+        List<Set<String>> shingles = new ArrayList<>();
+        for (Passage passage : passages) {
+            Set<String> candidate = shingles(passage.text);
+            boolean duplicate = shingles.stream()
+                    .anyMatch(kept -> jaccard(candidate, kept) >= config.getNearDuplicateThreshold());
+            if (!duplicate) {
+                distinct.add(passage);
+                shingles.add(candidate);
+            }
+        }
+
+        // 3) Pack by score into the token budget
+        List<ContextPassage> context = new ArrayList<>();
+        int remaining = config.getMaxTokens();
+        for (Passage passage : distinct) {
+            String text = passage.text;
+            int tokens = estimateTokens(text);
+            if (tokens > remaining) {
+                if (remaining < MIN_TRUNCATED_TOKENS) {
+                    break;
+                }
+                text = truncate(text, remaining * CHARS_PER_TOKEN);
+                tokens = estimateTokens(text);
+            }
+            context.add(new ContextPassage(passage.documentName, String.join(", ", passage.labels), text,
+                    passage.score, passage.fileId));
+            remaining -= tokens;
+        }
+
+        logger.debug("Built context from {} chunks: {} passages, ~{} tokens.", results.size(), context.size(),
+                config.getMaxTokens() - remaining);
+        return context;
+    }
+
+    private static List<Passage> mergeNeighbours(List<Passage> group, int minOverlap) {
+        List<Passage> merged = new ArrayList<>(group);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            outer: for (int i = 0; i < merged.size(); i++) {
+                for (int j = 0; j < merged.size(); j++) {
+                    if (i == j) {
+                        continue;
+                    }
+                    Passage first = merged.get(i);
+                    Passage second = merged.get(j);
+                    String stitched = stitch(first.text, second.text, minOverlap);
+                    if (stitched != null) {
+                        first.absorb(second, stitched);
+                        merged.remove(j);
+                        changed = true;
+                        break outer;
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns {@code first} followed by the part of {@code second} it does not
+     * already contain, or null when the two do not overlap.
+     */
+    private static String stitch(String first, String second, int minOverlap) {
+        if (first.contains(second)) {
+            return first;
+        }
+        if (second.length() < minOverlap || first.length() < minOverlap) {
+            return null;
+        }
+        String probe = second.substring(0, minOverlap);
+        // The earliest match is the longest overlap
+        for (int index = first.indexOf(probe); index >= 0; index = first.indexOf(probe, index + 1)) {
+            if (second.startsWith(first.substring(index))) {
+                return first.substring(0, index) + second;
+            }
+        }
+        return null;
+    }
+
+    private static Set<String> shingles(String text) {
+        String[] words = text.toLowerCase(Locale.ROOT).split("\\W+");
+        Set<String> shingles = new HashSet<>();
+        for (int i = 0; i + SHINGLE_WORDS <= words.length; i++) {
+            shingles.add(String.join(" ", List.of(words).subList(i, i + SHINGLE_WORDS)));
+        }
+        if (shingles.isEmpty()) {
+            shingles.add(String.join(" ", words));
+        }
+        return shingles;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        int intersection = 0;
+        for (String shingle : a) {
+            if (b.contains(shingle)) {
+                intersection++;
+            }
+        }
+        int union = a.size() + b.size() - intersection;
+        return union == 0 ? 1 : (double) intersection / union;
+    }
+
+    private static String truncate(String text, int maxChars) {
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        int end = text.lastIndexOf(' ', maxChars);
+        return text.substring(0, end > 0 ? end : maxChars) + " ...";
+    }
+}
@@ -0,0 +1,89 @@
+package com.javallm.services;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.javallm.config.ChatConfig.ChatProperties;
+import com.javallm.config.ChatConfig.Streaming;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Merges a stream of model tokens into fewer, larger deltas. The first token
+ * passes through immediately to keep time-to-first-token low; after that a
+ * delta is emitted when it reaches the size limit or its oldest token has
+ * waited for the maximum delay.
+ */
+@Component
+public class DeltaCoalescer {
+
+    private final Streaming config;
+    private final Scheduler timer = Schedulers.parallel();
+
+    public DeltaCoalescer(ChatProperties chatProperties) {
+        this.config = chatProperties.getStreaming();
+    }
+
+    public Flux<String> coalesce(Flux<String> tokens) {
+        if (!config.isCoalesce()) {
+            return tokens;
+        }
+        long maxDelayNanos = config.getMaxDelay().toNanos();
+        int maxChars = config.getMaxChars();
+
+        return Flux.create(sink -> {
+            Object lock = new Object();
+            StringBuilder pending = new StringBuilder();
+            Disposable[] scheduledFlush = new Disposable[1];
+            boolean[] first = { true };
+
+            // Emitting under the lock keeps timer and upstream flushes in order
+            Runnable flush = () -> {
+                synchronized (lock) {
+                    if (scheduledFlush[0] != null) {
+                        scheduledFlush[0].dispose();
+                        scheduledFlush[0] = null;
+                    }
+                    if (pending.length() > 0) {
+                        sink.next(pending.toString());
+                        pending.setLength(0);
+                    }
+                }
+            };
+
+            Disposable upstream = tokens.subscribe(token -> {
+                boolean flushNow;
+                synchronized (lock) {
+                    pending.append(token);
+                    flushNow = first[0] || pending.length() >= maxChars;
+                    first[0] = false;
+                    if (!flushNow && scheduledFlush[0] == null) {
+                        scheduledFlush[0] = timer.schedule(flush, maxDelayNanos, TimeUnit.NANOSECONDS);
+                    }
+                }
+                if (flushNow) {
+                    flush.run();
+                }
+            }, error -> {
+                flush.run();
+                sink.error(error);
+            }, () -> {
+                flush.run();
+                sink.complete();
+            });
+
+            sink.onDispose(() -> {
+                upstream.dispose();
+                synchronized (lock) {
+                    if (scheduledFlush[0] != null) {
+                        scheduledFlush[0].dispose();
+                    }
+                }
+            });
+        });
+    }
+}
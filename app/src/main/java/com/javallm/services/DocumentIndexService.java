@@ -0,0 +1,387 @@
+package com.javallm.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.javallm.config.MilvusConfig.MilvusProperties;
+import com.javallm.services.EmbeddingService.EmbeddingModel;
+import com.javallm.services.MilvusService.SearchFilter;
+
+import io.milvus.v2.client.MilvusClientV2;
+import io.milvus.v2.common.DataType;
+import io.milvus.v2.common.IndexParam;
+import io.milvus.v2.common.IndexParam.MetricType;
+import io.milvus.v2.service.collection.request.AddFieldReq;
+import io.milvus.v2.service.collection.request.AlterCollectionPropertiesReq;
+import io.milvus.v2.service.collection.request.CreateCollectionReq;
+import io.milvus.v2.service.collection.request.DescribeCollectionReq;
+import io.milvus.v2.service.collection.request.DropCollectionReq;
+import io.milvus.v2.service.collection.request.GetLoadStateReq;
+import io.milvus.v2.service.collection.request.HasCollectionReq;
+import io.milvus.v2.service.collection.request.LoadCollectionReq;
+import io.milvus.v2.service.vector.request.DeleteReq;
+import io.milvus.v2.service.vector.request.SearchReq;
+import io.milvus.v2.service.vector.request.UpsertReq;
+import io.milvus.v2.service.vector.request.data.FloatVec;
+import io.milvus.v2.service.vector.response.SearchResp;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Document-level index holding one centroid vector per file. It is the first
+ * stage of two-stage retrieval: pick the most relevant documents here, then
+ * search only their chunks.
+ */
+@Service
+public class DocumentIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentIndexService.class);
+
+    private static final String DOCUMENT_COLLECTION_NAME = "micla_documents";
+    private static final String FILE_ID = "file_id";
+    private static final String DOCUMENT_NAME = "document_name";
+    private static final String CONTENT_TYPE = "content_type";
+    private static final String CHUNK_COUNT = "chunk_count";
+    private static final String VECTOR_FIELD = "embedding";
+    private static final int BACKFILL_BATCH_SIZE = 100;
+    // Collection property recording that the backfill ran to the end
+    private static final String BACKFILLED_PROPERTY = "micla.backfilled";
+
+    private final MilvusClientV2 milvusClient;
+    private final MilvusProperties milvusProperties;
+    private final MilvusService milvusService;
+
+    private volatile boolean collectionReady;
+    // False until every existing file has a centroid; two-stage search is skipped until then
+    private volatile boolean backfilled;
+    // Set when the embedding model changes, so the next initialization rebuilds
+    private volatile boolean stale;
+
+    public DocumentIndexService(MilvusClientV2 milvusClient, MilvusProperties milvusProperties,
+            MilvusService milvusService) {
+        this.milvusClient = milvusClient;
+        this.milvusProperties = milvusProperties;
+        this.milvusService = milvusService;
+    }
+
+    /**
+     * A document-level hit from the first stage.
+     */
+    public record DocumentHit(String fileId, float score) {
+    }
+
+    /**
+     * Running mean of a document's chunk embeddings. Normalized on read so it
+     * can be compared with COSINE like the chunk vectors.
+     */
+    public static class Centroid {
+        private double[] sum;
+        private int count;
+
+        public synchronized void add(float[] embedding) {
+            if (sum == null) {
+                sum = new double[embedding.length];
+            }
+            for (int i = 0; i < embedding.length; i++) {
+                sum[i] += embedding[i];
+            }
+            count++;
+        }
+
+        public synchronized int count() {
+            return count;
+        }
+
+        public synchronized float[] vector() {
+            double norm = 0;
+            for (double v : sum) {
+                norm += v * v;
+            }
+            norm = norm == 0 ? 1 : Math.sqrt(norm);
+            float[] vector = new float[sum.length];
+            for (int i = 0; i < sum.length; i++) {
+                vector[i] = (float) (sum[i] / norm);
+            }
+            return vector;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        Mono.fromRunnable(this::initializeCollection)
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> logger.warn("Document index not available yet: {}", e.getMessage()));
+    }
+
+    public boolean isReady() {
+        return collectionReady && backfilled;
+    }
+
+    /**
+     * Centroids of the previous model are useless once chat embeds with a new
+     * one. Two-stage search falls back to flat search until they are rebuilt.
+     */
+    @EventListener
+    public void onEmbeddingModelChanged(EmbeddingModelChangedEvent event) {
+        synchronized (this) {
+            collectionReady = false;
+            backfilled = false;
+            stale = true;
+        }
+        Mono.fromRunnable(this::initializeCollection)
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> logger.warn("Failed to rebuild the document index: {}", e.getMessage()));
+    }
+
+    /**
+     * Creates the document collection on first use and backfills it from the
+     * chunk vectors already stored. The backfill is marked complete on the
+     * collection once it finished, so one cut short by a crash or restart is
+     * run again. A collection holding centroids of another embedding model
+     * than the chunks is rebuilt.
+     */
+    public void initializeCollection() {
+        if (collectionReady) {
+            return;
+        }
+        synchronized (this) {
+            if (collectionReady) {
+                return;
+            }
+            milvusService.initializeCollection();
+            boolean exists = milvusClient.hasCollection(HasCollectionReq.builder()
+                    .collectionName(DOCUMENT_COLLECTION_NAME)
+                    .build());
+            if (exists && (stale || !milvusService.collectionModel(DOCUMENT_COLLECTION_NAME)
+                    .matches(milvusService.getEmbeddingModel()))) {
+                milvusClient.dropCollection(DropCollectionReq.builder()
+                        .collectionName(DOCUMENT_COLLECTION_NAME)
+                        .build());
+                logger.info("Dropped '{}', its centroids belong to another embedding model.", DOCUMENT_COLLECTION_NAME);
+                exists = false;
+            }
+            stale = false;
+            if (!exists) {
+                createCollection();
+            }
+            collectionReady = true;
+            if (!exists || !isBackfilled()) {
+                backfillFromChunks();
+                markBackfilled();
+            }
+            backfilled = true;
+        }
+    }
+
+    private void createCollection() {
+        EmbeddingModel model = milvusService.getEmbeddingModel();
+        CreateCollectionReq.CollectionSchema schema = CreateCollectionReq.CollectionSchema.builder()
+                .build();
+        schema.addField(AddFieldReq.builder()
+                .fieldName(FILE_ID)
+                .dataType(DataType.VarChar)
+                .maxLength(64)
+                .isPrimaryKey(true)
+                .autoID(false)
+                .build());
+        schema.addField(AddFieldReq.builder()
+                .fieldName(DOCUMENT_NAME)
+                .dataType(DataType.VarChar)
+                .build());
+        schema.addField(AddFieldReq.builder()
+                .fieldName(CONTENT_TYPE)
+                .dataType(DataType.VarChar)
+                .maxLength(256)
+                .build());
+        schema.addField(AddFieldReq.builder()
+                .fieldName(CHUNK_COUNT)
+                .dataType(DataType.Int64)
+                .build());
+        schema.addField(AddFieldReq.builder()
+                .fieldName(VECTOR_FIELD)
+                .dataType(DataType.FloatVector)
+                .dimension(model.dimension())
+                .build());
+
+        MilvusProperties.Index vectorIndex = milvusProperties.getIndex();
+        List<IndexParam> indexParams = Arrays.asList(
+                IndexParam.builder()
+                        .fieldName(VECTOR_FIELD)
+                        .indexType(IndexParam.IndexType.valueOf(vectorIndex.getType()))
+                        .metricType(MetricType.valueOf(vectorIndex.getMetric()))
+                        .extraParams(vectorIndex.getParams())
+                        .build(),
+                IndexParam.builder()
+                        .fieldName(DOCUMENT_NAME)
+                        .indexType(IndexParam.IndexType.INVERTED)
+                        .build(),
+                IndexParam.builder()
+                        .fieldName(CONTENT_TYPE)
+                        .indexType(IndexParam.IndexType.INVERTED)
+                        .build());
+
+        milvusClient.createCollection(CreateCollectionReq.builder()
+                .collectionName(DOCUMENT_COLLECTION_NAME)
+                .collectionSchema(schema)
+                .indexParams(indexParams)
+                .properties(MilvusService.modelProperties(model))
+                .build());
+        logger.info("Collection '{}' created successfully.", DOCUMENT_COLLECTION_NAME);
+    }
+
+    private boolean isBackfilled() {
+        Map<String, String> properties = milvusClient.describeCollection(DescribeCollectionReq.builder()
+                .collectionName(DOCUMENT_COLLECTION_NAME)
+                .build()).getProperties();
+        return properties != null && "true".equals(properties.get(BACKFILLED_PROPERTY));
+    }
+
+    private void markBackfilled() {
+        milvusClient.alterCollectionProperties(AlterCollectionPropertiesReq.builder()
+                .collectionName(DOCUMENT_COLLECTION_NAME)
+                .property(BACKFILLED_PROPERTY, "true")
+                .build());
+    }
+
+    private void backfillFromChunks() {
+        boolean hasContentType = milvusService.hasField(CONTENT_TYPE);
+        List<String> fields = hasContentType
+                ? Arrays.asList(FILE_ID, DOCUMENT_NAME, CONTENT_TYPE, VECTOR_FIELD)
+                : Arrays.asList(FILE_ID, DOCUMENT_NAME, VECTOR_FIELD);
+
+        Map<String, Centroid> centroids = new LinkedHashMap<>();
+        Map<String, Map<String, Object>> firstRows = new HashMap<>();
+        milvusService.scanChunks(fields, row -> {
+            String fileId = (String) row.get(FILE_ID);
+            List<?> values = (List<?>) row.get(VECTOR_FIELD);
+            float[] embedding = new float[values.size()];
+            for (int i = 0; i < embedding.length; i++) {
+                embedding[i] = ((Number) values.get(i)).floatValue();
+            }
+            centroids.computeIfAbsent(fileId, id -> new Centroid()).add(embedding);
+            firstRows.putIfAbsent(fileId, row);
+        });
+
+        List<JsonObject> rows = new ArrayList<>();
+        for (Map.Entry<String, Centroid> entry : centroids.entrySet()) {
+            Map<String, Object> first = firstRows.get(entry.getKey());
+            String contentType = hasContentType ? (String) first.get(CONTENT_TYPE) : "";
+            rows.add(createRow(entry.getKey(), (String) first.get(DOCUMENT_NAME), contentType, entry.getValue()));
+            if (rows.size() == BACKFILL_BATCH_SIZE) {
+                upsert(rows);
+                rows.clear();
+            }
+        }
+        if (!rows.isEmpty()) {
+            upsert(rows);
+        }
+        logger.info("Backfilled {} document centroids into '{}'.", centroids.size(), DOCUMENT_COLLECTION_NAME);
+    }
+
+    /**
+     * Stores (or replaces) the centroid of a fully ingested document.
+     */
+    public void upsertDocument(String fileId, String documentName, String contentType, Centroid centroid) {
+        if (centroid.count() == 0) {
+            return;
+        }
+        initializeCollection();
+        upsert(Collections.singletonList(createRow(fileId, documentName, contentType, centroid)));
+        logger.info("Stored centroid of {} chunks for document '{}'.", centroid.count(), documentName);
+    }
+
+    public void deleteDocument(String fileId) {
+        try {
+            initializeCollection();
+            milvusClient.delete(DeleteReq.builder()
+                    .collectionName(DOCUMENT_COLLECTION_NAME)
+                    .filter(FILE_ID + " == {file_id}")
+                    .filterTemplateValues(Collections.singletonMap("file_id", fileId))
+                    .build());
+        } catch (Exception e) {
+            logger.error("Failed to delete document centroid for file ID '{}': {}", fileId, e.getMessage(), e);
+            throw new RuntimeException("Failed to delete document centroid: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stage one: the documents whose centroid is closest to the query, best
+     * first. Name and content type restrictions of the filter apply here too.
+     */
+    public List<DocumentHit> searchDocuments(FloatVec queryVector, int topN, SearchFilter filter,
+            Map<String, Object> searchParams) {
+        ensureLoaded();
+        Map<String, Object> templateValues = new HashMap<>();
+        String expression = filter.toExpression(templateValues);
+
+        Map<String, Object> params = new HashMap<>(searchParams);
+        if (params.get("ef") instanceof Number ef && ef.intValue() < topN) {
+            params.put("ef", topN);
+        }
+
+        SearchResp searchResp = milvusClient.search(SearchReq.builder()
+                .collectionName(DOCUMENT_COLLECTION_NAME)
+                .annsField(VECTOR_FIELD)
+                .data(Collections.singletonList(queryVector))
+                .topK(topN)
+                .metricType(MetricType.valueOf(milvusProperties.getIndex().getMetric()))
+                .searchParams(params)
+                .filter(expression)
+                .filterTemplateValues(templateValues)
+                .outputFields(Collections.singletonList(FILE_ID))
+                .build());
+
+        List<DocumentHit> hits = new ArrayList<>();
+        for (SearchResp.SearchResult hit : searchResp.getSearchResults().get(0)) {
+            hits.add(new DocumentHit((String) hit.getEntity().get(FILE_ID), hit.getScore()));
+        }
+        return hits;
+    }
+
+    private void ensureLoaded() {
+        boolean isLoaded = milvusClient.getLoadState(GetLoadStateReq.builder()
+                .collectionName(DOCUMENT_COLLECTION_NAME)
+                .build());
+        if (!isLoaded) {
+            logger.info("Collection '{}' is not loaded, loading it now.", DOCUMENT_COLLECTION_NAME);
+            milvusClient.loadCollection(LoadCollectionReq.builder()
+                    .collectionName(DOCUMENT_COLLECTION_NAME)
+                    .build());
+        }
+    }
+
+    private void upsert(List<JsonObject> rows) {
+        milvusClient.upsert(UpsertReq.builder()
+                .collectionName(DOCUMENT_COLLECTION_NAME)
+                .data(rows)
+                .build());
+    }
+
+    private JsonObject createRow(String fileId, String documentName, String contentType, Centroid centroid) {
+        JsonObject row = new JsonObject();
+        row.addProperty(FILE_ID, fileId);
+        row.addProperty(DOCUMENT_NAME, documentName);
+        row.addProperty(CONTENT_TYPE, contentType != null ? contentType : "");
+        row.addProperty(CHUNK_COUNT, centroid.count());
+
+        JsonArray vectorArray = new JsonArray();
+        for (float val : centroid.vector()) {
+            vectorArray.add(val);
+        }
+        row.add(VECTOR_FIELD, vectorArray);
+        return row;
+    }
+}
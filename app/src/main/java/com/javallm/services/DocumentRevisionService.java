@@ -0,0 +1,204 @@
+package com.javallm.services;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonObject;
+import com.javallm.services.IngestionService.ExtractedChunk;
+import com.javallm.services.MilvusService.StoredChunk;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Applies a new revision of a stored file as a diff against its chunks, so
+ * the embedding cost of an edit is proportional to the edit rather than to
+ * the document. The revision is extracted and each chunk hashed:
+ * <ul>
+ * <li>a chunk stored at the same position with the same text and metadata
+ * is left alone,</li>
+ * <li>a chunk whose text is stored elsewhere in the file (it moved, or its
+ * page label changed) is rewritten with the stored vector,</li>
+ * <li>only chunks with new text are embedded,</li>
+ * <li>stored chunks past the end of the revision are deleted.</li>
+ * </ul>
+ * Chunk windows are anchored to page and line starts (see
+ * {@link ChunkWindows}), so an edit that changes the length of the text only
+ * shifts the chunks up to the next line both revisions cut at; those are
+ * embedded again, and the chunks after them keep their text but not their
+ * position, so they are rewritten with their stored vectors. Edits in place,
+ * appended or removed trailing content and renames are cheap.
+ */
+@Service
+public class DocumentRevisionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentRevisionService.class);
+
+    // Texts per embedding request (TEI max-client-batch-size)
+    private static final int EMBED_BATCH_SIZE = 32;
+    private static final int WRITE_BATCH_SIZE = 512;
+
+    private final IngestionService ingestionService;
+    private final EmbeddingService embeddingService;
+    private final MilvusService milvusService;
+    private final DocumentIndexService documentIndexService;
+    private final IngestionThrottle throttle;
+
+    public DocumentRevisionService(IngestionService ingestionService, EmbeddingService embeddingService,
+            MilvusService milvusService, DocumentIndexService documentIndexService, IngestionThrottle throttle) {
+        this.ingestionService = ingestionService;
+        this.embeddingService = embeddingService;
+        this.milvusService = milvusService;
+        this.documentIndexService = documentIndexService;
+        this.throttle = throttle;
+    }
+
+    /**
+     * What a revision changes. vectors holds the embedding of every chunk of
+     * the revision known before embedding, by position, and null for the
+     * positions in toEmbed.
+     */
+    record Diff(List<ExtractedChunk> chunks, long uploadedAt, int unchanged, List<JsonObject> reused,
+            List<Integer> toEmbed, List<Long> removed, float[][] vectors) {
+    }
+
+    /**
+     * Replaces the stored chunks of the file with those of the revision in
+     * the input stream. Emits the same progress messages as a first
+     * ingestion; a retry simply diffs against whatever was stored by then.
+     */
+    public Flux<String> replace(InputStream inputStream, String documentName, String fileId, String contentType) {
+        milvusService.initializeCollection();
+        return Mono.fromCallable(() -> diff(ingestionService.extractChunks(inputStream, documentName, contentType),
+                milvusService.fileChunks(fileId), documentName, fileId, contentType))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(diff -> apply(diff, documentName, fileId, contentType))
+                .doOnError(e -> logger.error("Failed to apply the revision of '{}': {}", documentName,
+                        e.getMessage(), e));
+    }
+
+    /**
+     * Compares the chunks of a revision with those stored for the file.
+     */
+    static Diff diff(List<ExtractedChunk> chunks, List<StoredChunk> stored, String documentName, String fileId,
+            String contentType) {
+        Map<Long, StoredChunk> storedById = new HashMap<>();
+        Map<HashCode, float[]> vectorsByText = new HashMap<>();
+        // Rows keep the time of the first upload, so unchanged ones need not be rewritten
+        long uploadedAt = stored.isEmpty() ? System.currentTimeMillis() : stored.get(0).uploadedAt();
+        for (StoredChunk chunk : stored) {
+            storedById.put(chunk.id(), chunk);
+            vectorsByText.putIfAbsent(textHash(chunk.text()), chunk.embedding());
+        }
+
+        int unchanged = 0;
+        List<JsonObject> reused = new ArrayList<>();
+        List<Integer> toEmbed = new ArrayList<>();
+        float[][] vectors = new float[chunks.size()][];
+        for (int i = 0; i < chunks.size(); i++) {
+            ExtractedChunk chunk = chunks.get(i);
+            StoredChunk previous = storedById.remove(MilvusService.chunkId(fileId, i));
+            if (previous != null && previous.text().equals(chunk.content())
+                    && Objects.equals(previous.pages(), chunk.label())
+                    && Objects.equals(previous.documentName(), documentName)
+                    && Objects.equals(previous.contentType(), contentType)) {
+                vectors[i] = previous.embedding();
+                unchanged++;
+                continue;
+            }
+            float[] vector = vectorsByText.get(textHash(chunk.content()));
+            if (vector != null) {
+                vectors[i] = vector;
+                reused.add(MilvusService.chunkRow(fileId, i, contentType, uploadedAt, chunk.content(),
+                        documentName, chunk.label(), vector));
+            } else {
+                toEmbed.add(i);
+            }
+        }
+        // Whatever is left has no position in the revision any more
+        List<Long> removed = new ArrayList<>(storedById.keySet());
+        logger.info("Revision of '{}': {} chunks, {} unchanged, {} rewritten with stored vectors, {} to embed, "
+                + "{} removed.", documentName, chunks.size(), unchanged, reused.size(), toEmbed.size(),
+                removed.size());
+        return new Diff(chunks, uploadedAt, unchanged, reused, toEmbed, removed, vectors);
+    }
+
+    private Flux<String> apply(Diff diff, String documentName, String fileId, String contentType) {
+        int totalChunks = diff.chunks().size();
+        AtomicInteger settled = new AtomicInteger(totalChunks - diff.toEmbed().size());
+        String initialMessage = String.format(
+                "{\"type\": \"TOTAL_CHUNKS\", \"totalChunks\": %d, \"unchanged\": %d, \"reused\": %d, "
+                        + "\"embedded\": %d, \"removed\": %d, \"documentName\": \"%s\"}",
+                totalChunks, diff.unchanged(), diff.reused().size(), diff.toEmbed().size(), diff.removed().size(),
+                documentName);
+
+        Flux<String> reuse = Flux.fromIterable(Lists.partition(diff.reused(), WRITE_BATCH_SIZE))
+                .concatMap(rows -> throttle.write(() -> milvusService.insertPDFData(rows)))
+                .thenMany(Flux.empty());
+
+        Flux<String> embed = Flux.fromIterable(Lists.partition(diff.toEmbed(), EMBED_BATCH_SIZE))
+                .concatMap(positions -> throttle
+                        .embedding(embeddingService.generateEmbeddings(
+                                positions.stream().map(i -> diff.chunks().get(i).content()).toList(),
+                                EMBED_BATCH_SIZE))
+                        .flatMap(embeddings -> {
+                            List<JsonObject> rows = new ArrayList<>(positions.size());
+                            for (int j = 0; j < positions.size(); j++) {
+                                int i = positions.get(j);
+                                ExtractedChunk chunk = diff.chunks().get(i);
+                                diff.vectors()[i] = embeddings.get(j);
+                                rows.add(MilvusService.chunkRow(fileId, i, contentType, diff.uploadedAt(),
+                                        chunk.content(), documentName, chunk.label(), embeddings.get(j)));
+                            }
+                            return throttle.write(() -> milvusService.insertPDFData(rows))
+                                    .then(Mono.fromCallable(() -> String.format(
+                                            "{\"type\": \"PROGRESS\", \"chunk\": %d, \"totalChunks\": %d, "
+                                                    + "\"documentName\": \"%s\"}",
+                                            settled.addAndGet(positions.size()), totalChunks, documentName)));
+                        }));
+
+        // Removed last, so searches never see the file with chunks missing
+        Mono<Void> remove = throttle.write(() -> milvusService.deleteChunks(fileId, diff.removed()));
+
+        Mono<Void> updateDocument = Mono.fromRunnable(() -> {
+            if (totalChunks == 0) {
+                documentIndexService.deleteDocument(fileId);
+                return;
+            }
+            DocumentIndexService.Centroid centroid = new DocumentIndexService.Centroid();
+            for (float[] vector : diff.vectors()) {
+                centroid.add(vector);
+            }
+            documentIndexService.upsertDocument(fileId, documentName, contentType, centroid);
+        }).subscribeOn(Schedulers.boundedElastic()).then();
+
+        String completionMessage = String.format(
+                "{\"type\": \"COMPLETED\", \"documentName\": \"%s\", \"message\": \"Revision applied: %d of %d "
+                        + "chunks embedded.\"}",
+                documentName, diff.toEmbed().size(), totalChunks);
+
+        return Flux.concat(
+                Mono.just(initialMessage),
+                reuse,
+                embed,
+                remove.then(updateDocument).then(Mono.just(completionMessage)));
+    }
+
+    private static HashCode textHash(String text) {
+        return Hashing.sha256().hashString(text, StandardCharsets.UTF_8);
+    }
+}
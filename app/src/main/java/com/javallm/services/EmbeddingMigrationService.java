@@ -0,0 +1,302 @@
+package com.javallm.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.gson.JsonObject;
+import com.javallm.config.EmbeddingConfig.MigrationProperties;
+import com.javallm.services.EmbeddingService.EmbeddingModel;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Moves the chunk collection to another embedding model without downtime.
+ * With spring.embedding.migration.target-url set, every stored chunk is
+ * re-embedded by that model server into a collection versioned by its model
+ * and dimension, at a limited rate, while chat keeps searching the serving
+ * collection with the current model. Chunks written or deleted meanwhile are
+ * applied to the new collection as well.
+ *
+ * Once every chunk has been copied, ingestion is paused while the two
+ * collections are reconciled by id. When the new one holds exactly the
+ * serving chunks the alias is switched and the target model takes over
+ * embedding. Coverage is exported as the "embedding.migration.coverage"
+ * gauge.
+ */
+@Service
+public class EmbeddingMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingMigrationService.class);
+
+    private final MilvusService milvusService;
+    private final EmbeddingService embeddingService;
+    private final IngestionWorkerPool workerPool;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MigrationProperties config;
+    private ExecutorService executor;
+    private volatile boolean running;
+    // Collection being filled; writes to the serving collection are copied to it while set
+    private volatile String targetCollection;
+    private volatile double coverage;
+
+    public EmbeddingMigrationService(MilvusService milvusService, EmbeddingService embeddingService,
+            IngestionWorkerPool workerPool, ApplicationEventPublisher eventPublisher,
+            MigrationProperties migrationProperties, MeterRegistry meterRegistry) {
+        this.milvusService = milvusService;
+        this.embeddingService = embeddingService;
+        this.workerPool = workerPool;
+        this.eventPublisher = eventPublisher;
+        this.config = migrationProperties;
+        Gauge.builder("embedding.migration.coverage", this, service -> service.coverage).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!config.isEnabled() || running) {
+            return;
+        }
+        running = true;
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "embedding-migration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.submit(this::migrateUntilSwitched);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts over after an error; chunks already copied are skipped.
+     */
+    private void migrateUntilSwitched() {
+        while (running) {
+            try {
+                migrate();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                logger.error("Embedding migration failed, starting over in {}: {}", config.getRetryDelay(),
+                        e.getMessage(), e);
+                try {
+                    Thread.sleep(config.getRetryDelay().toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void migrate() {
+        milvusService.initializeCollection();
+        if (embeddingService.isMigrationTargetActive()) {
+            logger.info("The chunk collection already uses the migration target; nothing to migrate.");
+            coverage = 1;
+            return;
+        }
+        EmbeddingModel target = embeddingService.migrationTargetModel().orElseThrow();
+        if (target.matches(embeddingService.currentModel())) {
+            logger.warn("The migration target runs the current model '{}'; nothing to migrate.", target.id());
+            coverage = 1;
+            return;
+        }
+
+        String collection = milvusService.createMigrationCollection(target);
+        targetCollection = collection;
+        logger.info("Migrating chunks to model '{}' in '{}' at up to {} chunks/s.", target.id(), collection,
+                config.getChunksPerSecond());
+        copyAll(collection);
+        workerPool.runExclusive(() -> switchOver(collection, target));
+    }
+
+    private void copyAll(String collection) {
+        RateLimiter rateLimiter = RateLimiter.create(config.getChunksPerSecond());
+        long started = System.currentTimeMillis();
+        long[] counts = new long[2]; // scanned, copied
+        long[] lastReport = {started};
+        List<Map<String, Object>> batch = new ArrayList<>();
+        milvusService.scanChunksForReembedding(chunk -> {
+            if (!running) {
+                throw new CancellationException("Shutting down");
+            }
+            batch.add(chunk);
+            if (batch.size() < config.getBatchSize()) {
+                return;
+            }
+            counts[0] += batch.size();
+            counts[1] += copyBatch(collection, batch, rateLimiter);
+            batch.clear();
+            long now = System.currentTimeMillis();
+            if (now - lastReport[0] >= config.getProgressInterval().toMillis()) {
+                lastReport[0] = now;
+                reportProgress(collection, counts[0], counts[1], started);
+            }
+        });
+        counts[0] += batch.size();
+        counts[1] += copyBatch(collection, batch, rateLimiter);
+        reportProgress(collection, counts[0], counts[1], started);
+    }
+
+    /**
+     * Re-embeds the chunks of the batch the target collection does not hold
+     * yet. Returns how many were written.
+     */
+    private int copyBatch(String collection, List<Map<String, Object>> chunks, RateLimiter rateLimiter) {
+        List<Long> ids = chunks.stream().map(MilvusService::chunkRowId).toList();
+        Set<Long> existing = milvusService.existingIds(collection, ids);
+        List<Map<String, Object>> missing = chunks.stream()
+                .filter(chunk -> !existing.contains(MilvusService.chunkRowId(chunk)))
+                .toList();
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        rateLimiter.acquire(missing.size());
+        List<float[]> embeddings = embeddingService.generateMigrationEmbeddings(
+                missing.stream().map(MilvusService::chunkText).toList(), config.getBatchSize()).block();
+
+        // Chunks written meanwhile were copied as they were written, and are newer than what was read
+        Set<Long> copiedMeanwhile = milvusService.existingIds(collection,
+                missing.stream().map(MilvusService::chunkRowId).toList());
+        List<JsonObject> rows = new ArrayList<>();
+        for (int i = 0; i < missing.size(); i++) {
+            if (!copiedMeanwhile.contains(MilvusService.chunkRowId(missing.get(i)))) {
+                rows.add(MilvusService.reembeddedRow(missing.get(i), embeddings.get(i)));
+            }
+        }
+        if (!rows.isEmpty()) {
+            milvusService.upsertRows(collection, rows);
+        }
+        return rows.size();
+    }
+
+    private void reportProgress(String collection, long scanned, long copied, long started) {
+        long serving = milvusService.countChunks();
+        long migrated = milvusService.countRows(collection);
+        coverage = serving == 0 ? 1 : Math.min(1, (double) migrated / serving);
+        double seconds = Math.max(System.currentTimeMillis() - started, 1) / 1000.0;
+        logger.info("Embedding migration: {} of {} chunks in '{}' ({}%), scanned {}, re-embedded {} ({} chunks/s).",
+                migrated, serving, collection, String.format("%.1f", coverage * 100), scanned, copied,
+                String.format("%.1f", copied / seconds));
+    }
+
+    /**
+     * Runs with ingestion paused: makes the target hold exactly the serving
+     * chunk ids, then switches the alias and the embedding endpoint.
+     */
+    private void switchOver(String collection, EmbeddingModel target) {
+        Set<Long> servingIds = milvusService.chunkIds();
+        Set<Long> extra = milvusService.chunkIds(collection);
+        List<Long> missing = new ArrayList<>();
+        for (Long id : servingIds) {
+            if (!extra.remove(id)) {
+                missing.add(id);
+            }
+        }
+        // Rows of files deleted while their batch was being copied
+        milvusService.deleteRows(collection, extra);
+        for (List<Long> ids : Lists.partition(missing, config.getBatchSize())) {
+            List<Map<String, Object>> chunks = milvusService.chunksById(ids);
+            List<float[]> embeddings = embeddingService.generateMigrationEmbeddings(
+                    chunks.stream().map(MilvusService::chunkText).toList(), config.getBatchSize()).block();
+            List<JsonObject> rows = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                rows.add(MilvusService.reembeddedRow(chunks.get(i), embeddings.get(i)));
+            }
+            if (!rows.isEmpty()) {
+                milvusService.upsertRows(collection, rows);
+            }
+        }
+        logger.info("Reconciled '{}': removed {} stale chunks, copied {} missing.", collection, extra.size(),
+                missing.size());
+
+        milvusService.flush(collection);
+        long expected = milvusService.countChunks();
+        long stored = milvusService.countRows(collection);
+        if (stored != expected) {
+            throw new IllegalStateException(String.format("'%s' holds %d chunks after reconciling, expected %d",
+                    collection, stored, expected));
+        }
+
+        String previous = milvusService.switchAlias(collection);
+        embeddingService.promoteMigrationTarget();
+        targetCollection = null;
+        coverage = 1;
+        eventPublisher.publishEvent(new EmbeddingModelChangedEvent(target));
+        logger.info("Embedding migration to '{}' complete; '{}' serves {} chunks.", target.id(), collection,
+                stored);
+        if (config.isDropPrevious() && previous != null) {
+            milvusService.dropCollection(previous);
+        } else {
+            logger.info("Kept '{}' for a rollback; drop it once the new model is settled.", previous);
+        }
+    }
+
+    /**
+     * Dual write: chunks written to the serving collection during the
+     * migration are re-embedded into the target collection straight away, and
+     * deletes are applied to both.
+     */
+    @EventListener
+    public void onEmbeddingsChanged(EmbeddingsChangedEvent event) {
+        String collection = targetCollection;
+        if (collection == null) {
+            return;
+        }
+        try {
+            if (event.deleted() && !event.deletedIds().isEmpty()) {
+                milvusService.deleteRows(collection, event.deletedIds());
+                return;
+            }
+            if (event.deleted()) {
+                for (String fileId : event.fileIds()) {
+                    milvusService.deleteFileRows(collection, fileId);
+                }
+                return;
+            }
+            List<float[]> embeddings = embeddingService.generateMigrationEmbeddings(
+                    event.rows().stream().map(MilvusService::chunkText).toList(), config.getBatchSize()).block();
+            List<JsonObject> rows = new ArrayList<>(event.rows().size());
+            for (int i = 0; i < event.rows().size(); i++) {
+                rows.add(MilvusService.reembeddedRow(event.rows().get(i), embeddings.get(i)));
+            }
+            milvusService.upsertRows(collection, rows);
+        } catch (RuntimeException e) {
+            // Reconciliation copies missing chunks but cannot tell outdated ones, so these files go entirely
+            logger.warn("Failed to copy a write to '{}', removing files {} from it: {}", collection,
+                    event.fileIds(), e.getMessage());
+            for (String fileId : event.fileIds()) {
+                try {
+                    milvusService.deleteFileRows(collection, fileId);
+                } catch (RuntimeException deleteFailure) {
+                    logger.error("Failed to remove file '{}' from '{}'; its chunks may be outdated there: {}",
+                            fileId, collection, deleteFailure.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.javallm.services;
+
+import com.javallm.services.EmbeddingService.EmbeddingModel;
+
+/**
+ * Published when chat and ingestion switch to another embedding model, so
+ * anything holding vectors of the previous one can drop or rebuild them.
+ */
+public record EmbeddingModelChangedEvent(EmbeddingModel model) {
+}
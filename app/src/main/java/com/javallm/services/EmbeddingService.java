@@ -2,30 +2,134 @@ package com.javallm.services;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.javallm.config.EmbeddingConfig.MigrationProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 public class EmbeddingService {
 
+    /**
+     * The model behind an embedding endpoint. id is null for collections
+     * created before the model was recorded; those match on dimension alone.
+     */
+    public record EmbeddingModel(String id, int dimension) {
+        public boolean matches(EmbeddingModel other) {
+            return other != null && dimension == other.dimension
+                    && (id == null || other.id == null || id.equals(other.id));
+        }
+    }
+
+    /**
+     * A model server and the model it runs, looked up on first use.
+     */
+    private record Endpoint(String url, WebClient webClient, Mono<EmbeddingModel> model) {
+    }
+
     private static final Logger logger = LoggerFactory.getLogger(EmbeddingService.class);
-    private final WebClient webClient;
+    private static final Duration MODEL_LOOKUP_TIMEOUT = Duration.ofSeconds(30);
+    // Reactor treats this TTL as "cache forever"
+    private static final Duration CACHE_FOREVER = Duration.ofMillis(Long.MAX_VALUE);
     private final ObjectMapper objectMapper = new ObjectMapper(); // For converting Map to JSON String
+    // Serves chat and ingestion; replaced by the migration target once a migration switches over
+    private volatile Endpoint active;
+    private final Endpoint migrationTarget;
+
+    public EmbeddingService(@Value("${spring.embedding.service.url}") String embeddingServiceUrl,
+            @Value("${spring.embedding.service.model:}") String embeddingModel,
+            MigrationProperties migrationProperties) {
+        this.active = endpoint(embeddingServiceUrl, embeddingModel);
+        this.migrationTarget = migrationProperties.isEnabled()
+                ? endpoint(migrationProperties.getTargetUrl(), migrationProperties.getTargetModel())
+                : null;
+    }
 
-    public EmbeddingService(@Value("${spring.embedding.service.url}") String embeddingServiceUrl) {
-        this.webClient = WebClient.builder()
-                .baseUrl(embeddingServiceUrl)
+    private Endpoint endpoint(String url, String configuredModel) {
+        WebClient webClient = WebClient.builder()
+                .baseUrl(url)
                 .filter(logRequest())
                 .filter(logResponse())
                 .build();
+        return new Endpoint(url, webClient, describe(url, webClient, configuredModel));
+    }
+
+    /**
+     * Model id from TEI's /info, falling back to the configured name, and the
+     * dimension of a probe embedding. Cached once it succeeds.
+     */
+    private Mono<EmbeddingModel> describe(String url, WebClient webClient, String configuredModel) {
+        Mono<String> id = webClient.get()
+                .uri("/info")
+                .retrieve()
+                .bodyToMono(Map.class)
+                .flatMap(info -> Mono.justOrEmpty((String) info.get("model_id")))
+                .onErrorResume(e -> {
+                    logger.warn("Could not read the model id from {}/info: {}", url, e.getMessage());
+                    return Mono.empty();
+                })
+                .defaultIfEmpty(configuredModel == null || configuredModel.isBlank() ? "unknown" : configuredModel);
+        Mono<Integer> dimension = embedBatches(webClient, List.of("dimension probe"), 1)
+                .map(embeddings -> embeddings.get(0).length);
+        return Mono.zip(id, dimension, EmbeddingModel::new)
+                .doOnNext(model -> logger.info("Embedding server {} runs '{}' ({} dimensions).", url, model.id(),
+                        model.dimension()))
+                .cache(model -> CACHE_FOREVER, e -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    /**
+     * The model chat and ingestion embed with. Blocking.
+     */
+    public EmbeddingModel currentModel() {
+        return active.model().block(MODEL_LOOKUP_TIMEOUT);
+    }
+
+    /**
+     * The model of spring.embedding.migration.target-url, if a migration is
+     * configured. Blocking.
+     */
+    public Optional<EmbeddingModel> migrationTargetModel() {
+        return migrationTarget == null
+                ? Optional.empty()
+                : Optional.ofNullable(migrationTarget.model().block(MODEL_LOOKUP_TIMEOUT));
+    }
+
+    public boolean isMigrationTargetActive() {
+        return migrationTarget != null && active == migrationTarget;
+    }
+
+    /**
+     * Embeds with the migration target, whichever endpoint is active.
+     */
+    public Mono<List<float[]>> generateMigrationEmbeddings(List<String> texts, int batchSize) {
+        if (migrationTarget == null) {
+            return Mono.error(new IllegalStateException("No embedding migration is configured"));
+        }
+        return embedBatches(migrationTarget.webClient(), texts, batchSize);
+    }
+
+    /**
+     * Makes the migration target the endpoint for everything, once the chunk
+     * collection it filled is serving.
+     */
+    public synchronized void promoteMigrationTarget() {
+        if (migrationTarget == null || active == migrationTarget) {
+            return;
+        }
+        logger.info("Embedding with {} from now on; update spring.embedding.service.url to match.",
+                migrationTarget.url());
+        active = migrationTarget;
     }
 
     public Mono<float[]> generateEmbedding(String text) {
@@ -44,7 +148,7 @@ public class EmbeddingService {
             logger.error("UTF-8 encoding not supported: {}", e.getMessage());
         }
 
-        return webClient.post()
+        return active.webClient().post()
                 .uri("/embed")
                 .bodyValue(payload) // Use the created payload map
                 .retrieve()
@@ -61,6 +165,41 @@ public class EmbeddingService {
                 });
     }
 
+    /**
+     * Embeds several texts with one request per batch; TEI rejects requests
+     * above its max-client-batch-size (32 by default). Embeddings come back in
+     * input order.
+     */
+    public Mono<List<float[]>> generateEmbeddings(List<String> texts, int batchSize) {
+        return embedBatches(active.webClient(), texts, batchSize);
+    }
+
+    private Mono<List<float[]>> embedBatches(WebClient webClient, List<String> texts, int batchSize) {
+        return Flux.fromIterable(Lists.partition(texts, batchSize))
+                .concatMap(batch -> {
+                    logger.info("Sending batched embedding request for {} texts.", batch.size());
+                    return webClient.post()
+                            .uri("/embed")
+                            .bodyValue(Map.of("inputs", batch))
+                            .retrieve()
+                            .bodyToMono(List.class)
+                            .flatMapIterable(response -> {
+                                @SuppressWarnings("unchecked")
+                                List<List<Double>> embeddings = (List<List<Double>>) response;
+                                return embeddings.stream().map(EmbeddingService::toFloatArray).toList();
+                            });
+                })
+                .collectList();
+    }
+
+    private static float[] toFloatArray(List<Double> embedding) {
+        float[] result = new float[embedding.size()];
+        for (int i = 0; i < embedding.size(); i++) {
+            result[i] = embedding.get(i).floatValue();
+        }
+        return result;
+    }
+
     // --- Helper methods for logging WebClient requests and responses ---
 
     private ExchangeFilterFunction logRequest() {
@@ -0,0 +1,17 @@
+package com.javallm.services;
+
+import java.util.List;
+import java.util.Set;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Published by {@link MilvusService} after chunks of the given files were
+ * inserted or deleted, so caches derived from them can be invalidated. rows
+ * are the chunk rows written (empty for deletes), for copies that mirror
+ * the collection. deletedIds lists the rows removed when only some chunks
+ * of a file went; it is empty when the files were deleted as a whole.
+ */
+public record EmbeddingsChangedEvent(Set<String> fileIds, boolean deleted, List<JsonObject> rows,
+        List<Long> deletedIds) {
+}
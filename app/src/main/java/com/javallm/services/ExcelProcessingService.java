@@ -1,6 +1,5 @@
 package com.javallm.services;
 
-import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.javallm.services.ExcelTextExtractorService.TextChunk;
 import org.slf4j.Logger;
@@ -21,35 +20,62 @@ public class ExcelProcessingService {
     private final ExcelTextExtractorService excelTextExtractorService;
     private final EmbeddingService embeddingService;
     private final MilvusService milvusService;
+    private final DocumentIndexService documentIndexService;
+    private final IngestionThrottle throttle;
 
     public ExcelProcessingService(ExcelTextExtractorService excelTextExtractorService,
                                 EmbeddingService embeddingService,
-                                MilvusService milvusService) {
+                                MilvusService milvusService,
+                                DocumentIndexService documentIndexService,
+                                IngestionThrottle throttle) {
         this.excelTextExtractorService = excelTextExtractorService;
         this.embeddingService = embeddingService;
         this.milvusService = milvusService;
+        this.documentIndexService = documentIndexService;
+        this.throttle = throttle;
     }
 
-    public Flux<String> processExcel(InputStream inputStream, String documentName, String fileUUID) {
+    public String chunkingParams() {
+        return excelTextExtractorService.chunkingParams();
+    }
+
+    /**
+     * Extracts, embeds and stores the chunks of a document. Chunks before
+     * resumeFrom were stored by an earlier attempt with the same chunking
+     * params and are skipped; chunk ids are derived from the file id and
+     * chunk index, so chunks written again simply replace themselves.
+     */
+    public Flux<String> processExcel(InputStream inputStream, String documentName, String fileUUID,
+                                     String contentType, int resumeFrom) {
         milvusService.initializeCollection();
+        long uploadedAt = System.currentTimeMillis();
 
         // 1. Wrap the blocking text extraction and splitting call.
         return Mono.fromCallable(() -> excelTextExtractorService.extractAndSplitText(inputStream, documentName))
                 .subscribeOn(Schedulers.boundedElastic()) // Offload the blocking work
                 .flatMapMany(chunks -> { // This is now a List<TextChunk>
                     int totalChunks = chunks.size();
+                    // Mean of the chunk embeddings, stored as the document vector on completion
+                    DocumentIndexService.Centroid centroid = new DocumentIndexService.Centroid();
+                    if (resumeFrom > 0) {
+                        // Stored chunks still count towards the document vector
+                        milvusService.chunkVectors(fileUUID, resumeFrom).forEach(centroid::add);
+                        logger.info("Resuming {} at chunk {} of {}", documentName, resumeFrom + 1,
+                                totalChunks);
+                    }
                     logger.info("Extracted and split into {} chunks from Excel document: {}",
                             totalChunks,
                             documentName);
 
                     // Initial message now reports total chunks.
                     String initialMessage = String.format(
-                            "{\"type\": \"TOTAL_CHUNKS\", \"totalChunks\": %d, \"documentName\": \"%s\"}",
-                            totalChunks, documentName);
+                            "{\"type\": \"TOTAL_CHUNKS\", \"totalChunks\": %d, \"resumeFrom\": %d, \"documentName\": \"%s\"}",
+                            totalChunks, resumeFrom, documentName);
 
                     // 2. Create a Flux that processes each chunk sequentially.
                     Flux<String> processingFlux = Flux.fromIterable(chunks)
                             .index()
+                            .skip(resumeFrom)
                             .concatMap(indexedChunk -> {
                                 long chunkIndex = indexedChunk.getT1();
                                 TextChunk chunk = indexedChunk.getT2();
@@ -62,13 +88,18 @@ public class ExcelProcessingService {
                                 // --- END NEW LOGGING ---
 
                                 // Generate embedding for the chunk's content.
-                                return embeddingService
-                                        .generateEmbedding(chunk.content())
+                                return throttle
+                                        .embedding(embeddingService.generateEmbedding(chunk.content()))
                                         .flatMap(embedding -> {
+                                            centroid.add(embedding);
+
                                             // Create row with chunk text
                                             // and its section label.
                                             JsonObject row = createMilvusRow(
                                                     fileUUID,
+                                                    (int) chunkIndex,
+                                                    contentType,
+                                                    uploadedAt,
                                                     chunk.content(),
                                                     documentName,
                                                     chunk.sectionLabel(),
@@ -76,12 +107,10 @@ public class ExcelProcessingService {
 
                                             // 3. Wrap the blocking database
                                             // insert.
-                                            return Mono.fromRunnable(
+                                            return throttle.write(
                                                     () -> milvusService
                                                             .insertPDFData(List
                                                                     .of(row)))
-                                                    .subscribeOn(Schedulers
-                                                            .boundedElastic())
                                                     .then(Mono.fromCallable(
                                                             () -> {
                                                                 logger.info("Processed and inserted chunk {} of {} for Excel document {}",
@@ -111,12 +140,14 @@ public class ExcelProcessingService {
                     return Flux.concat(
                             Mono.just(initialMessage),
                             processingFlux,
-                            Mono.just(completionMessage));
+                            Mono.fromRunnable(() -> documentIndexService.upsertDocument(
+                                    fileUUID, documentName, contentType, centroid))
+                                    .subscribeOn(Schedulers.boundedElastic())
+                                    .then(Mono.just(completionMessage)));
                 })
                 .doOnError(e -> {
                     logger.error("Failed to process Excel document '{}': {}", documentName,
                             e.getMessage(), e);
-                    milvusService.deleteEmbeddingsByFileId(fileUUID);
                 })
                 .onErrorResume(e -> Flux.error(
                         new RuntimeException(
@@ -128,19 +159,9 @@ public class ExcelProcessingService {
      * Creates a JSON object for Milvus insertion, now accepting a String
      * sectionLabel.
      */
-    private JsonObject createMilvusRow(String fileUUID, String chunkText, String documentName, String sectionLabel,
-                                     float[] embedding) {
-        JsonObject row = new JsonObject();
-        row.addProperty("file_id", fileUUID);
-        row.addProperty("text", chunkText);
-        row.addProperty("document_name", documentName);
-        row.addProperty("document_pages", sectionLabel); // Use the string section label directly
-
-        JsonArray vectorArray = new JsonArray();
-        for (float val : embedding) {
-            vectorArray.add(val);
-        }
-        row.add("embedding", vectorArray);
-        return row;
+    private JsonObject createMilvusRow(String fileUUID, int chunkIndex, String contentType, long uploadedAt, String chunkText,
+                                     String documentName, String sectionLabel, float[] embedding) {
+        return MilvusService.chunkRow(fileUUID, chunkIndex, contentType, uploadedAt, chunkText, documentName,
+                sectionLabel, embedding);
     }
 }
\ No newline at end of file
@@ -7,6 +7,9 @@ import org.apache.poi.util.IOUtils;
 import org.apache.poi.openxml4j.util.ZipSecureFile;
 import org.springframework.stereotype.Service;
 
+import com.javallm.services.ExtractedChunkCache.CachedChunk;
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -21,6 +24,12 @@ public class ExcelTextExtractorService {
     // Overlap to maintain context between chunks
     private static final int CHUNK_OVERLAP = 200;
 
+    private final ExtractedChunkCache chunkCache;
+
+    public ExcelTextExtractorService(ExtractedChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+    }
+
     static {
         // Configure POI security settings to handle large Excel files
         // Adjust the minimum inflate ratio (default is 0.01, meaning 1%)
@@ -43,10 +52,19 @@ public class ExcelTextExtractorService {
     private record CellContent(String text, String sheetName, int rowIndex, int cellIndex) {
     }
 
+    /**
+     * Describes how documents are split. Stored chunk positions are only
+     * valid for the settings they were produced with.
+     */
+    public String chunkingParams() {
+        return "excel;size=" + CHUNK_SIZE + ";overlap=" + CHUNK_OVERLAP + ";anchors=sheet,line";
+    }
+
     /**
      * Extracts text from an Excel document (.xls, .xlsx, .xlsm, .xlsb), then splits
      * it into
-     * overlapping chunks.
+     * overlapping chunks. A document split before with the same settings is
+     * read from the chunk cache.
      *
      * @param inputStream The InputStream of the Excel document file.
      * @param filename    The filename to determine the document type.
@@ -55,8 +73,18 @@ public class ExcelTextExtractorService {
      * @throws IOException if the document cannot be loaded or read.
      */
     public List<TextChunk> extractAndSplitText(InputStream inputStream, String filename) throws IOException {
-        List<CellContent> cellContents = new ArrayList<>();
+        byte[] document = inputStream.readAllBytes();
         String extension = getFileExtension(filename);
+        // The extension picks the parser, so it is part of the key
+        return chunkCache.computeIfAbsent(document, chunkingParams() + ";" + extension,
+                () -> extractAndSplitText(document, extension),
+                chunk -> new CachedChunk(chunk.content(), chunk.sectionLabel()),
+                cached -> new TextChunk(cached.content(), cached.label()));
+    }
+
+    private List<TextChunk> extractAndSplitText(byte[] document, String extension) throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(document);
+        List<CellContent> cellContents = new ArrayList<>();
 
         switch (extension) {
             case "xlsx":
@@ -203,12 +231,14 @@ public class ExcelTextExtractorService {
 
     /**
      * Splits the text content from all cells into manageable chunks using a sliding
-     * window.
+     * window, restarted on every sheet and anchored to cell starts (see
+     * {@link ChunkWindows}).
      */
     private List<TextChunk> splitTextIntoChunks(List<CellContent> cellContents) {
         List<TextChunk> chunks = new ArrayList<>();
         StringBuilder fullTextBuilder = new StringBuilder();
         List<Integer> cellStartIndices = new ArrayList<>();
+        List<Integer> sheetStartIndices = new ArrayList<>();
 
         // Group cells by sheet and create a readable text format
         String currentSheet = "";
@@ -218,6 +248,7 @@ public class ExcelTextExtractorService {
                     fullTextBuilder.append("\n\n"); // Add extra spacing between sheets
                 }
                 currentSheet = cellContent.sheetName();
+                sheetStartIndices.add(fullTextBuilder.length());
                 cellStartIndices.add(fullTextBuilder.length());
                 fullTextBuilder.append("Sheet: ").append(currentSheet).append("\n");
             }
@@ -233,34 +264,14 @@ public class ExcelTextExtractorService {
             return chunks;
         }
 
-        int textLength = fullText.length();
-        int start = 0;
-
-        // Use a sliding window to create chunks with overlap.
-        while (start < textLength) {
-            int end = Math.min(start + CHUNK_SIZE, textLength);
-
-            // To avoid cutting words in half, find the last space before the hard limit.
-            if (end < textLength) {
-                int lastSpace = fullText.lastIndexOf(' ', end);
-                if (lastSpace > start) {
-                    end = lastSpace;
-                }
-            }
-
-            String chunkText = fullText.substring(start, end).trim();
+        List<ChunkWindows.Window> windows = ChunkWindows.split(fullText, sheetStartIndices, CHUNK_SIZE, CHUNK_OVERLAP);
+        for (ChunkWindows.Window window : windows) {
+            String chunkText = fullText.substring(window.start(), window.end()).trim();
             if (!chunkText.isEmpty()) {
-                String sectionLabel = getSectionLabelForChunk(start, end, cellStartIndices, cellContents);
+                String sectionLabel = getSectionLabelForChunk(window.start(), window.end(), cellStartIndices,
+                        cellContents);
                 chunks.add(new TextChunk(chunkText, sectionLabel));
             }
-
-            // Move the window forward, subtracting the overlap.
-            start += CHUNK_SIZE - CHUNK_OVERLAP;
-
-            // Ensure we always make forward progress.
-            if (start >= end) {
-                start = end;
-            }
         }
         return chunks;
     }
@@ -0,0 +1,242 @@
+package com.javallm.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.google.common.hash.Hashing;
+import com.javallm.config.IngestionConfig.ChunkCache;
+import com.javallm.config.IngestionConfig.IngestionProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Extracted chunks kept on disk, keyed by the SHA-256 of the document bytes
+ * and the chunking params, so a document is parsed once however often it is
+ * ingested again (retries, re-indexing). An entry is one file: a magic
+ * number, then a gzip-compressed body with the chunk count and each chunk's
+ * content and label as length-prefixed UTF-8. Entries are written to a
+ * temporary file and moved into place; unreadable ones are dropped.
+ */
+@Service
+public class ExtractedChunkCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExtractedChunkCache.class);
+
+    private static final int MAGIC = 0x4d434331; // "MCC1"
+    private static final String SUFFIX = ".chunks";
+    // Eviction goes this far below the limit, so it does not run on every write
+    private static final double EVICT_TO = 0.9;
+
+    /**
+     * A chunk as stored, whatever the document type.
+     */
+    public record CachedChunk(String content, String label) {
+    }
+
+    @FunctionalInterface
+    public interface Extraction<T> {
+        List<T> extract() throws IOException;
+    }
+
+    private final ChunkCache config;
+    private final Path directory;
+    private final Counter hits;
+    private final Counter misses;
+    // Total size of the entries, computed on the first write; guarded by this
+    private long sizeBytes = -1;
+
+    public ExtractedChunkCache(IngestionProperties ingestionProperties, MeterRegistry meterRegistry) {
+        this.config = ingestionProperties.getChunkCache();
+        this.directory = Paths.get(config.getDirectory());
+        this.hits = Counter.builder("ingestion.chunk.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("ingestion.chunk.cache").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * The chunks of the document from the cache, or from the extraction, which
+     * are then stored. The converters map between the caller's chunk type and
+     * the stored form.
+     */
+    public <T> List<T> computeIfAbsent(byte[] document, String chunkingParams, Extraction<T> extraction,
+            Function<T, CachedChunk> toCached, Function<CachedChunk, T> fromCached) throws IOException {
+        if (!config.isEnabled()) {
+            return extraction.extract();
+        }
+        Path entry = entryPath(document, chunkingParams);
+        List<CachedChunk> cached = read(entry);
+        if (cached != null) {
+            hits.increment();
+            logger.info("Read {} chunks from the chunk cache.", cached.size());
+            return cached.stream().map(fromCached).toList();
+        }
+        misses.increment();
+        List<T> chunks = extraction.extract();
+        try {
+            write(entry, chunks.stream().map(toCached).toList());
+        } catch (IOException e) {
+            logger.warn("Failed to store chunks in the chunk cache: {}", e.getMessage());
+        }
+        return chunks;
+    }
+
+    private Path entryPath(byte[] document, String chunkingParams) {
+        String documentHash = Hashing.sha256().hashBytes(document).toString();
+        String paramsHash = Hashing.murmur3_128().hashString(chunkingParams, StandardCharsets.UTF_8).toString()
+                .substring(0, 16);
+        // Spread over subdirectories by the first hash byte
+        return directory.resolve(documentHash.substring(0, 2)).resolve(documentHash + "-" + paramsHash + SUFFIX);
+    }
+
+    private List<CachedChunk> read(Path entry) {
+        if (!Files.exists(entry)) {
+            return null;
+        }
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(entry))) {
+            if (new DataInputStream(file).readInt() != MAGIC) {
+                throw new IOException("not a chunk cache entry");
+            }
+            List<CachedChunk> chunks;
+            try (DataInputStream body = new DataInputStream(new GZIPInputStream(file))) {
+                int count = body.readInt();
+                chunks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    chunks.add(new CachedChunk(readString(body), readString(body)));
+                }
+            }
+            // Recently read entries are evicted last
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return chunks;
+        } catch (NoSuchFileException e) {
+            return null; // Evicted meanwhile
+        } catch (IOException e) {
+            logger.warn("Dropping unreadable chunk cache entry {}: {}", entry, e.getMessage());
+            delete(entry);
+            return null;
+        }
+    }
+
+    private void write(Path entry, List<CachedChunk> chunks) throws IOException {
+        Files.createDirectories(entry.getParent());
+        Path temp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                new DataOutputStream(file).writeInt(MAGIC);
+                try (DataOutputStream body = new DataOutputStream(new GZIPOutputStream(file))) {
+                    body.writeInt(chunks.size());
+                    for (CachedChunk chunk : chunks) {
+                        writeString(body, chunk.content());
+                        writeString(body, chunk.label());
+                    }
+                }
+            }
+            Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        added(Files.size(entry));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Accounts for a new entry and removes the least recently used ones once
+     * the cache is over its size limit.
+     */
+    private synchronized void added(long bytes) throws IOException {
+        if (sizeBytes < 0) {
+            sizeBytes = entries().stream().mapToLong(Entry::size).sum();
+        } else {
+            sizeBytes += bytes;
+        }
+        if (sizeBytes <= config.getMaxSizeBytes()) {
+            return;
+        }
+        long target = (long) (config.getMaxSizeBytes() * EVICT_TO);
+        int evicted = 0;
+        for (Entry entry : entries()) {
+            if (sizeBytes <= target) {
+                break;
+            }
+            if (delete(entry.path())) {
+                sizeBytes -= entry.size();
+                evicted++;
+            }
+        }
+        logger.info("Evicted {} chunk cache entries, {} bytes remain.", evicted, sizeBytes);
+    }
+
+    private record Entry(Path path, long lastModified, long size) {
+    }
+
+    /**
+     * Every entry, least recently used first.
+     */
+    private List<Entry> entries() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.filter(file -> file.toString().endsWith(SUFFIX)).toList()) {
+                try {
+                    entries.add(new Entry(path, Files.getLastModifiedTime(path).toMillis(), Files.size(path)));
+                } catch (NoSuchFileException e) {
+                    // Removed meanwhile
+                }
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::lastModified));
+        return entries;
+    }
+
+    private static boolean delete(Path entry) {
+        try {
+            return Files.deleteIfExists(entry);
+        } catch (IOException e) {
+            logger.warn("Failed to delete chunk cache entry {}: {}", entry, e.getMessage());
+            return false;
+        }
+    }
+}
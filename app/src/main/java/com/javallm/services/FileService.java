@@ -6,12 +6,32 @@ import com.javallm.repository.FileRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 @Service
 public class FileService {
 
+    /**
+     * Orders the file listing can be sorted in; the file id breaks ties.
+     */
+    public enum FileSort {
+        UPLOADED_AT, FILENAME
+    }
+
+    /**
+     * A page of the file listing. nextCursor continues after its last file
+     * and is null on the last page.
+     */
+    public record FilePage(List<FileEntity> files, String nextCursor) {
+    }
+
+    // Sorts after any stored key, so a descending listing starts at the top
+    private static final String MAX_KEY = "\uDBFF\uDFFF";
+
     private final FileRepository fileRepository;
 
     // Spring will automatically inject the FileRepository
@@ -25,19 +45,111 @@ public class FileService {
         return fileRepository.save(newFile); // Saves the new file to the database
     }
 
+    /**
+     * Points a stored file at a new revision. The upload time stays that of
+     * the first upload, as it does on the file's chunks.
+     *
+     * @throws IllegalStateException if the file has been deleted
+     */
+    @Transactional
+    public FileEntity updateFile(String id, String filename, String path, String contentType) {
+        FileEntity file = fileRepository.findById(id)
+                .orElseThrow(() -> new IllegalStateException("File " + id + " has been deleted"));
+        file.setFilename(filename);
+        file.setPath(path);
+        file.setContentType(contentType);
+        return fileRepository.save(file);
+    }
+
     @Transactional(readOnly = true) // For read-only operations
     public List<FileEntity> getAllFiles() {
         return fileRepository.findAll(); // Retrieves all files
     }
 
+    /**
+     * A page of at most limit files, continuing after the cursor of the
+     * previous page (null for the first). Keyset paginated, so every page
+     * costs the same however deep into the listing it is.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed or was
+     *                                  issued for another order
+     */
+    @Transactional(readOnly = true)
+    public FilePage listFiles(FileSort sort, boolean descending, String cursor, int limit) {
+        String key = descending ? MAX_KEY : "";
+        String id = "";
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] position = decodeCursor(cursor, sort, descending);
+            key = position[0];
+            id = position[1];
+        }
+        // One more than asked for tells whether there is a next page
+        List<FileEntity> files = switch (sort) {
+            case UPLOADED_AT -> descending
+                    ? fileRepository.findPageByUploadedAtDesc(key, id, limit + 1)
+                    : fileRepository.findPageByUploadedAtAsc(key, id, limit + 1);
+            case FILENAME -> descending
+                    ? fileRepository.findPageByFilenameDesc(key, id, limit + 1)
+                    : fileRepository.findPageByFilenameAsc(key, id, limit + 1);
+        };
+        if (files.size() <= limit) {
+            return new FilePage(files, null);
+        }
+        files = files.subList(0, limit);
+        return new FilePage(files, encodeCursor(sort, descending, files.get(limit - 1)));
+    }
+
+    /**
+     * The cursor names the order it was issued for, then the sort key and id
+     * of the last file of the page, one per line.
+     */
+    private static String encodeCursor(FileSort sort, boolean descending, FileEntity last) {
+        String key = switch (sort) {
+            case UPLOADED_AT -> last.getUploadedAt() == null ? "" : last.getUploadedAt();
+            case FILENAME -> last.getFilename();
+        };
+        String position = order(sort, descending) + "\n" + key + "\n" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor, FileSort sort, boolean descending) {
+        String position;
+        try {
+            position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        int keyStart = position.indexOf('\n');
+        int idStart = position.lastIndexOf('\n');
+        if (keyStart < 0 || idStart == keyStart) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        if (!position.substring(0, keyStart).equals(order(sort, descending))) {
+            throw new IllegalArgumentException("Cursor was issued for another sort order");
+        }
+        // File names may contain line breaks, ids do not
+        return new String[] { position.substring(keyStart + 1, idStart), position.substring(idStart + 1) };
+    }
+
+    private static String order(FileSort sort, boolean descending) {
+        return sort.name().toLowerCase(Locale.ROOT) + (descending ? ":desc" : ":asc");
+    }
+
     @Transactional(readOnly = true)
     public Optional<FileEntity> getFileById(String id) {
         return fileRepository.findById(id); // Finds a file by its ID
     }
 
+    /**
+     * Files whose name matches the query, best match first. Words match whole
+     * words of the name, a trailing * a prefix (see
+     * {@link KeywordIndexService#matchExpression}).
+     *
+     * @throws IllegalArgumentException if the query has nothing to search for
+     */
     @Transactional(readOnly = true)
-    public List<FileEntity> searchFilesByFilename(String filenamePart) {
-        return fileRepository.findByFilenameContaining(filenamePart); // Uses the custom query method
+    public List<FileEntity> searchFilesByFilename(String query, int limit) {
+        return fileRepository.findByFilenameMatch(KeywordIndexService.matchExpression(query), limit);
     }
 
     @Transactional
@@ -0,0 +1,54 @@
+package com.javallm.services;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.javallm.config.ChatConfig.ChatProperties;
+import com.javallm.config.ChatConfig.Sessions;
+
+/**
+ * Sessions held in process memory, evicted after the configured idle time or
+ * when the session limit is reached. Lost on restart.
+ */
+public class InMemoryChatSessionStore implements ChatSessionStore {
+
+    private final Cache<String, ChatSession> sessions;
+
+    public InMemoryChatSessionStore(ChatProperties chatProperties) {
+        Sessions config = chatProperties.getSessions();
+        this.sessions = CacheBuilder.newBuilder()
+                .maximumSize(config.getMaxSessions())
+                .expireAfterAccess(config.getTtl())
+                .build();
+    }
+
+    @Override
+    public Optional<ChatSession> find(String sessionId) {
+        return Optional.ofNullable(sessions.getIfPresent(sessionId));
+    }
+
+    @Override
+    public void save(ChatSession session) {
+        sessions.put(session.getId(), session);
+    }
+
+    /**
+     * Sessions are live instances here, and their changes are synchronized.
+     */
+    @Override
+    public Optional<ChatSession> update(String sessionId, Consumer<ChatSession> change) {
+        ChatSession session = sessions.getIfPresent(sessionId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        change.accept(session);
+        return Optional.of(session);
+    }
+
+    @Override
+    public void delete(String sessionId) {
+        sessions.invalidate(sessionId);
+    }
+}
@@ -0,0 +1,376 @@
+package com.javallm.services;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javallm.config.IngestionConfig.IngestionProperties;
+import com.javallm.config.IngestionConfig.Jobs;
+import com.javallm.models.IngestionJobEntity;
+import com.javallm.models.IngestionJobEntity.Status;
+import com.javallm.repository.IngestionJobRepository;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The ingestion job table and the progress streams built on it. While a job
+ * runs on this instance its progress messages are relayed live; otherwise
+ * subscribers follow the persisted state by polling, so a stream can be
+ * picked up again after a disconnect or a restart.
+ */
+@Service
+public class IngestionJobService {
+
+    /**
+     * A claimed job and the token that proves the claim.
+     */
+    public record Lease(IngestionJobEntity job, String owner) {
+    }
+
+    /**
+     * Thrown when a worker's lease ran out and the job was claimed by another.
+     */
+    public static class LeaseLostException extends RuntimeException {
+        public LeaseLostException(String jobId) {
+            super("Lease on ingestion job " + jobId + " was lost");
+        }
+    }
+
+    private static final int BULK_PRIORITY = 1;
+
+    private final IngestionJobRepository repository;
+    private final Jobs config;
+    private final ObjectMapper objectMapper;
+    // Progress of the jobs running on this instance, keyed by job id
+    private final Map<String, Sinks.Many<String>> liveEvents = new ConcurrentHashMap<>();
+    // Latest chunk counts of the jobs running on this instance and when they were last written
+    private final Map<String, PendingProgress> pendingProgress = new ConcurrentHashMap<>();
+
+    private record PendingProgress(Integer processed, Integer total, long writtenAt, boolean dirty) {
+    }
+
+    public IngestionJobService(IngestionJobRepository repository, IngestionProperties ingestionProperties,
+            ObjectMapper objectMapper) {
+        this.repository = repository;
+        this.config = ingestionProperties.getJobs();
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional
+    public IngestionJobEntity enqueue(String fileId, String filename, String documentName, String path,
+            String contentType) {
+        return repository.save(new IngestionJobEntity(UUID.randomUUID().toString(), fileId, filename,
+                documentName, path, contentType, config.getMaxAttempts()));
+    }
+
+    /**
+     * A job for a file of a bulk import, to be queued with
+     * {@link #enqueueAll}. These jobs are claimed after any waiting single
+     * uploads.
+     */
+    public IngestionJobEntity importJob(String fileId, String filename, String documentName, String path,
+            String contentType, String importId) {
+        return new IngestionJobEntity(UUID.randomUUID().toString(), fileId, filename, documentName, path,
+                contentType, config.getMaxAttempts(), importId, BULK_PRIORITY);
+    }
+
+    /**
+     * Queues several jobs in one transaction, with batched inserts.
+     */
+    @Transactional
+    public List<IngestionJobEntity> enqueueAll(List<IngestionJobEntity> jobs) {
+        return repository.saveAll(jobs);
+    }
+
+    /**
+     * Queues a new revision of a stored file. The file keeps its id; only the
+     * chunks that changed are embedded again.
+     */
+    @Transactional
+    public IngestionJobEntity enqueueRevision(String fileId, String filename, String documentName, String path,
+            String contentType) {
+        IngestionJobEntity job = new IngestionJobEntity(UUID.randomUUID().toString(), fileId, filename,
+                documentName, path, contentType, config.getMaxAttempts());
+        job.setRevision(true);
+        return repository.save(job);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<IngestionJobEntity> find(String jobId) {
+        return repository.findById(jobId);
+    }
+
+    @Transactional(readOnly = true)
+    public List<IngestionJobEntity> findByImport(String importId) {
+        return repository.findByImportIdOrderByCreatedAt(importId);
+    }
+
+    /**
+     * Leases the next due job to the caller, if there is one.
+     */
+    @Transactional
+    public Optional<Lease> claimNext() {
+        String owner = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        if (repository.claimNext(owner, now + config.getVisibilityTimeout().toMillis(), now) == 0) {
+            return Optional.empty();
+        }
+        return repository.findByLeaseOwner(owner).map(job -> {
+            liveEvents.put(job.getId(), Sinks.many().replay().latest());
+            return new Lease(job, owner);
+        });
+    }
+
+    /**
+     * Records where an attempt starts: the number of chunks already stored and
+     * the chunking settings that count refers to.
+     *
+     * @throws LeaseLostException if the job has been claimed by another worker
+     */
+    @Transactional
+    public void startAttempt(Lease lease, int resumeFrom, String chunkingHash) {
+        int updated = repository.startAttempt(lease.job().getId(), lease.owner(), resumeFrom, chunkingHash,
+                System.currentTimeMillis());
+        if (updated == 0) {
+            throw new LeaseLostException(lease.job().getId());
+        }
+    }
+
+    /**
+     * Extends the lease of a running job without recording any progress.
+     * Workers call it on a timer for as long as an attempt runs: extraction,
+     * the read of a resumed file or the diff of a revision can take longer
+     * than the visibility timeout without a single progress message.
+     *
+     * @throws LeaseLostException if the job has been claimed by another worker
+     */
+    @Transactional
+    public void renew(Lease lease) {
+        long now = System.currentTimeMillis();
+        if (repository.heartbeat(lease.job().getId(), lease.owner(), null, null,
+                now + config.getVisibilityTimeout().toMillis(), now) == 0) {
+            throw new LeaseLostException(lease.job().getId());
+        }
+    }
+
+    /**
+     * Relays a progress message of a leased job and records the chunk counts
+     * it carries. The counts are written, and the lease renewed, at most once
+     * per progress-write-interval; a job emits a message per chunk, and the
+     * database has a single writer for all of them. A checkpoint that lags
+     * behind only means a resumed attempt stores a few chunks again.
+     *
+     * @throws LeaseLostException if the job has been claimed by another worker
+     */
+    @Transactional
+    public void progress(Lease lease, String message) {
+        Integer processed = null;
+        Integer total = null;
+        try {
+            JsonNode node = objectMapper.readTree(message);
+            processed = node.hasNonNull("chunk") ? node.get("chunk").asInt() : null;
+            total = node.hasNonNull("totalChunks") ? node.get("totalChunks").asInt() : null;
+        } catch (JsonProcessingException e) {
+            // Not a structured message; relay it and renew the lease all the same
+        }
+        String jobId = lease.job().getId();
+        long now = System.currentTimeMillis();
+        PendingProgress previous = pendingProgress.get(jobId);
+        PendingProgress latest = previous == null
+                ? new PendingProgress(processed, total, 0, true)
+                : new PendingProgress(processed != null ? processed : previous.processed(),
+                        total != null ? total : previous.total(), previous.writtenAt(), true);
+        pendingProgress.put(jobId, latest);
+        if (now - latest.writtenAt() >= config.getProgressWriteInterval().toMillis()) {
+            writeProgress(lease, latest, now);
+        }
+        publish(jobId, message);
+    }
+
+    private void writeProgress(Lease lease, PendingProgress progress, long now) {
+        int updated = repository.heartbeat(lease.job().getId(), lease.owner(), progress.processed(),
+                progress.total(), now + config.getVisibilityTimeout().toMillis(), now);
+        if (updated == 0) {
+            pendingProgress.remove(lease.job().getId());
+            throw new LeaseLostException(lease.job().getId());
+        }
+        pendingProgress.put(lease.job().getId(),
+                new PendingProgress(progress.processed(), progress.total(), now, false));
+    }
+
+    /**
+     * Writes the counts not written yet when an attempt ends, so the final
+     * state and the checkpoint of a retry are exact.
+     */
+    private void flushProgress(Lease lease) {
+        PendingProgress progress = pendingProgress.remove(lease.job().getId());
+        if (progress != null && progress.dirty()) {
+            long now = System.currentTimeMillis();
+            repository.heartbeat(lease.job().getId(), lease.owner(), progress.processed(), progress.total(),
+                    now + config.getVisibilityTimeout().toMillis(), now);
+        }
+    }
+
+    /**
+     * Completes a job together with the write that records its file, in one
+     * transaction: a job cancelled meanwhile, because its file was deleted,
+     * has no lease to release and so cannot bring the file back.
+     *
+     * @throws LeaseLostException if the job was cancelled or claimed by another worker
+     */
+    @Transactional
+    public void complete(Lease lease, Runnable recordFile, String finalMessage) {
+        flushProgress(lease);
+        long now = System.currentTimeMillis();
+        if (repository.release(lease.job().getId(), lease.owner(), Status.COMPLETED.name(), now, null, now) == 0) {
+            throw new LeaseLostException(lease.job().getId());
+        }
+        recordFile.run();
+        publish(lease.job().getId(), finalMessage);
+        closeEvents(lease.job().getId());
+    }
+
+    /**
+     * Puts a failed job back on the queue with a growing delay, or marks it
+     * failed once it has used up its attempts. Returns whether it will be
+     * retried.
+     */
+    @Transactional
+    public boolean retryOrFail(Lease lease, String error) {
+        IngestionJobEntity job = lease.job();
+        boolean retry = job.getAttempts() < job.getMaxAttempts();
+        flushProgress(lease);
+        long now = System.currentTimeMillis();
+        long availableAt = now + config.getRetryBackoff().toMillis() * job.getAttempts();
+        repository.release(job.getId(), lease.owner(), (retry ? Status.QUEUED : Status.FAILED).name(),
+                availableAt, error, now);
+        publish(job.getId(), toJson(Map.of("type", "ERROR", "message", error, "retrying", retry)));
+        closeEvents(job.getId());
+        return retry;
+    }
+
+    /**
+     * Returns a job to the queue straight away without counting against it,
+     * e.g. when the instance shuts down mid-job.
+     */
+    @Transactional
+    public void requeue(Lease lease) {
+        flushProgress(lease);
+        long now = System.currentTimeMillis();
+        repository.release(lease.job().getId(), lease.owner(), Status.QUEUED.name(), now, null, now);
+        closeEvents(lease.job().getId());
+    }
+
+    /**
+     * Cancels the open jobs of a file that is being deleted. Returns how many
+     * there were.
+     */
+    @Transactional
+    public int cancelForFile(String fileId) {
+        return repository.cancelByFileId(fileId, "The file was deleted", System.currentTimeMillis());
+    }
+
+    @Transactional(readOnly = true)
+    public boolean isCancelled(String jobId) {
+        return repository.findById(jobId).map(job -> job.getStatus() == Status.CANCELLED).orElse(true);
+    }
+
+    /**
+     * Drops the live stream of a job this instance no longer owns.
+     */
+    public void abandon(Lease lease) {
+        pendingProgress.remove(lease.job().getId());
+        closeEvents(lease.job().getId());
+    }
+
+    /**
+     * The progress stream of a job: its current state, then its progress
+     * messages until it completes or fails for good.
+     */
+    public Flux<String> events(String jobId) {
+        return Mono.fromCallable(() -> find(jobId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(job -> job
+                        .map(found -> {
+                            Flux<String> current = Flux.just(statusMessage(found));
+                            return found.getStatus().isTerminal()
+                                    ? current
+                                    : current.concatWith(Flux.defer(() -> follow(jobId, found.getUpdatedAt())));
+                        })
+                        .orElseGet(() -> Flux.error(new ResponseStatusException(HttpStatus.NOT_FOUND,
+                                "Ingestion job not found: " + jobId))));
+    }
+
+    private Flux<String> follow(String jobId, long lastUpdatedAt) {
+        Sinks.Many<String> live = liveEvents.get(jobId);
+        if (live != null) {
+            // The stream ends with the attempt; whatever comes next is picked up from the table
+            return live.asFlux().concatWith(Flux.defer(() -> follow(jobId, Long.MIN_VALUE)));
+        }
+        return Mono.delay(config.getPollInterval())
+                .then(Mono.fromCallable(() -> find(jobId)).subscribeOn(Schedulers.boundedElastic()))
+                .flatMapMany(job -> {
+                    if (job.isEmpty()) {
+                        return Flux.<String>empty();
+                    }
+                    IngestionJobEntity found = job.get();
+                    Flux<String> update = found.getUpdatedAt() != lastUpdatedAt
+                            ? Flux.just(statusMessage(found))
+                            : Flux.empty();
+                    return found.getStatus().isTerminal()
+                            ? update
+                            : update.concatWith(Flux.defer(() -> follow(jobId, found.getUpdatedAt())));
+                });
+    }
+
+    public String statusMessage(IngestionJobEntity job) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "JOB_STATUS");
+        message.put("jobId", job.getId());
+        message.put("fileId", job.getFileId());
+        message.put("documentName", job.getDocumentName());
+        message.put("status", job.getStatus().name());
+        message.put("attempts", job.getAttempts());
+        message.put("processedChunks", job.getProcessedChunks());
+        message.put("totalChunks", job.getTotalChunks());
+        message.put("error", job.getLastError());
+        return toJson(message);
+    }
+
+    private void publish(String jobId, String message) {
+        Sinks.Many<String> live = liveEvents.get(jobId);
+        if (live != null) {
+            live.tryEmitNext(message);
+        }
+    }
+
+    private void closeEvents(String jobId) {
+        // Removed before completing, so a follower that sees the end never resubscribes to it
+        Sinks.Many<String> live = liveEvents.remove(jobId);
+        if (live != null) {
+            live.tryEmitComplete();
+        }
+    }
+
+    private String toJson(Map<String, Object> message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
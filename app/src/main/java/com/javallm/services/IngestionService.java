@@ -0,0 +1,189 @@
+package com.javallm.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.google.common.hash.Hashing;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Routes a stored upload to the extraction service for its content type. The
+ * returned flux emits the JSON progress messages of that service.
+ * Interrupted ingestions resume from a chunk checkpoint, which is only valid
+ * as long as the chunking hash of the content type is unchanged.
+ */
+@Service
+public class IngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionService.class);
+
+    // Where uploaded and imported files are kept, relative to the working directory
+    public static final String UPLOAD_DIRECTORY = "uploads";
+
+    public static final List<String> SUPPORTED_CONTENT_TYPES = List.of(
+            "application/pdf",
+            "application/msword",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            "application/vnd.ms-excel",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+            "application/vnd.ms-excel.sheet.macroEnabled.12", // .xlsm files
+            "application/vnd.ms-excel.sheet.binary.macroEnabled.12", // .xlsb files
+            "text/plain");
+
+    /**
+     * A chunk of extracted text with its page or section label, whatever the
+     * document type.
+     */
+    public record ExtractedChunk(String content, String label) {
+    }
+
+    private final PdfProcessingService pdfProcessingService;
+    private final WordProcessingService wordProcessingService;
+    private final ExcelProcessingService excelProcessingService;
+    private final PdfTextExtractorService pdfTextExtractorService;
+    private final WordTextExtractorService wordTextExtractorService;
+    private final ExcelTextExtractorService excelTextExtractorService;
+
+    public IngestionService(PdfProcessingService pdfProcessingService,
+            WordProcessingService wordProcessingService,
+            ExcelProcessingService excelProcessingService,
+            PdfTextExtractorService pdfTextExtractorService,
+            WordTextExtractorService wordTextExtractorService,
+            ExcelTextExtractorService excelTextExtractorService) {
+        this.pdfProcessingService = pdfProcessingService;
+        this.wordProcessingService = wordProcessingService;
+        this.excelProcessingService = excelProcessingService;
+        this.pdfTextExtractorService = pdfTextExtractorService;
+        this.wordTextExtractorService = wordTextExtractorService;
+        this.excelTextExtractorService = excelTextExtractorService;
+    }
+
+    public static boolean isSupported(String contentType) {
+        return SUPPORTED_CONTENT_TYPES.contains(contentType);
+    }
+
+    /**
+     * Name a file is stored under in the upload directory and with its chunks:
+     * the original name with the file id and extension appended, so names stay
+     * unique but recognisable.
+     */
+    public static String storedName(String originalFilename, String fileId) {
+        String fileExtension = "";
+        int dotIndex = originalFilename.lastIndexOf('.');
+        if (dotIndex > 0 && dotIndex < originalFilename.length() - 1) {
+            fileExtension = originalFilename.substring(dotIndex);
+        }
+        return originalFilename + fileId + fileExtension;
+    }
+
+    /**
+     * Content type of a file that can be processed, judged by its extension,
+     * or null. Used where there is no upload header to go by.
+     */
+    public static String contentTypeFor(String filename) {
+        String name = filename.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".pdf")) {
+            return "application/pdf";
+        } else if (name.endsWith(".docx")) {
+            return "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+        } else if (name.endsWith(".doc")) {
+            return "application/msword";
+        } else if (name.endsWith(".xlsx")) {
+            return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+        } else if (name.endsWith(".xlsm")) {
+            return "application/vnd.ms-excel.sheet.macroEnabled.12";
+        } else if (name.endsWith(".xlsb")) {
+            return "application/vnd.ms-excel.sheet.binary.macroEnabled.12";
+        } else if (name.endsWith(".xls")) {
+            return "application/vnd.ms-excel";
+        }
+        return null;
+    }
+
+    /**
+     * Hash of the chunking settings used for the content type.
+     */
+    public String chunkingHash(String contentType) {
+        String params;
+        if (isPdf(contentType)) {
+            params = pdfProcessingService.chunkingParams();
+        } else if (isWord(contentType)) {
+            params = wordProcessingService.chunkingParams();
+        } else if (isExcel(contentType)) {
+            params = excelProcessingService.chunkingParams();
+        } else {
+            params = "";
+        }
+        return Hashing.murmur3_128().hashString(params, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Processes the document, skipping the first resumeFrom chunks which an
+     * earlier attempt already stored.
+     */
+    public Flux<String> process(InputStream inputStream, String documentName, String fileId, String contentType,
+            int resumeFrom) {
+        if (isPdf(contentType)) {
+            logger.info("Processing '{}' as PDF.", documentName);
+            return pdfProcessingService.processPdf(inputStream, documentName, fileId, contentType, resumeFrom);
+        }
+        if (isWord(contentType)) {
+            logger.info("Processing '{}' as Word document.", documentName);
+            return wordProcessingService.processWord(inputStream, documentName, fileId, contentType, resumeFrom);
+        }
+        if (isExcel(contentType)) {
+            logger.info("Processing '{}' as Excel document.", documentName);
+            return excelProcessingService.processExcel(inputStream, documentName, fileId, contentType, resumeFrom);
+        }
+        return Flux.error(new IllegalArgumentException(
+                "No processing service available for content type: " + contentType));
+    }
+
+    /**
+     * Extracts and splits a document without embedding or storing anything,
+     * for batch pipelines that do those steps themselves. Blocking.
+     */
+    public List<ExtractedChunk> extractChunks(InputStream inputStream, String documentName, String contentType)
+            throws IOException {
+        if (isPdf(contentType)) {
+            return pdfTextExtractorService.extractAndSplitText(inputStream).stream()
+                    .map(chunk -> new ExtractedChunk(chunk.content(), chunk.pageLabel()))
+                    .toList();
+        }
+        if (isWord(contentType)) {
+            return wordTextExtractorService.extractAndSplitText(inputStream, documentName).stream()
+                    .map(chunk -> new ExtractedChunk(chunk.content(), chunk.sectionLabel()))
+                    .toList();
+        }
+        if (isExcel(contentType)) {
+            return excelTextExtractorService.extractAndSplitText(inputStream, documentName).stream()
+                    .map(chunk -> new ExtractedChunk(chunk.content(), chunk.sectionLabel()))
+                    .toList();
+        }
+        throw new IllegalArgumentException("No processing service available for content type: " + contentType);
+    }
+
+    private static boolean isPdf(String contentType) {
+        return "application/pdf".equals(contentType);
+    }
+
+    private static boolean isWord(String contentType) {
+        return "application/msword".equals(contentType) ||
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document".equals(contentType);
+    }
+
+    private static boolean isExcel(String contentType) {
+        return "application/vnd.ms-excel".equals(contentType) ||
+                "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet".equals(contentType) ||
+                "application/vnd.ms-excel.sheet.macroEnabled.12".equals(contentType) ||
+                "application/vnd.ms-excel.sheet.binary.macroEnabled.12".equals(contentType);
+    }
+}
@@ -0,0 +1,45 @@
+package com.javallm.services;
+
+import java.util.concurrent.Semaphore;
+
+import org.springframework.stereotype.Component;
+
+import com.javallm.config.IngestionConfig.Concurrency;
+import com.javallm.config.IngestionConfig.IngestionProperties;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Global limits on the embedding requests and Milvus writes of ingestion,
+ * however many jobs run at once. Waiting for a permit blocks a bounded
+ * elastic thread, never the caller.
+ */
+@Component
+public class IngestionThrottle {
+
+    private final Semaphore embeddingPermits;
+    private final Semaphore writePermits;
+
+    public IngestionThrottle(IngestionProperties ingestionProperties) {
+        Concurrency config = ingestionProperties.getConcurrency();
+        this.embeddingPermits = new Semaphore(config.getMaxEmbeddingRequests(), true);
+        this.writePermits = new Semaphore(config.getMaxMilvusWrites(), true);
+    }
+
+    public <T> Mono<T> embedding(Mono<T> request) {
+        return limit(embeddingPermits, request);
+    }
+
+    public Mono<Void> write(Runnable write) {
+        return limit(writePermits, Mono.fromRunnable(write));
+    }
+
+    private static <T> Mono<T> limit(Semaphore permits, Mono<T> call) {
+        return Mono.using(() -> {
+            permits.acquire();
+            return permits;
+        }, acquired -> call, Semaphore::release)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
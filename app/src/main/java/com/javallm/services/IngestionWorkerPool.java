@@ -0,0 +1,350 @@
+package com.javallm.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.javallm.config.IngestionConfig.IngestionProperties;
+import com.javallm.config.IngestionConfig.Jobs;
+import com.javallm.models.FileEntity;
+import com.javallm.models.IngestionJobEntity;
+import com.javallm.services.IngestionJobService.Lease;
+import com.javallm.services.IngestionJobService.LeaseLostException;
+
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Fixed pool of threads that take jobs from the ingestion job table and run
+ * extraction, embedding and insertion for them. Jobs left behind by a crashed
+ * or restarted instance are picked up once their lease expires.
+ */
+@Component
+public class IngestionWorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionWorkerPool.class);
+
+    private final IngestionJobService jobService;
+    private final IngestionService ingestionService;
+    private final FileService fileService;
+    private final MilvusService milvusService;
+    private final DocumentRevisionService revisionService;
+    private final Jobs config;
+    private ExecutorService executor;
+    private volatile boolean running;
+    // Held shared by each job from claim to completion, exclusively by runExclusive; fair, so waiting
+    // for the running jobs holds back new claims
+    private final ReentrantReadWriteLock jobLock = new ReentrantReadWriteLock(true);
+
+    public IngestionWorkerPool(IngestionJobService jobService, IngestionService ingestionService,
+            FileService fileService, MilvusService milvusService, DocumentRevisionService revisionService,
+            IngestionProperties ingestionProperties) {
+        this.jobService = jobService;
+        this.ingestionService = ingestionService;
+        this.fileService = fileService;
+        this.milvusService = milvusService;
+        this.revisionService = revisionService;
+        this.config = ingestionProperties.getJobs();
+    }
+
+    /**
+     * Starts the workers once the application is up. Batch runs that need
+     * them earlier, from a command line runner, may call this themselves.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(config.getWorkers(), runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        for (int i = 0; i < config.getWorkers(); i++) {
+            executor.submit(this::pollLoop);
+        }
+        logger.info("Started {} ingestion workers.", config.getWorkers());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Runs the action while no job is running: waits for the running jobs to
+     * finish and keeps new ones from being claimed until it returns.
+     */
+    public void runExclusive(Runnable action) {
+        Lock lock = jobLock.writeLock();
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void pollLoop() {
+        while (running) {
+            Lock lock = jobLock.readLock();
+            try {
+                lock.lockInterruptibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            Optional<Lease> lease = Optional.empty();
+            try {
+                try {
+                    lease = jobService.claimNext();
+                } catch (Exception e) {
+                    logger.warn("Failed to claim an ingestion job: {}", e.getMessage());
+                }
+                lease.ifPresent(this::run);
+            } finally {
+                lock.unlock();
+            }
+            if (lease.isPresent()) {
+                continue;
+            }
+            try {
+                Thread.sleep(config.getPollInterval().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs an attempt while renewing its lease on a timer, a few times per
+     * visibility timeout, until the attempt ends.
+     */
+    private void run(Lease lease) {
+        Disposable keepAlive = keepLeaseAlive(lease);
+        try {
+            runAttempt(lease);
+        } finally {
+            keepAlive.dispose();
+        }
+    }
+
+    private Disposable keepLeaseAlive(Lease lease) {
+        Duration period = config.getVisibilityTimeout().dividedBy(3);
+        return Flux.interval(period, period, Schedulers.boundedElastic())
+                .subscribe(tick -> jobService.renew(lease),
+                        // A lost lease also fails the next progress write, which ends the attempt
+                        e -> logger.warn("Stopped renewing the lease on ingestion job {}: {}", lease.job().getId(),
+                                e.getMessage()));
+    }
+
+    private void runAttempt(Lease lease) {
+        IngestionJobEntity job = lease.job();
+        if (job.getAttempts() > job.getMaxAttempts()) {
+            // Only reachable through expired leases, e.g. a file that crashes the instance every time
+            jobService.retryOrFail(lease, "Gave up after " + job.getMaxAttempts() + " attempts");
+            discardChunks(job);
+            return;
+        }
+        logger.info("Running ingestion job {} for '{}' (attempt {} of {}).", job.getId(), job.getDocumentName(),
+                job.getAttempts(), job.getMaxAttempts());
+        if (job.isRevision()) {
+            runRevision(lease);
+            return;
+        }
+        try {
+            String chunkingHash = ingestionService.chunkingHash(job.getContentType());
+            int resumeFrom = 0;
+            if (job.getAttempts() > 1) {
+                if (chunkingHash.equals(job.getChunkingHash()) && milvusService.isServingCurrentSchema()) {
+                    // Chunks up to the checkpoint are stored; any stored past it are overwritten by id
+                    resumeFrom = job.getProcessedChunks();
+                } else {
+                    // Stored chunks were cut differently, or sit in a legacy collection without chunk ids
+                    // and chunk_index to read them back by, and cannot be resumed from
+                    milvusService.deleteEmbeddingsByFileId(job.getFileId());
+                }
+            }
+            jobService.startAttempt(lease, resumeFrom, chunkingHash);
+            try (InputStream inputStream = Files.newInputStream(Paths.get(job.getPath()))) {
+                ingestionService.process(inputStream, job.getDocumentName(), job.getFileId(), job.getContentType(),
+                        resumeFrom)
+                        .doOnNext(message -> jobService.progress(lease, message))
+                        .blockLast();
+            }
+            jobService.complete(lease,
+                    () -> fileService.saveFile(job.getFileId(), job.getFilename(), job.getPath(),
+                            job.getContentType()),
+                    String.format("{\"type\": \"DATABASE_SAVE_COMPLETED\", \"documentName\": \"%s\"}",
+                            job.getDocumentName()));
+            logger.info("Ingestion job {} completed.", job.getId());
+        } catch (LeaseLostException e) {
+            leaseLost(lease, e);
+        } catch (Exception e) {
+            if (!running) {
+                logger.info("Ingestion job {} interrupted by shutdown, returning it to the queue.", job.getId());
+                jobService.requeue(lease);
+                return;
+            }
+            boolean retrying = jobService.retryOrFail(lease, String.valueOf(e.getMessage()));
+            if (!retrying) {
+                discardChunks(job);
+            }
+            logger.error("Ingestion job {} failed{}: {}", job.getId(), retrying ? ", will retry" : "",
+                    e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Applies a new revision of a stored file. There is no checkpoint: a
+     * retry diffs against whatever the failed attempt stored. The file's
+     * chunks are never discarded, since they belong to the file as a whole;
+     * once the last attempt fails, the previous revision is applied again.
+     */
+    private void runRevision(Lease lease) {
+        IngestionJobEntity job = lease.job();
+        try {
+            jobService.startAttempt(lease, 0, ingestionService.chunkingHash(job.getContentType()));
+            try (InputStream inputStream = Files.newInputStream(revisionPath(job))) {
+                revisionService.replace(inputStream, job.getDocumentName(), job.getFileId(), job.getContentType())
+                        .doOnNext(message -> jobService.progress(lease, message))
+                        .blockLast();
+            }
+            Path path = promoteRevision(job);
+            jobService.complete(lease,
+                    () -> fileService.updateFile(job.getFileId(), job.getFilename(), path.toString(),
+                            job.getContentType()),
+                    String.format("{\"type\": \"DATABASE_SAVE_COMPLETED\", \"documentName\": \"%s\"}",
+                            job.getDocumentName()));
+            logger.info("Revision job {} completed.", job.getId());
+        } catch (LeaseLostException e) {
+            leaseLost(lease, e);
+        } catch (Exception e) {
+            if (!running) {
+                logger.info("Revision job {} interrupted by shutdown, returning it to the queue.", job.getId());
+                jobService.requeue(lease);
+                return;
+            }
+            boolean retrying = jobService.retryOrFail(lease, String.valueOf(e.getMessage()));
+            logger.error("Revision job {} failed{}: {}", job.getId(), retrying ? ", will retry" : "",
+                    e.getMessage(), e);
+            if (!retrying) {
+                rollBackRevision(job);
+            }
+        }
+    }
+
+    /**
+     * A job whose lease is gone was either claimed by another worker, which
+     * carries on with it, or cancelled because its file was deleted. In the
+     * second case the chunks it stored after the delete ran would be left
+     * behind, so they are removed again.
+     */
+    private void leaseLost(Lease lease, LeaseLostException e) {
+        IngestionJobEntity job = lease.job();
+        jobService.abandon(lease);
+        if (!jobService.isCancelled(job.getId())) {
+            logger.warn("{}; leaving the job to its new owner.", e.getMessage());
+            return;
+        }
+        logger.info("Ingestion job {} was cancelled, its file {} was deleted.", job.getId(), job.getFileId());
+        discardChunks(job);
+    }
+
+    /**
+     * Puts the chunks of the previous revision back after a revision failed
+     * for good, since a failed attempt may have left the file's chunks half
+     * replaced. A revision that was already moved into the upload directory
+     * is fully stored and stays.
+     */
+    private void rollBackRevision(IngestionJobEntity job) {
+        if (!Files.exists(Paths.get(job.getPath()))) {
+            return;
+        }
+        Optional<FileEntity> previous = fileService.getFileById(job.getFileId())
+                .filter(file -> Files.exists(Paths.get(file.getPath())));
+        if (previous.isEmpty()) {
+            logger.error("Cannot roll back revision job {}: the previous revision of file {} is gone.", job.getId(),
+                    job.getFileId());
+            return;
+        }
+        Path path = Paths.get(previous.get().getPath());
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            revisionService.replace(inputStream, path.getFileName().toString(), job.getFileId(),
+                    previous.get().getContentType())
+                    .blockLast();
+            logger.info("Rolled back file {} to its previous revision after job {} failed.", job.getFileId(),
+                    job.getId());
+        } catch (Exception e) {
+            logger.error("Failed to roll back file {} after revision job {} failed: {}", job.getFileId(),
+                    job.getId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Where the revision is read from: its staging path, or the upload
+     * directory when an earlier attempt failed after moving it there.
+     */
+    private static Path revisionPath(IngestionJobEntity job) {
+        Path staged = Paths.get(job.getPath());
+        return Files.exists(staged) ? staged : Paths.get(IngestionService.UPLOAD_DIRECTORY, job.getDocumentName());
+    }
+
+    /**
+     * Moves an applied revision from its staging directory into the upload
+     * directory, replacing the previous revision. Returns its new path.
+     */
+    private Path promoteRevision(IngestionJobEntity job) throws IOException {
+        Path staged = Paths.get(job.getPath());
+        Path target = Paths.get(IngestionService.UPLOAD_DIRECTORY, job.getDocumentName());
+        if (Files.exists(staged)) {
+            Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(staged.getParent());
+        }
+        Optional<String> previous = fileService.getFileById(job.getFileId()).map(FileEntity::getPath);
+        if (previous.isPresent() && !Paths.get(previous.get()).equals(target)) {
+            // Renamed: the previous revision is stored under another name
+            Files.deleteIfExists(Paths.get(previous.get()));
+        }
+        return target;
+    }
+
+    /**
+     * Removes the stored chunks of a job that failed for good; the checkpoint
+     * keeps them only while a retry may still use them.
+     */
+    private void discardChunks(IngestionJobEntity job) {
+        try {
+            milvusService.deleteEmbeddingsByFileId(job.getFileId());
+        } catch (Exception e) {
+            logger.warn("Failed to remove the chunks of failed job {}: {}", job.getId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.javallm.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.Lists;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keyword search over the chunks, next to the vector search: a SQLite FTS5
+ * index (V7) over the text and document name of every chunk of the serving
+ * collection, ranked by BM25. It follows the collection through
+ * {@link EmbeddingsChangedEvent}s, so whatever is ingested, revised or
+ * deleted is searchable, or gone, a moment after the chunks are written.
+ * The events are queued and written by a single thread, a batch of them per
+ * transaction, so ingestion does not wait for the index and does not hold
+ * the database's single write connection once per chunk.
+ * ./gradlew runKeywordIndex rebuilds it from the collection.
+ */
+@Service
+public class KeywordIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeywordIndexService.class);
+
+    // Bound the work a single query can ask for
+    private static final int MAX_TERMS = 32;
+    // Rows per statement when deleting by id
+    private static final int DELETE_BATCH_SIZE = 500;
+    // Changes arriving within this time of each other are written in one transaction
+    private static final long FLUSH_DELAY_MS = 200;
+    private static final int MAX_EVENTS_PER_FLUSH = 256;
+    private static final int SNIPPET_TOKENS = 32;
+    private static final String HIGHLIGHT_OPEN = "<mark>";
+    private static final String HIGHLIGHT_CLOSE = "</mark>";
+
+    // A quoted phrase, or anything up to the next whitespace
+    private static final Pattern TERM = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+
+    private static final String UPSERT = "INSERT INTO chunks (id, file_id, chunk_index, document_name, pages, text) "
+            + "VALUES (:id, :fileId, :chunkIndex, :documentName, :pages, :text) "
+            + "ON CONFLICT (id) DO UPDATE SET file_id = excluded.file_id, chunk_index = excluded.chunk_index, "
+            + "document_name = excluded.document_name, pages = excluded.pages, text = excluded.text "
+            // Rows written again unchanged (retries, re-embedding) leave the index alone
+            + "WHERE chunks.document_name IS NOT excluded.document_name OR chunks.pages IS NOT excluded.pages "
+            + "OR chunks.text IS NOT excluded.text";
+
+    // The limit applies to the index alone, so snippets are only built for the rows returned.
+    // Ties go by chunk id, so pages are cut from one ranking.
+    private static final String SEARCH = "SELECT c.id, c.file_id, c.chunk_index, c.document_name, c.pages, "
+            + "m.snippet, m.rank FROM (SELECT rowid, rank, snippet(chunks_fts, 1, :open, :close, '…', :tokens) "
+            + "AS snippet FROM chunks_fts WHERE chunks_fts MATCH :match%s ORDER BY rank, rowid "
+            + "LIMIT :limit OFFSET :offset) m JOIN chunks c ON c.id = m.rowid ORDER BY m.rank, m.rowid";
+    private static final String FILE_FILTER = " AND rowid IN (SELECT id FROM chunks WHERE file_id IN (:fileIds))";
+
+    /**
+     * The searchable part of a chunk, keyed by its id in the collection.
+     */
+    public record IndexedChunk(long id, String fileId, int chunkIndex, String documentName, String pages,
+            String text) {
+    }
+
+    /**
+     * A chunk matching a keyword query. score is the BM25 score, higher is
+     * better; snippet is the best matching part of the text with the matches
+     * highlighted.
+     */
+    public record KeywordHit(long chunkId, String fileId, int chunkIndex, String documentName, String pages,
+            String snippet, double score) {
+    }
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    // Changes to the collection not written to the index yet, in the order they were made
+    private final BlockingQueue<EmbeddingsChangedEvent> pending = new LinkedBlockingQueue<>();
+    private ExecutorService writer;
+
+    public KeywordIndexService(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "keyword-index-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.submit(this::writeLoop);
+    }
+
+    /**
+     * Stops the writer once the changes still queued are written.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        writer.shutdownNow();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Turns a user query into an FTS5 match expression: words match whole
+     * tokens, "quoted text" matches as a phrase and a trailing * makes a
+     * prefix query; every term must match. Operators and column filters are
+     * not passed through, so no input is a syntax error.
+     *
+     * @throws IllegalArgumentException if the query has no words, or too many
+     */
+    public static String matchExpression(String query) {
+        List<String> terms = new ArrayList<>();
+        Matcher matcher = TERM.matcher(query == null ? "" : query);
+        while (matcher.find()) {
+            String term = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            boolean prefix = matcher.group(1) == null && term.endsWith("*");
+            term = term.replaceAll("\\*+$", "");
+            // Punctuation alone makes no token
+            if (term.codePoints().noneMatch(Character::isLetterOrDigit)) {
+                continue;
+            }
+            terms.add("\"" + term.replace("\"", "\"\"") + "\"" + (prefix ? "*" : ""));
+        }
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("Query has no words to search for");
+        }
+        if (terms.size() > MAX_TERMS) {
+            throw new IllegalArgumentException("Query has more than " + MAX_TERMS + " terms");
+        }
+        return String.join(" ", terms);
+    }
+
+    /**
+     * One page of the chunks matching a match expression (see
+     * {@link #matchExpression}), best first, optionally within some files.
+     */
+    @Transactional(readOnly = true)
+    public List<KeywordHit> search(String matchExpression, List<String> fileIds, int limit, int offset) {
+        boolean filtered = fileIds != null && !fileIds.isEmpty();
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("open", HIGHLIGHT_OPEN)
+                .addValue("close", HIGHLIGHT_CLOSE)
+                .addValue("tokens", SNIPPET_TOKENS)
+                .addValue("match", matchExpression)
+                .addValue("limit", limit)
+                .addValue("offset", offset);
+        if (filtered) {
+            params.addValue("fileIds", fileIds);
+        }
+        return jdbcTemplate.query(String.format(SEARCH, filtered ? FILE_FILTER : ""), params,
+                (rs, rowNum) -> new KeywordHit(rs.getLong("id"), rs.getString("file_id"), rs.getInt("chunk_index"),
+                        rs.getString("document_name"), rs.getString("pages"), rs.getString("snippet"),
+                        // FTS5 ranks by negated BM25, lowest first
+                        -rs.getDouble("rank")));
+    }
+
+    /**
+     * Mirrors writes to the serving collection, by queueing them for the
+     * writer thread.
+     */
+    @EventListener
+    public void onEmbeddingsChanged(EmbeddingsChangedEvent event) {
+        pending.add(event);
+    }
+
+    private void writeLoop() {
+        List<EmbeddingsChangedEvent> events = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                events.add(pending.take());
+                // Let the changes of a busy moment gather, so they share a transaction
+                Thread.sleep(FLUSH_DELAY_MS);
+            } catch (InterruptedException e) {
+                // Shutting down: write whatever is queued, then stop
+                stopping = true;
+            }
+            do {
+                pending.drainTo(events, MAX_EVENTS_PER_FLUSH - events.size());
+                write(events);
+                events.clear();
+            } while (stopping && !pending.isEmpty());
+        }
+    }
+
+    /**
+     * Applies queued changes in one transaction, in order; consecutive
+     * upserts go in one batch. A failure here must not fail the ingestion,
+     * which already stored the chunks; the index is behind until the files
+     * are written again or the index is rebuilt.
+     */
+    private void write(List<EmbeddingsChangedEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<IndexedChunk> upserts = new ArrayList<>();
+                for (EmbeddingsChangedEvent event : events) {
+                    if (!event.deleted()) {
+                        event.rows().stream().map(MilvusService::indexedChunk).forEach(upserts::add);
+                        continue;
+                    }
+                    index(upserts);
+                    upserts.clear();
+                    if (!event.deletedIds().isEmpty()) {
+                        deleteChunks(event.deletedIds());
+                    } else {
+                        deleteFiles(event.fileIds());
+                    }
+                }
+                index(upserts);
+            });
+        } catch (RuntimeException e) {
+            Set<String> fileIds = new LinkedHashSet<>();
+            events.forEach(event -> fileIds.addAll(event.fileIds()));
+            logger.error("Failed to update the keyword index for files {}; run runKeywordIndex to rebuild it: {}",
+                    fileIds, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds or replaces chunks, in one transaction (or the caller's).
+     */
+    public void index(List<IndexedChunk> chunks) {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        SqlParameterSource[] batch = chunks.stream()
+                .map(chunk -> new MapSqlParameterSource()
+                        .addValue("id", chunk.id())
+                        .addValue("fileId", chunk.fileId())
+                        .addValue("chunkIndex", chunk.chunkIndex())
+                        .addValue("documentName", chunk.documentName())
+                        .addValue("pages", chunk.pages())
+                        .addValue("text", chunk.text()))
+                .toArray(SqlParameterSource[]::new);
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT, batch));
+    }
+
+    public void deleteChunks(Collection<Long> ids) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (List<Long> batch : Lists.partition(new ArrayList<>(ids), DELETE_BATCH_SIZE)) {
+                jdbcTemplate.update("DELETE FROM chunks WHERE id IN (:ids)", Map.of("ids", batch));
+            }
+        });
+    }
+
+    public void deleteFiles(Set<String> fileIds) {
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate
+                .update("DELETE FROM chunks WHERE file_id IN (:fileIds)", Map.of("fileIds", fileIds)));
+    }
+
+    /**
+     * Removes every chunk whose id is not in ids, e.g. the ones a rebuild did
+     * not find in the collection any more. Returns how many went.
+     */
+    public int retainOnly(Set<Long> ids) {
+        List<Long> stale = jdbcTemplate.queryForList("SELECT id FROM chunks", new HashMap<>(), Long.class)
+                .stream()
+                .filter(id -> !ids.contains(id))
+                .toList();
+        deleteChunks(stale);
+        return stale.size();
+    }
+
+    /**
+     * Merges the index into a single b-tree, which makes queries faster after
+     * a bulk load.
+     */
+    public void optimize() {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate
+                .update("INSERT INTO chunks_fts (chunks_fts) VALUES ('optimize')", new HashMap<>()));
+    }
+}
@@ -0,0 +1,195 @@
+package com.javallm.services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.javallm.config.ChatConfig.Backend;
+import com.javallm.config.ChatConfig.ChatProperties;
+import com.javallm.config.ChatConfig.Routing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Streams chat completions from one of several OpenAI-compatible backends.
+ * Backends are ranked by their smoothed time-to-first-token scaled by their
+ * in-flight count, and each is capped at its own concurrency. A backend that
+ * errors or stays silent past the first-token deadline is put on cooldown
+ * and the request moves on to the next one; once tokens have been sent the
+ * request stays where it is.
+ */
+@Service
+public class LlmRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmRouter.class);
+
+    private final Routing routing;
+    private final List<BackendState> backends = new ArrayList<>();
+    private final Counter failovers;
+
+    @Autowired
+    public LlmRouter(ChatProperties chatProperties, ChatClient.Builder defaultClientBuilder,
+            MeterRegistry meterRegistry) {
+        this(chatProperties.getRouting(), endpoints(chatProperties, defaultClientBuilder), meterRegistry);
+    }
+
+    LlmRouter(Routing routing, List<Endpoint> endpoints, MeterRegistry meterRegistry) {
+        this.routing = routing;
+        for (Endpoint endpoint : endpoints) {
+            BackendState backend = new BackendState(endpoint.name(), endpoint.chatClient(), endpoint.maxConcurrent());
+            backend.ttftTimer = Timer.builder("llm.backend.ttft")
+                    .tag("backend", backend.name)
+                    .publishPercentiles(0.5, 0.95)
+                    .register(meterRegistry);
+            Gauge.builder("llm.backend.inflight", backend.inflight, AtomicInteger::get)
+                    .tag("backend", backend.name)
+                    .register(meterRegistry);
+            backends.add(backend);
+        }
+        this.failovers = Counter.builder("llm.backend.failover").register(meterRegistry);
+        logger.info("LLM router configured with backends {}.", backends.stream().map(b -> b.name).toList());
+    }
+
+    /**
+     * A backend as configured: its client and how many generations it may
+     * run at once.
+     */
+    record Endpoint(String name, ChatClient chatClient, int maxConcurrent) {
+    }
+
+    private static List<Endpoint> endpoints(ChatProperties chatProperties, ChatClient.Builder defaultClientBuilder) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        if (chatProperties.getBackends().isEmpty()) {
+            // Same single backend as before, configured under spring.ai.openai
+            endpoints.add(new Endpoint("default", defaultClientBuilder.build(), Integer.MAX_VALUE));
+        }
+        for (Backend backend : chatProperties.getBackends()) {
+            OpenAiChatModel chatModel = new OpenAiChatModel(
+                    new OpenAiApi(backend.getBaseUrl(), backend.getApiKey()),
+                    OpenAiChatOptions.builder()
+                            .withModel(backend.getModel())
+                            .withTemperature(backend.getTemperature())
+                            .build());
+            String name = backend.getName() != null ? backend.getName() : backend.getBaseUrl();
+            endpoints.add(new Endpoint(name, ChatClient.create(chatModel), backend.getMaxConcurrent()));
+        }
+        return endpoints;
+    }
+
+    private static final class BackendState {
+        final String name;
+        final ChatClient chatClient;
+        final int maxConcurrent;
+        final AtomicInteger inflight = new AtomicInteger();
+        // Smoothed TTFT in milliseconds; 0 until the first sample, so new backends get tried
+        volatile double ttftMillis;
+        volatile long cooldownUntil;
+        Timer ttftTimer;
+
+        BackendState(String name, ChatClient chatClient, int maxConcurrent) {
+            this.name = name;
+            this.chatClient = chatClient;
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        double cost() {
+            return (ttftMillis + 1) * (inflight.get() + 1);
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int current = inflight.get();
+                if (current >= maxConcurrent) {
+                    return false;
+                }
+                if (inflight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the completion of a system + user prompt as content deltas. The
+     * system prompt may be null.
+     */
+    public Flux<String> stream(String systemPrompt, String userPrompt) {
+        return Flux.defer(() -> {
+            long now = System.currentTimeMillis();
+            List<BackendState> candidates = new ArrayList<>(backends);
+            // Backends on cooldown go last rather than out, in case all of them are
+            candidates.sort(Comparator.comparing((BackendState b) -> b.cooldownUntil > now)
+                    .thenComparingDouble(BackendState::cost));
+            return attempt(candidates, 0, systemPrompt, userPrompt);
+        });
+    }
+
+    private Flux<String> attempt(List<BackendState> candidates, int index, String systemPrompt,
+            String userPrompt) {
+        while (index < candidates.size() && !candidates.get(index).tryAcquire()) {
+            index++;
+        }
+        if (index >= candidates.size()) {
+            return Flux.error(new IllegalStateException("All LLM backends are at capacity"));
+        }
+        BackendState backend = candidates.get(index);
+        int next = index + 1;
+        long start = System.nanoTime();
+        AtomicBoolean started = new AtomicBoolean();
+
+        ChatClient.ChatClientRequestSpec prompt = backend.chatClient.prompt().user(userPrompt);
+        if (systemPrompt != null) {
+            prompt = prompt.system(systemPrompt);
+        }
+        Flux<String> tokens = prompt
+                .stream()
+                .content()
+                .timeout(Mono.delay(routing.getFirstTokenTimeout()), token -> Mono.never())
+                .doOnNext(token -> {
+                    if (started.compareAndSet(false, true)) {
+                        recordTtft(backend, System.nanoTime() - start);
+                    }
+                })
+                .doFinally(signal -> backend.inflight.decrementAndGet());
+
+        return tokens.onErrorResume(e -> {
+            if (started.get()) {
+                return Flux.error(e);
+            }
+            backend.cooldownUntil = System.currentTimeMillis() + routing.getFailureCooldown().toMillis();
+            if (next >= candidates.size()) {
+                return Flux.error(e);
+            }
+            failovers.increment();
+            logger.warn("LLM backend '{}' failed before the first token ({}), trying '{}'.", backend.name,
+                    e.getMessage(), candidates.get(next).name);
+            return attempt(candidates, next, systemPrompt, userPrompt);
+        });
+    }
+
+    private void recordTtft(BackendState backend, long nanos) {
+        backend.ttftTimer.record(nanos, TimeUnit.NANOSECONDS);
+        double millis = nanos / 1e6;
+        double smoothing = routing.getTtftSmoothing();
+        backend.ttftMillis = backend.ttftMillis == 0
+                ? millis
+                : smoothing * millis + (1 - smoothing) * backend.ttftMillis;
+    }
+}
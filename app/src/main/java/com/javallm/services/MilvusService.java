@@ -2,31 +2,74 @@ package com.javallm.services;
 
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.javallm.config.MilvusConfig.MilvusProperties;
+import com.javallm.config.RetrievalConfig.Hybrid;
+import com.javallm.config.RetrievalConfig.RetrievalProperties;
+import com.javallm.services.EmbeddingService.EmbeddingModel;
+import com.javallm.services.KeywordIndexService.IndexedChunk;
 
+import io.milvus.common.clientenum.FunctionType;
+import io.milvus.orm.iterator.QueryIterator;
+import io.milvus.response.QueryResultsWrapper;
+import io.milvus.v2.common.ConsistencyLevel;
 import io.milvus.v2.common.DataType;
 import io.milvus.v2.common.IndexParam;
 import io.milvus.v2.common.IndexParam.MetricType;
 import io.milvus.v2.client.MilvusClientV2;
 import io.milvus.v2.service.collection.request.AddFieldReq;
 import io.milvus.v2.service.collection.request.CreateCollectionReq;
+import io.milvus.v2.service.collection.request.DescribeCollectionReq;
+import io.milvus.v2.service.collection.request.DropCollectionReq;
 import io.milvus.v2.service.collection.request.GetLoadStateReq;
 import io.milvus.v2.service.collection.request.HasCollectionReq;
 import io.milvus.v2.service.collection.request.LoadCollectionReq;
+import io.milvus.v2.service.collection.request.RenameCollectionReq;
+import io.milvus.v2.service.collection.response.DescribeCollectionResp;
+import io.milvus.v2.service.utility.request.AlterAliasReq;
+import io.milvus.v2.service.utility.request.CreateAliasReq;
+import io.milvus.v2.service.utility.request.FlushReq;
+import io.milvus.v2.service.utility.request.ListAliasesReq;
+import io.milvus.v2.service.vector.request.AnnSearchReq;
 import io.milvus.v2.service.vector.request.DeleteReq;
+import io.milvus.v2.service.vector.request.HybridSearchReq;
 import io.milvus.v2.service.vector.request.InsertReq;
+import io.milvus.v2.service.vector.request.QueryIteratorReq;
+import io.milvus.v2.service.vector.request.QueryReq;
 import io.milvus.v2.service.vector.request.SearchReq;
+import io.milvus.v2.service.vector.request.UpsertReq;
+import io.milvus.v2.service.vector.request.data.BaseVector;
+import io.milvus.v2.service.vector.request.data.EmbeddedText;
 import io.milvus.v2.service.vector.request.data.FloatVec;
+import io.milvus.v2.service.vector.request.ranker.RRFRanker;
+import io.milvus.v2.service.vector.response.QueryResp;
 import io.milvus.v2.service.vector.response.SearchResp;
 
 @Service
@@ -36,22 +79,677 @@ public class MilvusService {
 
         @Autowired
         private MilvusClientV2 milvusClient;
+
+        @Autowired
+        private RetrievalProperties retrievalProperties;
+
+        @Autowired
+        private MilvusProperties milvusProperties;
+
+        @Autowired
+        private ApplicationEventPublisher eventPublisher;
+
+        @Autowired
+        private SharedGeneration sharedGeneration;
+
+        @Autowired
+        private EmbeddingService embeddingService;
         // Default collection configuration
         private static final String DEFAULT_DATABASE_NAME = "micla"; // Adjust as needed
+        // Alias that every read and write goes through
         private static final String DEFAULT_COLLECTION_NAME = "micla_embeddings";
-        private static final int VECTOR_DIMENSION = 384; // Adjust based on your embedding model
+        // Bumped whenever the collection schema changes; rows are re-homed into the new version
+        private static final int SCHEMA_VERSION = 4;
+        private static final String PHYSICAL_COLLECTION_NAME = DEFAULT_COLLECTION_NAME + "_v" + SCHEMA_VERSION;
+        private static final long REHOME_BATCH_SIZE = 1000;
+        // Collection property naming the embedding model that filled the collection
+        private static final String MODEL_PROPERTY = "micla.embedding_model";
         private static final String VECTOR_FIELD = "embedding";
         private static final String ID_FIELD = "id";
         private static final String FILE_ID = "file_id"; // Unique identifier for the file
+        // Position of the chunk in its file; -1 for rows stored before it was recorded
+        private static final String CHUNK_INDEX = "chunk_index";
         private static final String TEXT_FIELD = "text";
         private static final String DOCUMENT_NAME = "document_name";
         private static final String DOCUMENT_PAGES = "document_pages";
+        private static final String CONTENT_TYPE = "content_type";
+        private static final String UPLOADED_AT = "uploaded_at"; // Epoch millis
+        // BM25 term weights, computed by Milvus from TEXT_FIELD on insert
+        private static final String SPARSE_FIELD = "sparse";
+        private static final String BM25_FUNCTION = "text_bm25";
 
+        private static final List<String> OUTPUT_FIELDS = Arrays.asList(DOCUMENT_NAME, DOCUMENT_PAGES, TEXT_FIELD,
+                        FILE_ID);
+
+        // Fields carried over when rows are copied between schema versions
+        private static final List<String> REHOME_FIELDS = Arrays.asList(ID_FIELD, FILE_ID, CHUNK_INDEX, TEXT_FIELD,
+                        DOCUMENT_NAME, DOCUMENT_PAGES, CONTENT_TYPE, UPLOADED_AT, VECTOR_FIELD);
+        // The same without the vector, for re-embedding with another model
+        private static final List<String> CHUNK_FIELDS = REHOME_FIELDS.subList(0, REHOME_FIELDS.size() - 1);
+
+        private static final Gson GSON = new Gson();
+
+        // Collections created before the sparse field existed only support dense search
+        private volatile Boolean sparseSupported;
+        private volatile boolean collectionReady;
+        // Set while an older schema keeps serving because re-homing is disabled
+        private volatile String legacyCollection;
+        // Model and dimension of the serving collection
+        private volatile EmbeddingModel servingModel;
+        // Bumped by every write so derived caches can tell their results are stale
+        private final AtomicLong generation = new AtomicLong();
+        private volatile long lastWriteMillis;
+        // Last seen value of the generation bumped by writes of other processes
+        private volatile long lastSharedGeneration = -1;
+
+        /**
+         * Makes sure the DEFAULT_COLLECTION_NAME alias points at a collection, creating
+         * one with the current schema if there is none. A collection with an older
+         * layout keeps serving plain searches, but writes and anything relying on the
+         * current fields are refused (see {@link #requireCurrentSchema}) until
+         * {@link #rehomeLegacyCollection} has copied it; that runs in the background
+         * after startup, never on a request.
+         */
         public void initializeCollection() {
-                initializeCollection(DEFAULT_COLLECTION_NAME, VECTOR_DIMENSION);
+                if (collectionReady) {
+                        return;
+                }
+                synchronized (this) {
+                        if (collectionReady) {
+                                return;
+                        }
+                        String serving = resolveServingCollection();
+                        if (isCurrentSchema(serving)) {
+                                adoptServingModel(serving);
+                                legacyCollection = null;
+                                collectionReady = true;
+                                return;
+                        }
+                        if (serving != null) {
+                                if (milvusProperties.isRehomeLegacyCollection()) {
+                                        logger.warn("Collection '{}' uses an older schema than '{}': uploads, revisions, resumed ingestions and "
+                                                        + "content type filters are refused until it has been re-homed in the background.",
+                                                        serving, PHYSICAL_COLLECTION_NAME);
+                                } else {
+                                        logger.error("Collection '{}' uses an older schema than '{}' and re-homing is disabled: uploads, revisions, "
+                                                        + "resumed ingestions and content type filters are refused until milvus.rehome-legacy-collection=true.",
+                                                        serving, PHYSICAL_COLLECTION_NAME);
+                                }
+                                adoptServingModel(serving);
+                                legacyCollection = serving;
+                                collectionReady = true;
+                                return;
+                        }
+
+                        EmbeddingModel model = embeddingService.currentModel();
+                        String target = collectionName(model);
+                        initializeCollection(target, model);
+                        milvusClient.createAlias(CreateAliasReq.builder()
+                                        .collectionName(target)
+                                        .alias(DEFAULT_COLLECTION_NAME)
+                                        .build());
+                        servingModel = collectionModel(target);
+                        sparseSupported = null;
+                        legacyCollection = null;
+                        collectionReady = true;
+                        markWritten();
+                        logger.info("Alias '{}' now points at collection '{}'.", DEFAULT_COLLECTION_NAME, target);
+                }
+        }
+
+        /**
+         * Collections are versioned by schema and embedding model, e.g.
+         * micla_embeddings_v4_jinaai_jina_embeddings_v2_small_en_d512.
+         */
+        public static String collectionName(EmbeddingModel model) {
+                String slug = model.id().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_")
+                                .replaceAll("^_+|_+$", "");
+                return PHYSICAL_COLLECTION_NAME + "_" + slug + "_d" + model.dimension();
+        }
+
+        /**
+         * The model recorded on a collection at creation and the dimension of its
+         * vector field. Works for the document collection too.
+         */
+        public EmbeddingModel collectionModel(String collectionName) {
+                DescribeCollectionResp description = milvusClient.describeCollection(DescribeCollectionReq.builder()
+                                .collectionName(collectionName)
+                                .build());
+                Map<String, String> properties = description.getProperties();
+                return new EmbeddingModel(properties != null ? properties.get(MODEL_PROPERTY) : null,
+                                description.getCollectionSchema().getField(VECTOR_FIELD).getDimension());
+        }
+
+        /**
+         * Properties recording the model on a new collection.
+         */
+        public static Map<String, String> modelProperties(EmbeddingModel model) {
+                return model.id() != null ? Collections.singletonMap(MODEL_PROPERTY, model.id())
+                                : Collections.emptyMap();
+        }
+
+        /**
+         * Takes the vector dimension from the serving collection and checks it was
+         * built by the model the embedding server runs. After a migration switched
+         * over, the migration target is what produced it.
+         */
+        private void adoptServingModel(String serving) {
+                EmbeddingModel model = collectionModel(serving);
+                servingModel = model;
+                try {
+                        EmbeddingModel current = embeddingService.currentModel();
+                        if (model.matches(current)) {
+                                return;
+                        }
+                        if (embeddingService.migrationTargetModel().filter(model::matches).isPresent()) {
+                                embeddingService.promoteMigrationTarget();
+                        } else {
+                                logger.error("Collection '{}' holds vectors of '{}' ({} dimensions) but the embedding server runs '{}' ({} dimensions). "
+                                                + "Configure spring.embedding.migration.target-url to migrate.",
+                                                serving, model.id(), model.dimension(), current.id(),
+                                                current.dimension());
+                        }
+                } catch (RuntimeException e) {
+                        logger.warn("Could not check the embedding model of '{}': {}", serving, e.getMessage());
+                }
+        }
+
+        /**
+         * Whether the serving collection has the current schema: deterministic
+         * chunk ids that are upserted, and the chunk_index, content_type and
+         * uploaded_at fields.
+         */
+        public boolean isServingCurrentSchema() {
+                initializeCollection();
+                return legacyCollection == null;
+        }
+
+        /**
+         * Fails the operation if an older schema is serving. Its rows have
+         * auto-generated ids and lack the fields the operation needs, so going
+         * ahead would duplicate rows or fail inside Milvus.
+         */
+        private void requireCurrentSchema(String operation) {
+                initializeCollection();
+                String legacy = legacyCollection;
+                if (legacy != null) {
+                        throw new IllegalStateException(String.format(
+                                        "Cannot %s: collection '%s' uses an older schema than '%s' and has not been re-homed yet (see milvus.rehome-legacy-collection).",
+                                        operation, legacy, PHYSICAL_COLLECTION_NAME));
+                }
+        }
+
+        /**
+         * Rebuilt and model-versioned collections carry a suffix after the schema
+         * version.
+         */
+        private static boolean isCurrentSchema(String collectionName) {
+                return collectionName != null && (collectionName.equals(PHYSICAL_COLLECTION_NAME)
+                                || collectionName.startsWith(PHYSICAL_COLLECTION_NAME + "_"));
+        }
+
+        /**
+         * Creates an empty collection with the current schema next to the serving
+         * one, for a full rebuild. Nothing reads from it until {@link #switchAlias}.
+         */
+        public String createRebuildCollection() {
+                EmbeddingModel model = embeddingService.currentModel();
+                String collectionName = collectionName(model) + "_r" + System.currentTimeMillis();
+                initializeCollection(collectionName, model);
+                return collectionName;
+        }
+
+        /**
+         * Creates (or finds, when resuming) the collection a migration to the
+         * given model fills. Nothing reads from it until {@link #switchAlias}.
+         */
+        public String createMigrationCollection(EmbeddingModel model) {
+                String collectionName = collectionName(model);
+                initializeCollection(collectionName, model);
+                return collectionName;
+        }
+
+        /**
+         * Plain insert into a collection other than the serving one, e.g. one being
+         * rebuilt.
+         */
+        public void insertRows(String collectionName, List<JsonObject> rows) {
+                milvusClient.insert(InsertReq.builder()
+                                .collectionName(collectionName)
+                                .data(rows)
+                                .build());
+        }
+
+        /**
+         * Upsert into a collection other than the serving one. Unlike insertRows,
+         * writing a row twice leaves one copy.
+         */
+        public void upsertRows(String collectionName, List<JsonObject> rows) {
+                milvusClient.upsert(UpsertReq.builder()
+                                .collectionName(collectionName)
+                                .data(rows)
+                                .build());
+        }
+
+        /**
+         * The subset of ids present in a collection.
+         */
+        public Set<Long> existingIds(String collectionName, List<Long> ids) {
+                Set<Long> existing = new HashSet<>();
+                if (ids.isEmpty()) {
+                        return existing;
+                }
+                QueryResp queryResp = milvusClient.query(QueryReq.builder()
+                                .collectionName(collectionName)
+                                .consistencyLevel(ConsistencyLevel.STRONG)
+                                .filter(ID_FIELD + " in {ids}")
+                                .filterTemplateValues(Collections.singletonMap("ids", ids))
+                                .outputFields(Collections.singletonList(ID_FIELD))
+                                .build());
+                for (QueryResp.QueryResult result : queryResp.getQueryResults()) {
+                        existing.add(((Number) result.getEntity().get(ID_FIELD)).longValue());
+                }
+                return existing;
+        }
+
+        public long countChunks() {
+                return countRows(DEFAULT_COLLECTION_NAME);
+        }
+
+        /**
+         * Every primary key of the serving collection.
+         */
+        public Set<Long> chunkIds() {
+                return chunkIds(DEFAULT_COLLECTION_NAME);
+        }
+
+        /**
+         * Every primary key of a collection.
+         */
+        public Set<Long> chunkIds(String collectionName) {
+                Set<Long> ids = new HashSet<>();
+                scanChunks(collectionName, Collections.singletonList(ID_FIELD),
+                                row -> ids.add(((Number) row.get(ID_FIELD)).longValue()));
+                return ids;
+        }
+
+        /**
+         * Serving chunks by id, without their vectors.
+         */
+        public List<Map<String, Object>> chunksById(List<Long> ids) {
+                List<Map<String, Object>> chunks = new ArrayList<>();
+                if (ids.isEmpty()) {
+                        return chunks;
+                }
+                QueryResp queryResp = milvusClient.query(QueryReq.builder()
+                                .collectionName(DEFAULT_COLLECTION_NAME)
+                                .consistencyLevel(ConsistencyLevel.STRONG)
+                                .filter(ID_FIELD + " in {ids}")
+                                .filterTemplateValues(Collections.singletonMap("ids", ids))
+                                .outputFields(CHUNK_FIELDS)
+                                .build());
+                for (QueryResp.QueryResult result : queryResp.getQueryResults()) {
+                        chunks.add(result.getEntity());
+                }
+                return chunks;
+        }
+
+        /**
+         * Streams every serving chunk through the consumer without its vectors,
+         * for re-embedding.
+         */
+        public void scanChunksForReembedding(Consumer<Map<String, Object>> consumer) {
+                scanChunks(CHUNK_FIELDS, consumer);
+        }
+
+        /**
+         * Streams every serving chunk through the consumer without its vectors,
+         * for rebuilding the keyword index.
+         */
+        public void scanChunksForKeywordIndex(Consumer<IndexedChunk> consumer) {
+                scanChunks(CHUNK_FIELDS, fields -> consumer.accept(new IndexedChunk(
+                                ((Number) fields.get(ID_FIELD)).longValue(),
+                                (String) fields.get(FILE_ID),
+                                ((Number) fields.get(CHUNK_INDEX)).intValue(),
+                                (String) fields.get(DOCUMENT_NAME),
+                                (String) fields.get(DOCUMENT_PAGES),
+                                (String) fields.get(TEXT_FIELD))));
+        }
+
+        /**
+         * The searchable part of a written row (see
+         * {@link EmbeddingsChangedEvent#rows()}).
+         */
+        public static IndexedChunk indexedChunk(JsonObject row) {
+                return new IndexedChunk(
+                                row.get(ID_FIELD).getAsLong(),
+                                row.get(FILE_ID).getAsString(),
+                                row.get(CHUNK_INDEX).getAsInt(),
+                                optionalString(row, DOCUMENT_NAME),
+                                optionalString(row, DOCUMENT_PAGES),
+                                row.get(TEXT_FIELD).getAsString());
+        }
+
+        private static String optionalString(JsonObject row, String field) {
+                return row.has(field) && !row.get(field).isJsonNull() ? row.get(field).getAsString() : null;
         }
 
-        public void initializeCollection(String collectionName, int vectorDimension) {
+        /**
+         * A chunk read by {@link #scanChunksForReembedding} or {@link #chunksById},
+         * with a new embedding.
+         */
+        public static JsonObject reembeddedRow(Map<String, Object> fields, float[] embedding) {
+                JsonObject row = new JsonObject();
+                row.addProperty(ID_FIELD, ((Number) fields.get(ID_FIELD)).longValue());
+                row.addProperty(FILE_ID, (String) fields.get(FILE_ID));
+                row.addProperty(CHUNK_INDEX, ((Number) fields.get(CHUNK_INDEX)).intValue());
+                row.addProperty(TEXT_FIELD, (String) fields.get(TEXT_FIELD));
+                row.addProperty(DOCUMENT_NAME, (String) fields.get(DOCUMENT_NAME));
+                row.addProperty(DOCUMENT_PAGES, (String) fields.get(DOCUMENT_PAGES));
+                row.addProperty(CONTENT_TYPE, (String) fields.get(CONTENT_TYPE));
+                row.addProperty(UPLOADED_AT, ((Number) fields.get(UPLOADED_AT)).longValue());
+                row.add(VECTOR_FIELD, toJsonArray(embedding));
+                return row;
+        }
+
+        /**
+         * A written row (see {@link EmbeddingsChangedEvent#rows()}) with its
+         * embedding replaced.
+         */
+        public static JsonObject reembeddedRow(JsonObject written, float[] embedding) {
+                JsonObject row = written.deepCopy();
+                row.add(VECTOR_FIELD, toJsonArray(embedding));
+                return row;
+        }
+
+        public static String chunkText(JsonObject row) {
+                return row.get(TEXT_FIELD).getAsString();
+        }
+
+        public static String chunkText(Map<String, Object> fields) {
+                return (String) fields.get(TEXT_FIELD);
+        }
+
+        public static long chunkRowId(Map<String, Object> fields) {
+                return ((Number) fields.get(ID_FIELD)).longValue();
+        }
+
+        public void deleteRows(String collectionName, Collection<Long> ids) {
+                for (List<Long> batch : Lists.partition(new ArrayList<>(ids), (int) REHOME_BATCH_SIZE)) {
+                        milvusClient.delete(DeleteReq.builder()
+                                        .collectionName(collectionName)
+                                        .ids(new ArrayList<>(batch))
+                                        .build());
+                }
+        }
+
+        public void deleteFileRows(String collectionName, String fileId) {
+                milvusClient.delete(DeleteReq.builder()
+                                .collectionName(collectionName)
+                                .filter(FILE_ID + " == {file_id}")
+                                .filterTemplateValues(Collections.singletonMap("file_id", fileId))
+                                .build());
+        }
+
+        /**
+         * Loads the collection and points DEFAULT_COLLECTION_NAME at it in one
+         * step, so searches move over without a gap. Returns the collection that
+         * served before.
+         */
+        public synchronized String switchAlias(String collectionName) {
+                String previous = resolveServingCollection();
+                ensureLoaded(collectionName);
+                milvusClient.alterAlias(AlterAliasReq.builder()
+                                .collectionName(collectionName)
+                                .alias(DEFAULT_COLLECTION_NAME)
+                                .build());
+                servingModel = collectionModel(collectionName);
+                sparseSupported = null;
+                collectionReady = true;
+                markWritten();
+                logger.info("Alias '{}' switched from '{}' to '{}'.", DEFAULT_COLLECTION_NAME, previous,
+                                collectionName);
+                return previous;
+        }
+
+        /**
+         * Seals the collection's growing segments so they get indexed.
+         */
+        public void flush(String collectionName) {
+                milvusClient.flush(FlushReq.builder()
+                                .collectionNames(Collections.singletonList(collectionName))
+                                .build());
+        }
+
+        public void dropCollection(String collectionName) {
+                milvusClient.dropCollection(DropCollectionReq.builder()
+                                .collectionName(collectionName)
+                                .build());
+                logger.info("Dropped collection '{}'.", collectionName);
+        }
+
+        /**
+         * Returns the physical collection currently answering for
+         * DEFAULT_COLLECTION_NAME, or null when nothing has been created yet.
+         */
+        private String resolveServingCollection() {
+                List<String> collections = milvusClient.listCollections().getCollectionNames();
+                if (collections.contains(DEFAULT_COLLECTION_NAME)) {
+                        // Pre-alias layout: the collection itself carries the name
+                        return DEFAULT_COLLECTION_NAME;
+                }
+                for (String collection : collections) {
+                        if (!collection.startsWith(DEFAULT_COLLECTION_NAME + "_v")) {
+                                continue;
+                        }
+                        List<String> aliases = milvusClient.listAliases(ListAliasesReq.builder()
+                                        .collectionName(collection)
+                                        .build()).getAlias();
+                        if (aliases != null && aliases.contains(DEFAULT_COLLECTION_NAME)) {
+                                return collection;
+                        }
+                }
+                return null;
+        }
+
+        /**
+         * Starts {@link #rehomeLegacyCollection} on a thread of its own once the
+         * application is up, when milvus.rehome-legacy-collection is enabled.
+         */
+        @EventListener(ApplicationReadyEvent.class)
+        public void rehomeInBackground() {
+                if (!milvusProperties.isRehomeLegacyCollection()) {
+                        return;
+                }
+                Thread thread = new Thread(() -> {
+                        try {
+                                rehomeLegacyCollection();
+                        } catch (RuntimeException e) {
+                                logger.error("Re-homing the legacy collection failed; writes stay refused until it is retried on the next start: {}",
+                                                e.getMessage(), e);
+                        }
+                }, "milvus-rehome");
+                thread.setDaemon(true);
+                thread.start();
+        }
+
+        /**
+         * Copies the rows of a serving collection with an older schema into one with
+         * the current schema and points the alias at it; searches keep being served
+         * by the old collection until then. The old collection is kept, renamed if it
+         * held the alias name itself, unless milvus.drop-legacy-collection is set.
+         * Returns whether a collection was re-homed.
+         */
+        public boolean rehomeLegacyCollection() {
+                initializeCollection();
+                String source = legacyCollection;
+                if (source == null) {
+                        return false;
+                }
+                EmbeddingModel model = embeddingService.currentModel();
+                String target = collectionName(model);
+                initializeCollection(target, model);
+                copyRows(source, target);
+                String kept;
+                synchronized (this) {
+                        if (!source.equals(resolveServingCollection())) {
+                                logger.warn("The serving collection changed while re-homing '{}'; leaving '{}' unused.", source,
+                                                target);
+                                return false;
+                        }
+                        kept = pointAliasAt(source, target);
+                        servingModel = collectionModel(target);
+                        sparseSupported = null;
+                        legacyCollection = null;
+                        markWritten();
+                }
+                logger.info("Alias '{}' now points at collection '{}'.", DEFAULT_COLLECTION_NAME, target);
+                if (milvusProperties.isDropLegacyCollection()) {
+                        dropCollection(kept);
+                } else {
+                        logger.info("Kept the legacy collection as '{}'; drop it once '{}' is verified, or set milvus.drop-legacy-collection.",
+                                        kept, target);
+                }
+                return true;
+        }
+
+        /**
+         * Copies every row of source into target in batches. Rows are upserted, so
+         * an interrupted copy can simply run again. The BM25 sparse vectors are
+         * recomputed by Milvus on write.
+         */
+        private void copyRows(String source, String target) {
+                logger.info("Re-homing rows from '{}' into '{}'.", source, target);
+                ensureLoaded(source);
+                long sourceCount = countRows(source);
+                long copied = 0;
+
+                // Older versions lack some of the fields, those get defaults in toRehomedRow
+                List<String> sourceFields = milvusClient.describeCollection(DescribeCollectionReq.builder()
+                                .collectionName(source)
+                                .build()).getFieldNames();
+                List<String> outputFields = REHOME_FIELDS.stream().filter(sourceFields::contains).toList();
+
+                QueryIterator iterator = milvusClient.queryIterator(QueryIteratorReq.builder()
+                                .collectionName(source)
+                                .outputFields(outputFields)
+                                .batchSize(REHOME_BATCH_SIZE)
+                                .build());
+                try {
+                        while (true) {
+                                List<QueryResultsWrapper.RowRecord> batch = iterator.next();
+                                if (batch.isEmpty()) {
+                                        break;
+                                }
+                                List<JsonObject> rows = new ArrayList<>(batch.size());
+                                for (QueryResultsWrapper.RowRecord record : batch) {
+                                        rows.add(toRehomedRow(record.getFieldValues()));
+                                }
+                                milvusClient.upsert(UpsertReq.builder()
+                                                .collectionName(target)
+                                                .data(rows)
+                                                .build());
+                                copied += rows.size();
+                                logger.info("Re-homed {} of {} rows into '{}'.", copied, sourceCount, target);
+                        }
+                } finally {
+                        iterator.close();
+                }
+
+                if (copied != sourceCount) {
+                        throw new IllegalStateException(String.format(
+                                        "Re-homed %d rows but '%s' holds %d, leaving it in place", copied, source,
+                                        sourceCount));
+                }
+        }
+
+        /**
+         * Points the alias at target instead of source. Returns the name source is
+         * kept under.
+         */
+        private String pointAliasAt(String source, String target) {
+                ensureLoaded(target);
+                if (!DEFAULT_COLLECTION_NAME.equals(source)) {
+                        milvusClient.alterAlias(AlterAliasReq.builder()
+                                        .collectionName(target)
+                                        .alias(DEFAULT_COLLECTION_NAME)
+                                        .build());
+                        return source;
+                }
+                // The alias name is taken by the legacy collection itself; renamed, it stays out of resolveServingCollection
+                String renamed = DEFAULT_COLLECTION_NAME + "_legacy_" + System.currentTimeMillis();
+                milvusClient.renameCollection(RenameCollectionReq.builder()
+                                .collectionName(source)
+                                .newCollectionName(renamed)
+                                .build());
+                milvusClient.createAlias(CreateAliasReq.builder()
+                                .collectionName(target)
+                                .alias(DEFAULT_COLLECTION_NAME)
+                                .build());
+                return renamed;
+        }
+
+        private JsonObject toRehomedRow(Map<String, Object> fields) {
+                JsonObject row = new JsonObject();
+                // Auto-generated ids of older versions are kept; they cannot collide with chunkId in practice
+                row.addProperty(ID_FIELD, ((Number) fields.get(ID_FIELD)).longValue());
+                row.addProperty(FILE_ID, (String) fields.get(FILE_ID));
+                Object chunkIndex = fields.get(CHUNK_INDEX);
+                row.addProperty(CHUNK_INDEX, chunkIndex != null ? ((Number) chunkIndex).intValue() : -1);
+                row.addProperty(TEXT_FIELD, (String) fields.get(TEXT_FIELD));
+                row.addProperty(DOCUMENT_NAME, (String) fields.get(DOCUMENT_NAME));
+                row.addProperty(DOCUMENT_PAGES, (String) fields.get(DOCUMENT_PAGES));
+                String contentType = (String) fields.get(CONTENT_TYPE);
+                row.addProperty(CONTENT_TYPE,
+                                contentType != null ? contentType
+                                                : guessContentType((String) fields.get(DOCUMENT_NAME)));
+                Object uploadedAt = fields.get(UPLOADED_AT);
+                row.addProperty(UPLOADED_AT, uploadedAt != null ? ((Number) uploadedAt).longValue() : 0L);
+
+                JsonArray vectorArray = new JsonArray();
+                for (Object val : (List<?>) fields.get(VECTOR_FIELD)) {
+                        vectorArray.add((Number) val);
+                }
+                row.add(VECTOR_FIELD, vectorArray);
+                return row;
+        }
+
+        /**
+         * Rows written before content_type existed only have the stored file name,
+         * which always ends with the original extension.
+         */
+        private String guessContentType(String documentName) {
+                String name = documentName == null ? "" : documentName.toLowerCase(Locale.ROOT);
+                if (name.endsWith(".pdf")) {
+                        return "application/pdf";
+                } else if (name.endsWith(".docx")) {
+                        return "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+                } else if (name.endsWith(".doc")) {
+                        return "application/msword";
+                } else if (name.endsWith(".xlsx")) {
+                        return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+                } else if (name.endsWith(".xlsm")) {
+                        return "application/vnd.ms-excel.sheet.macroEnabled.12";
+                } else if (name.endsWith(".xlsb")) {
+                        return "application/vnd.ms-excel.sheet.binary.macroEnabled.12";
+                } else if (name.endsWith(".xls")) {
+                        return "application/vnd.ms-excel";
+                }
+                return "";
+        }
+
+        public long countRows(String collectionName) {
+                QueryResp queryResp = milvusClient.query(QueryReq.builder()
+                                .collectionName(collectionName)
+                                .consistencyLevel(ConsistencyLevel.STRONG) // Count fresh inserts too
+                                .filter("")
+                                .outputFields(Collections.singletonList("count(*)"))
+                                .build());
+                return ((Number) queryResp.getQueryResults().get(0).getEntity().get("count(*)")).longValue();
+        }
+
+        public void initializeCollection(String collectionName, EmbeddingModel model) {
+                int vectorDimension = model.dimension();
                 try {
 
                         HasCollectionReq hasCollectionReq = HasCollectionReq.builder()
@@ -70,16 +768,24 @@ public class MilvusService {
                                         .fieldName(ID_FIELD)
                                         .dataType(DataType.Int64)
                                         .isPrimaryKey(true)
-                                        .autoID(true)
+                                        .autoID(false) // See chunkId
                                         .build());
+                        // Partition key: rows of one file land in one partition, so deletes and
+                        // file-scoped searches only touch that partition
                         schema.addField(AddFieldReq.builder()
                                         .fieldName(FILE_ID)
                                         .dataType(DataType.VarChar)
+                                        .isPartitionKey(true)
+                                        .build());
+                        schema.addField(AddFieldReq.builder()
+                                        .fieldName(CHUNK_INDEX)
+                                        .dataType(DataType.Int32)
                                         .build());
 
                         schema.addField(AddFieldReq.builder()
                                         .fieldName(TEXT_FIELD)
                                         .dataType(DataType.VarChar)
+                                        .enableAnalyzer(true) // Tokenized for BM25
                                         .build());
                         schema.addField(AddFieldReq.builder()
                                         .fieldName(DOCUMENT_NAME)
@@ -89,35 +795,79 @@ public class MilvusService {
                                         .fieldName(DOCUMENT_PAGES)
                                         .dataType(DataType.VarChar)
                                         .build());
+                        schema.addField(AddFieldReq.builder()
+                                        .fieldName(CONTENT_TYPE)
+                                        .dataType(DataType.VarChar)
+                                        .maxLength(256)
+                                        .build());
+                        schema.addField(AddFieldReq.builder()
+                                        .fieldName(UPLOADED_AT)
+                                        .dataType(DataType.Int64)
+                                        .build());
 
                         schema.addField(AddFieldReq.builder()
                                         .fieldName(VECTOR_FIELD)
                                         .dataType(DataType.FloatVector)
                                         .dimension(vectorDimension)
                                         .build());
+                        schema.addField(AddFieldReq.builder()
+                                        .fieldName(SPARSE_FIELD)
+                                        .dataType(DataType.SparseFloatVector)
+                                        .build());
 
-                        // Create indexes for the fields
+                        schema.addFunction(CreateCollectionReq.Function.builder()
+                                        .functionType(FunctionType.BM25)
+                                        .name(BM25_FUNCTION)
+                                        .inputFieldNames(Collections.singletonList(TEXT_FIELD))
+                                        .outputFieldNames(Collections.singletonList(SPARSE_FIELD))
+                                        .build());
 
-                        IndexParam indexParamForIdField = IndexParam.builder()
-                                        .fieldName(ID_FIELD)
-                                        .indexType(IndexParam.IndexType.AUTOINDEX) // No index for ID field
-                                        .build();
+                        // Create indexes for the fields. The primary key needs none.
+
+                        MilvusProperties.Index vectorIndex = milvusProperties.getIndex();
                         IndexParam indexParamForVectorField = IndexParam.builder()
                                         .fieldName(VECTOR_FIELD)
-                                        .indexType(IndexParam.IndexType.AUTOINDEX)
-                                        .metricType(MetricType.COSINE) // Adjust metric type as needed
+                                        .indexType(IndexParam.IndexType.valueOf(vectorIndex.getType()))
+                                        .metricType(MetricType.valueOf(vectorIndex.getMetric()))
+                                        .extraParams(vectorIndex.getParams())
+                                        .build();
+                        IndexParam indexParamForFileIdField = IndexParam.builder()
+                                        .fieldName(FILE_ID)
+                                        .indexType(IndexParam.IndexType.INVERTED)
+                                        .build();
+                        // Scalar indexes backing the SearchFilter expressions
+                        IndexParam indexParamForDocumentNameField = IndexParam.builder()
+                                        .fieldName(DOCUMENT_NAME)
+                                        .indexType(IndexParam.IndexType.INVERTED)
                                         .build();
-                        List<IndexParam> indexParams = Arrays.asList(indexParamForIdField, indexParamForVectorField);
+                        IndexParam indexParamForContentTypeField = IndexParam.builder()
+                                        .fieldName(CONTENT_TYPE)
+                                        .indexType(IndexParam.IndexType.INVERTED)
+                                        .build();
+                        IndexParam indexParamForUploadedAtField = IndexParam.builder()
+                                        .fieldName(UPLOADED_AT)
+                                        .indexType(IndexParam.IndexType.STL_SORT)
+                                        .build();
+                        IndexParam indexParamForSparseField = IndexParam.builder()
+                                        .fieldName(SPARSE_FIELD)
+                                        .indexType(IndexParam.IndexType.SPARSE_INVERTED_INDEX)
+                                        .metricType(MetricType.BM25)
+                                        .build();
+                        List<IndexParam> indexParams = Arrays.asList(indexParamForVectorField, indexParamForFileIdField, indexParamForDocumentNameField,
+                                        indexParamForContentTypeField, indexParamForUploadedAtField,
+                                        indexParamForSparseField);
 
                         CreateCollectionReq createCollectionReq = CreateCollectionReq.builder()
                                         .collectionName(collectionName)
                                         .collectionSchema(schema)
                                         .indexParams(indexParams)
+                                        .numPartitions(milvusProperties.getNumPartitions())
+                                        .properties(modelProperties(model))
                                         .build();
 
                         milvusClient.createCollection(createCollectionReq);
-                        logger.info("Collection '{}' created successfully with vector dimension {}.", collectionName,
-                                        vectorDimension);
+                        logger.info("Collection '{}' created successfully for model '{}' with vector dimension {} and {} index.",
+                                        collectionName, model.id(), vectorDimension, vectorIndex.getType());
 
                 } catch (Exception e) {
                         logger.error("Failed to initialize collection '{}': {}", collectionName, e.getMessage(), e);
@@ -126,15 +876,61 @@ public class MilvusService {
                 }
         }
 
+        /**
+         * Primary key of a chunk row. Deterministic, so writing a chunk again (a
+         * retried or resumed ingestion) replaces the row instead of duplicating it.
+         */
+        public static long chunkId(String fileId, int chunkIndex) {
+                return Hashing.murmur3_128()
+                                .hashString(fileId + ":" + chunkIndex, StandardCharsets.UTF_8)
+                                .asLong() & Long.MAX_VALUE;
+        }
+
+        /**
+         * A chunk row in the layout of the current schema.
+         */
+        public static JsonObject chunkRow(String fileId, int chunkIndex, String contentType, long uploadedAt,
+                        String text, String documentName, String pages, float[] embedding) {
+                JsonObject row = new JsonObject();
+                row.addProperty(ID_FIELD, chunkId(fileId, chunkIndex));
+                row.addProperty(FILE_ID, fileId);
+                row.addProperty(CHUNK_INDEX, chunkIndex);
+                row.addProperty(TEXT_FIELD, text);
+                row.addProperty(DOCUMENT_NAME, documentName);
+                row.addProperty(DOCUMENT_PAGES, pages);
+                row.addProperty(CONTENT_TYPE, contentType);
+                row.addProperty(UPLOADED_AT, uploadedAt);
+                row.add(VECTOR_FIELD, toJsonArray(embedding));
+                return row;
+        }
+
+        private static JsonArray toJsonArray(float[] embedding) {
+                JsonArray vectorArray = new JsonArray();
+                for (float val : embedding) {
+                        vectorArray.add(val);
+                }
+                return vectorArray;
+        }
+
+        /**
+         * Writes chunk rows. Rows carry their {@link #chunkId} and are upserted.
+         */
         public void insertPDFData(List<JsonObject> data) {
+                requireCurrentSchema("write chunks");
                 try {
-                        InsertReq insertReq = InsertReq.builder()
+                        UpsertReq upsertReq = UpsertReq.builder()
                                         .collectionName(DEFAULT_COLLECTION_NAME)
                                         .data(data)
                                         .build();
 
-                        milvusClient.insert(insertReq);
-                        logger.info("Successfully inserted {} records into collection '{}'.", data.size(),
+                        milvusClient.upsert(upsertReq);
+                        markWritten();
+                        Set<String> fileIds = new HashSet<>();
+                        for (JsonObject row : data) {
+                                fileIds.add(row.get(FILE_ID).getAsString());
+                        }
+                        eventPublisher.publishEvent(new EmbeddingsChangedEvent(fileIds, false, data, List.of()));
+                        logger.info("Successfully upserted {} records into collection '{}'.", data.size(),
                                         DEFAULT_COLLECTION_NAME);
 
                 } catch (Exception e) {
@@ -145,62 +941,477 @@ public class MilvusService {
 
         }
 
-        public List<QueryResult> queryCollection(FloatVec queryVector) {
+        /**
+         * Retrieves the chunks most relevant to a question. When the collection has a
+         * BM25 sparse field the dense and keyword legs run as one hybrid search and
+         * are fused with RRF, otherwise this falls back to dense-only search.
+         */
+        public List<QueryResult> queryCollection(String queryText, FloatVec queryVector) {
+                return queryCollection(queryText, queryVector, SearchFilter.NONE, resolveSearchParams(null, null));
+        }
+
+        /**
+         * Same as {@link #queryCollection(String, FloatVec)} but restricted to the rows
+         * matching the filter. The filter is evaluated by Milvus against the scalar
+         * indexes, and file ids additionally prune partitions. searchParams are the
+         * ANN knobs (ef, nprobe, ...) from {@link #resolveSearchParams}.
+         */
+        public List<QueryResult> queryCollection(String queryText, FloatVec queryVector, SearchFilter filter,
+                        Map<String, Object> searchParams) {
+                return searchPage(queryText, queryVector, filter, searchParams, retrievalProperties.getTopK(), 0);
+        }
+
+        /**
+         * One page of the ranking: hits offset .. offset + topK - 1. Dense search
+         * pages in Milvus; the RRF ranker of hybrid search has no offset, so the
+         * whole window is fused and the page is cut from it here. RRF scores tie
+         * often, and Milvus orders ties arbitrarily, so the window is sorted by
+         * score and then id: every page is cut from the same ranking.
+         */
+        public List<QueryResult> searchPage(String queryText, FloatVec queryVector, SearchFilter filter,
+                        Map<String, Object> searchParams, int topK, int offset) {
+                ensureLoaded(DEFAULT_COLLECTION_NAME);
+
+                if (filter.hasContentTypes()) {
+                        requireCurrentSchema("filter by content type");
+                }
+                Map<String, Object> templateValues = new HashMap<>();
+                String expression = filter.toExpression(templateValues);
+
+                Hybrid hybrid = retrievalProperties.getHybrid();
+                List<QueryResult> results;
+                if (hybrid.isEnabled() && queryText != null && !queryText.isBlank() && isSparseSupported()) {
+                        SearchResp searchResp = hybridSearch(Collections.singletonList(queryText),
+                                        Collections.singletonList(queryVector), hybrid, expression, templateValues,
+                                        searchParams, offset + topK);
+                        List<SearchResp.SearchResult> hits = new ArrayList<>(searchResp.getSearchResults().get(0));
+                        hits.sort(Comparator.comparing(SearchResp.SearchResult::getScore).reversed()
+                                        .thenComparingLong(hit -> ((Number) hit.getId()).longValue()));
+                        List<QueryResult> window = toQueryResults(hits);
+                        results = offset >= window.size() ? new ArrayList<>()
+                                        : new ArrayList<>(window.subList(offset, window.size()));
+                } else {
+                        SearchResp searchResp = denseSearch(Collections.singletonList(queryVector), expression,
+                                        templateValues, searchParams, topK, offset);
+                        results = toQueryResults(searchResp);
+                }
+                logger.info("Retrieved {} results from the search.", results.size());
+                return results;
+        }
+
+        /**
+         * Batch form of {@link #queryCollection(String, FloatVec, SearchFilter, Map)}:
+         * all questions go to Milvus as one multi-vector request and the hits come
+         * back grouped per question, in input order. Hybrid search is used only
+         * when every question has text.
+         */
+        public List<List<QueryResult>> queryCollectionBatch(List<String> queryTexts, List<FloatVec> queryVectors,
+                        SearchFilter filter, Map<String, Object> searchParams) {
+                if (queryVectors.isEmpty()) {
+                        return new ArrayList<>();
+                }
+                ensureLoaded(DEFAULT_COLLECTION_NAME);
+
+                if (filter.hasContentTypes()) {
+                        requireCurrentSchema("filter by content type");
+                }
+                Map<String, Object> templateValues = new HashMap<>();
+                String expression = filter.toExpression(templateValues);
+
+                Hybrid hybrid = retrievalProperties.getHybrid();
+                boolean allText = queryTexts.stream().allMatch(text -> text != null && !text.isBlank());
+                SearchResp searchResp;
+                if (hybrid.isEnabled() && allText && isSparseSupported()) {
+                        searchResp = hybridSearch(queryTexts, new ArrayList<>(queryVectors), hybrid, expression,
+                                        templateValues, searchParams, retrievalProperties.getTopK());
+                } else {
+                        searchResp = denseSearch(new ArrayList<>(queryVectors), expression, templateValues,
+                                        searchParams, retrievalProperties.getTopK(), 0);
+                }
+
+                List<List<QueryResult>> results = new ArrayList<>();
+                for (List<SearchResp.SearchResult> hits : searchResp.getSearchResults()) {
+                        results.add(toQueryResults(hits));
+                }
+                logger.info("Batch search for {} questions completed.", results.size());
+                return results;
+        }
+
+        private void ensureLoaded(String collectionName) {
                 // Load the collection if it is not loaded
                 GetLoadStateReq loadStateReq = GetLoadStateReq.builder()
-                                .collectionName(DEFAULT_COLLECTION_NAME)
+                                .collectionName(collectionName)
                                 .build();
                 boolean isLoaded = milvusClient.getLoadState(loadStateReq);
                 if (!isLoaded) {
-                        logger.info("Collection '{}' is not loaded, loading it now.", DEFAULT_COLLECTION_NAME);
+                        logger.info("Collection '{}' is not loaded, loading it now.", collectionName);
                         LoadCollectionReq loadCollectionReq = LoadCollectionReq.builder()
-                                        .collectionName(DEFAULT_COLLECTION_NAME)
+                                        .collectionName(collectionName)
                                         .build();
                         milvusClient.loadCollection(loadCollectionReq);
                 } else {
-                        logger.info("Collection '{}' is already loaded.", DEFAULT_COLLECTION_NAME);
+                        logger.info("Collection '{}' is already loaded.", collectionName);
                 }
-                // build the search request, asking Milvus to return our 3 scalar fields
+        }
+
+        /**
+         * Merges the search parameters for a request: the named profile (or
+         * retrieval.default-profile) first, then any explicit overrides on top.
+         */
+        public Map<String, Object> resolveSearchParams(String profile, Map<String, Object> overrides) {
+                String profileName = profile != null && !profile.isBlank() ? profile
+                                : retrievalProperties.getDefaultProfile();
+                Map<String, Object> profileParams = retrievalProperties.getProfiles().get(profileName);
+                if (profileParams == null && profile != null && !profile.isBlank()) {
+                        throw new IllegalArgumentException("Unknown search profile: " + profile);
+                }
+
+                Map<String, Object> params = new LinkedHashMap<>();
+                if (profileParams != null) {
+                        params.putAll(profileParams);
+                }
+                if (overrides != null) {
+                        params.putAll(overrides);
+                }
+                return params;
+        }
+
+        /**
+         * HNSW (ef) and DiskANN (search_list) reject candidate lists smaller than
+         * topK, so a "fast" profile is widened when a search asks for more hits.
+         */
+        private Map<String, Object> atLeastTopK(Map<String, Object> searchParams, int topK) {
+                Map<String, Object> params = new LinkedHashMap<>(searchParams);
+                for (String key : Arrays.asList("ef", "search_list")) {
+                        Object value = params.get(key);
+                        if (value instanceof Number number && number.intValue() < topK) {
+                                params.put(key, topK);
+                        }
+                }
+                return params;
+        }
+
+        private SearchResp denseSearch(List<BaseVector> queryVectors, String expression,
+                        Map<String, Object> templateValues, Map<String, Object> searchParams, int topK, int offset) {
+                // build the search request, asking Milvus to return our scalar fields
                 SearchReq searchReq = SearchReq.builder()
                                 .databaseName(DEFAULT_DATABASE_NAME)
                                 .collectionName(DEFAULT_COLLECTION_NAME)
                                 .annsField(VECTOR_FIELD)
-                                .data(Collections.singletonList(queryVector))
-                                .topK(7)
-                                .metricType(MetricType.COSINE)
-                                .outputFields(Arrays.asList(DOCUMENT_NAME, DOCUMENT_PAGES, TEXT_FIELD, FILE_ID))
+                                .data(queryVectors)
+                                .topK(topK)
+                                .offset(offset)
+                                .metricType(MetricType.valueOf(milvusProperties.getIndex().getMetric()))
+                                .searchParams(atLeastTopK(searchParams, offset + topK))
+                                .filter(expression)
+                                .filterTemplateValues(templateValues)
+                                .outputFields(OUTPUT_FIELDS)
                                 .build();
-                // :contentReference[oaicite:0]{index=0}
-                // execute the search
-                SearchResp searchResp = milvusClient.search(searchReq);
-                logger.info("Search completed with {} results.", searchResp.getSearchResults().size());
+                return milvusClient.search(searchReq);
+        }
+
+        private SearchResp hybridSearch(List<String> queryTexts, List<BaseVector> queryVectors, Hybrid hybrid,
+                        String expression, Map<String, Object> templateValues, Map<String, Object> searchParams,
+                        int topK) {
+                // Each leg must bring at least as many candidates as the fused ranking returns
+                int denseCandidates = Math.max(hybrid.getDenseCandidates(), topK);
+                int sparseCandidates = Math.max(hybrid.getSparseCandidates(), topK);
+                List<BaseVector> texts = new ArrayList<>();
+                for (String queryText : queryTexts) {
+                        texts.add(new EmbeddedText(queryText));
+                }
+                // Both legs are executed by Milvus in parallel and merged server side
+                AnnSearchReq denseReq = AnnSearchReq.builder()
+                                .vectorFieldName(VECTOR_FIELD)
+                                .vectors(queryVectors)
+                                .topK(denseCandidates)
+                                .params(GSON.toJson(atLeastTopK(searchParams, denseCandidates)))
+                                .expr(expression)
+                                .filterTemplateValues(templateValues)
+                                .build();
+                AnnSearchReq sparseReq = AnnSearchReq.builder()
+                                .vectorFieldName(SPARSE_FIELD)
+                                .vectors(texts)
+                                .topK(sparseCandidates)
+                                .expr(expression)
+                                .filterTemplateValues(templateValues)
+                                .build();
+
+                HybridSearchReq hybridSearchReq = HybridSearchReq.builder()
+                                .databaseName(DEFAULT_DATABASE_NAME)
+                                .collectionName(DEFAULT_COLLECTION_NAME)
+                                .searchRequests(Arrays.asList(denseReq, sparseReq))
+                                .ranker(new RRFRanker(hybrid.getRrfK()))
+                                .topK(topK)
+                                .outFields(OUTPUT_FIELDS)
+                                .build();
+                return milvusClient.hybridSearch(hybridSearchReq);
+        }
 
+        /**
+         * Reads up to limit stored vectors keyed by primary key. Used by the index
+         * benchmark to compute exact ground truth.
+         */
+        public Map<Long, float[]> sampleVectors(int limit) {
+                ensureLoaded(DEFAULT_COLLECTION_NAME);
+                Map<Long, float[]> vectors = new LinkedHashMap<>();
+                QueryIterator iterator = milvusClient.queryIterator(QueryIteratorReq.builder()
+                                .collectionName(DEFAULT_COLLECTION_NAME)
+                                .outputFields(Arrays.asList(ID_FIELD, VECTOR_FIELD))
+                                .batchSize(REHOME_BATCH_SIZE)
+                                .limit(limit)
+                                .build());
+                try {
+                        List<QueryResultsWrapper.RowRecord> batch;
+                        while (!(batch = iterator.next()).isEmpty()) {
+                                for (QueryResultsWrapper.RowRecord record : batch) {
+                                        List<?> values = (List<?>) record.get(VECTOR_FIELD);
+                                        float[] vector = new float[values.size()];
+                                        for (int i = 0; i < vector.length; i++) {
+                                                vector[i] = ((Number) values.get(i)).floatValue();
+                                        }
+                                        vectors.put(((Number) record.get(ID_FIELD)).longValue(), vector);
+                                }
+                        }
+                } finally {
+                        iterator.close();
+                }
+                return vectors;
+        }
+
+        /**
+         * Plain dense ANN search returning primary keys only, for benchmarking.
+         */
+        public List<Long> searchIds(FloatVec queryVector, int topK, Map<String, Object> searchParams) {
+                SearchResp searchResp = milvusClient.search(SearchReq.builder()
+                                .databaseName(DEFAULT_DATABASE_NAME)
+                                .collectionName(DEFAULT_COLLECTION_NAME)
+                                .annsField(VECTOR_FIELD)
+                                .data(Collections.singletonList(queryVector))
+                                .topK(topK)
+                                .metricType(MetricType.valueOf(milvusProperties.getIndex().getMetric()))
+                                .searchParams(atLeastTopK(searchParams, topK))
+                                .build());
+                List<Long> ids = new ArrayList<>();
+                for (SearchResp.SearchResult hit : searchResp.getSearchResults().get(0)) {
+                        ids.add(((Number) hit.getId()).longValue());
+                }
+                return ids;
+        }
+
+        /**
+         * Streams every stored chunk through the consumer, in batches, with the
+         * requested fields. Used to backfill derived indexes.
+         */
+        public void scanChunks(List<String> fields, Consumer<Map<String, Object>> consumer) {
+                scanChunks(DEFAULT_COLLECTION_NAME, fields, consumer);
+        }
+
+        private void scanChunks(String collectionName, List<String> fields, Consumer<Map<String, Object>> consumer) {
+                ensureLoaded(collectionName);
+                QueryIterator iterator = milvusClient.queryIterator(QueryIteratorReq.builder()
+                                .collectionName(collectionName)
+                                .outputFields(fields)
+                                .batchSize(REHOME_BATCH_SIZE)
+                                .build());
+                try {
+                        List<QueryResultsWrapper.RowRecord> batch;
+                        while (!(batch = iterator.next()).isEmpty()) {
+                                for (QueryResultsWrapper.RowRecord record : batch) {
+                                        consumer.accept(record.getFieldValues());
+                                }
+                        }
+                } finally {
+                        iterator.close();
+                }
+        }
+
+        /**
+         * Embeddings of the first chunkCount chunks of a file, used to rebuild the
+         * document vector when an ingestion resumes part way through.
+         */
+        public List<float[]> chunkVectors(String fileId, int chunkCount) {
+                requireCurrentSchema("read chunks by position");
+                ensureLoaded(DEFAULT_COLLECTION_NAME);
+                QueryResp queryResp = milvusClient.query(QueryReq.builder()
+                                .collectionName(DEFAULT_COLLECTION_NAME)
+                                .filter(FILE_ID + " == {file_id} and " + CHUNK_INDEX + " < {chunk_count}")
+                                .filterTemplateValues(Map.of("file_id", fileId, "chunk_count", chunkCount))
+                                .outputFields(Collections.singletonList(VECTOR_FIELD))
+                                .limit(chunkCount)
+                                .build());
+                List<float[]> vectors = new ArrayList<>();
+                for (QueryResp.QueryResult result : queryResp.getQueryResults()) {
+                        List<?> values = (List<?>) result.getEntity().get(VECTOR_FIELD);
+                        float[] vector = new float[values.size()];
+                        for (int i = 0; i < vector.length; i++) {
+                                vector[i] = ((Number) values.get(i)).floatValue();
+                        }
+                        vectors.add(vector);
+                }
+                return vectors;
+        }
+
+        /**
+         * A stored chunk row with its embedding.
+         */
+        public record StoredChunk(long id, int chunkIndex, String text, String documentName, String pages,
+                        String contentType, long uploadedAt, float[] embedding) {
+        }
+
+        /**
+         * Every stored chunk of a file, with embeddings, for comparing a new
+         * revision of the file against.
+         */
+        public List<StoredChunk> fileChunks(String fileId) {
+                requireCurrentSchema("read the chunks of a file");
+                ensureLoaded(DEFAULT_COLLECTION_NAME);
+                List<StoredChunk> chunks = new ArrayList<>();
+                QueryIterator iterator = milvusClient.queryIterator(QueryIteratorReq.builder()
+                                .collectionName(DEFAULT_COLLECTION_NAME)
+                                .filter(FILE_ID + " == {file_id}")
+                                .filterTemplateValues(Collections.singletonMap("file_id", fileId))
+                                .outputFields(REHOME_FIELDS)
+                                .consistencyLevel(ConsistencyLevel.STRONG)
+                                .batchSize(REHOME_BATCH_SIZE)
+                                .build());
+                try {
+                        List<QueryResultsWrapper.RowRecord> batch;
+                        while (!(batch = iterator.next()).isEmpty()) {
+                                for (QueryResultsWrapper.RowRecord record : batch) {
+                                        Map<String, Object> fields = record.getFieldValues();
+                                        List<?> values = (List<?>) fields.get(VECTOR_FIELD);
+                                        float[] vector = new float[values.size()];
+                                        for (int i = 0; i < vector.length; i++) {
+                                                vector[i] = ((Number) values.get(i)).floatValue();
+                                        }
+                                        chunks.add(new StoredChunk(((Number) fields.get(ID_FIELD)).longValue(),
+                                                        ((Number) fields.get(CHUNK_INDEX)).intValue(),
+                                                        (String) fields.get(TEXT_FIELD),
+                                                        (String) fields.get(DOCUMENT_NAME),
+                                                        (String) fields.get(DOCUMENT_PAGES),
+                                                        (String) fields.get(CONTENT_TYPE),
+                                                        ((Number) fields.get(UPLOADED_AT)).longValue(), vector));
+                                }
+                        }
+                } finally {
+                        iterator.close();
+                }
+                return chunks;
+        }
+
+        public boolean hasField(String fieldName) {
+                return milvusClient.describeCollection(DescribeCollectionReq.builder()
+                                .collectionName(DEFAULT_COLLECTION_NAME)
+                                .build()).getFieldNames().contains(fieldName);
+        }
+
+        /**
+         * Dimension of the serving collection's vectors.
+         */
+        public int getVectorDimension() {
+                initializeCollection();
+                return servingModel.dimension();
+        }
+
+        /**
+         * The embedding model of the serving collection. Its id is null for
+         * collections created before models were recorded.
+         */
+        public EmbeddingModel getEmbeddingModel() {
+                initializeCollection();
+                return servingModel;
+        }
+
+        public String getIndexType() {
+                return milvusProperties.getIndex().getType();
+        }
+
+        private boolean isSparseSupported() {
+                Boolean supported = sparseSupported;
+                if (supported == null) {
+                        DescribeCollectionResp description = milvusClient.describeCollection(
+                                        DescribeCollectionReq.builder()
+                                                        .collectionName(DEFAULT_COLLECTION_NAME)
+                                                        .build());
+                        supported = description.getFieldNames().contains(SPARSE_FIELD);
+                        if (!supported) {
+                                logger.warn("Collection '{}' has no '{}' field, hybrid search disabled.",
+                                                DEFAULT_COLLECTION_NAME, SPARSE_FIELD);
+                        }
+                        sparseSupported = supported;
+                }
+                return supported;
+        }
+
+        private List<QueryResult> toQueryResults(SearchResp searchResp) {
                 List<QueryResult> results = new ArrayList<>();
                 // Milvus returns List<List<SearchResult>>, one inner list per query vector
                 for (List<SearchResp.SearchResult> hits : searchResp.getSearchResults()) {
-                        for (SearchResp.SearchResult hit : hits) {
-                                // getEntity() is a wrapper around the scalar fields map
-                                Map<String, ?> entity = hit.getEntity();
-                                String name = (String) entity.get(DOCUMENT_NAME);
-                                String pages = ((String) entity.get(DOCUMENT_PAGES));
-                                String text = (String) entity.get(TEXT_FIELD);
-                                String fileId = (String) entity.get(FILE_ID);
-                                float score = hit.getScore();
+                        results.addAll(toQueryResults(hits));
+                }
+                return results;
+        }
 
-                                results.add(new QueryResult(name, pages, text, score, fileId));
-                        }
+        private List<QueryResult> toQueryResults(List<SearchResp.SearchResult> hits) {
+                List<QueryResult> results = new ArrayList<>();
+                for (SearchResp.SearchResult hit : hits) {
+                        // getEntity() is a wrapper around the scalar fields map
+                        Map<String, ?> entity = hit.getEntity();
+                        String name = (String) entity.get(DOCUMENT_NAME);
+                        String pages = ((String) entity.get(DOCUMENT_PAGES));
+                        String text = (String) entity.get(TEXT_FIELD);
+                        String fileId = (String) entity.get(FILE_ID);
+                        float score = hit.getScore();
+
+                        results.add(new QueryResult(name, pages, text, score, fileId));
                 }
-                logger.info("Retrieved {} results from the search.", results.size());
                 return results;
         }
 
+        /**
+         * Collection generation, which changes after every insert or delete: at once
+         * for the writes of this process, and within a couple of seconds for those
+         * of other instances and the command line runners (see
+         * {@link SharedGeneration}).
+         */
+        public long getGeneration() {
+                long shared = sharedGeneration.current();
+                if (shared != lastSharedGeneration) {
+                        if (lastSharedGeneration >= 0) {
+                                // Written elsewhere a moment ago
+                                lastWriteMillis = System.currentTimeMillis();
+                        }
+                        lastSharedGeneration = shared;
+                }
+                return (shared << 32) ^ generation.get();
+        }
+
+        /**
+         * Wall-clock time of the last write, or of noticing one made by another
+         * process. Searches shortly after it may not see the write yet under
+         * Milvus' default bounded consistency.
+         */
+        public long getLastWriteMillis() {
+                return lastWriteMillis;
+        }
+
+        private void markWritten() {
+                lastWriteMillis = System.currentTimeMillis();
+                generation.incrementAndGet();
+                sharedGeneration.markChanged();
+        }
+
         public void deleteEmbeddingsByFileId(String fileId) {
                 try {
                         DeleteReq deleteReq = DeleteReq.builder()
                                         .collectionName(DEFAULT_COLLECTION_NAME)
-                                        .filter("file_id == '" + fileId + "'")
+                                        .filter(FILE_ID + " == {file_id}")
+                                        .filterTemplateValues(Collections.singletonMap("file_id", fileId))
                                         .build();
                         milvusClient.delete(deleteReq);
+                        markWritten();
+                        eventPublisher.publishEvent(new EmbeddingsChangedEvent(Set.of(fileId), true, List.of(), List.of()));
                         logger.info("Successfully deleted embeddings for file ID '{}'.", fileId);
                 } catch (Exception e) {
                         logger.error("Failed to delete embeddings for file ID '{}': {}", fileId, e.getMessage(), e);
@@ -208,6 +1419,81 @@ public class MilvusService {
                 }
         }
 
+        /**
+         * Deletes single chunks of a file, e.g. the ones a new revision of it no
+         * longer has.
+         */
+        public void deleteChunks(String fileId, Collection<Long> ids) {
+                if (ids.isEmpty()) {
+                        return;
+                }
+                requireCurrentSchema("delete chunks by id");
+                try {
+                        deleteRows(DEFAULT_COLLECTION_NAME, ids);
+                        markWritten();
+                        eventPublisher.publishEvent(new EmbeddingsChangedEvent(Set.of(fileId), true, List.of(),
+                                        new ArrayList<>(ids)));
+                        logger.info("Deleted {} chunks of file ID '{}'.", ids.size(), fileId);
+                } catch (Exception e) {
+                        logger.error("Failed to delete chunks of file ID '{}': {}", fileId, e.getMessage(), e);
+                        throw new RuntimeException("Failed to delete chunks: " + e.getMessage(), e);
+                }
+        }
+
+        /**
+         * Optional restrictions for a search. Null or empty lists mean "no
+         * restriction" for that dimension.
+         */
+        public record SearchFilter(List<String> fileIds, List<String> documentNames, List<String> contentTypes) {
+                public static final SearchFilter NONE = new SearchFilter(null, null, null);
+
+                public boolean hasFileIds() {
+                        return fileIds != null && !fileIds.isEmpty();
+                }
+
+                public boolean hasContentTypes() {
+                        return contentTypes != null && !contentTypes.isEmpty();
+                }
+
+                public SearchFilter withFileIds(List<String> restrictedFileIds) {
+                        return new SearchFilter(restrictedFileIds, documentNames, contentTypes);
+                }
+
+                /**
+                 * Turns the filter into a templated boolean expression. Values never end
+                 * up in the expression text itself, they are bound through templateValues.
+                 * The field names are shared by the chunk and document collections.
+                 */
+                public String toExpression(Map<String, Object> templateValues) {
+                        List<String> clauses = new ArrayList<>();
+                        if (hasFileIds()) {
+                                clauses.add(FILE_ID + " in {file_ids}");
+                                templateValues.put("file_ids", fileIds);
+                        }
+                        if (documentNames != null && !documentNames.isEmpty()) {
+                                // Stored names are "<original name><uuid><ext>", so match on the original name prefix
+                                List<String> nameClauses = new ArrayList<>();
+                                for (int i = 0; i < documentNames.size(); i++) {
+                                        nameClauses.add(DOCUMENT_NAME + " like {document_name_" + i + "}");
+                                        templateValues.put("document_name_" + i, escapeLike(documentNames.get(i)) + "%");
+                                }
+                                clauses.add("(" + String.join(" or ", nameClauses) + ")");
+                        }
+                        if (hasContentTypes()) {
+                                clauses.add(CONTENT_TYPE + " in {content_types}");
+                                templateValues.put("content_types", contentTypes);
+                        }
+                        return String.join(" and ", clauses);
+                }
+
+                /**
+                 * Escapes the LIKE wildcards in a value, so it only matches itself.
+                 */
+                static String escapeLike(String value) {
+                        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+                }
+        }
+
         public class QueryResult {
                 private final String documentName;
                 private final String documentPages;
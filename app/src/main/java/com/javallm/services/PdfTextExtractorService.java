@@ -5,6 +5,8 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.springframework.stereotype.Service;
 
+import com.javallm.services.ExtractedChunkCache.CachedChunk;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -19,6 +21,12 @@ public class PdfTextExtractorService {
     // Overlap to maintain context between chunks
     private static final int CHUNK_OVERLAP = 200;
 
+    private final ExtractedChunkCache chunkCache;
+
+    public PdfTextExtractorService(ExtractedChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+    }
+
     /**
      * A record to hold a chunk of text and its corresponding page number(s).
      */
@@ -32,7 +40,16 @@ public class PdfTextExtractorService {
     }
 
     /**
-     * Extracts text from a PDF, then splits it into overlapping chunks.
+     * Describes how documents are split. Stored chunk positions are only
+     * valid for the settings they were produced with.
+     */
+    public String chunkingParams() {
+        return "pdf;size=" + CHUNK_SIZE + ";overlap=" + CHUNK_OVERLAP + ";anchors=page,line";
+    }
+
+    /**
+     * Extracts text from a PDF, then splits it into overlapping chunks. A PDF
+     * split before with the same settings is read from the chunk cache.
      *
      * @param inputStream The InputStream of the PDF file.
      * @return A List of TextChunks, each containing a piece of text and its page
@@ -40,9 +57,16 @@ public class PdfTextExtractorService {
      * @throws IOException if the PDF cannot be loaded or read.
      */
     public List<TextChunk> extractAndSplitText(InputStream inputStream) throws IOException {
+        byte[] pdf = inputStream.readAllBytes();
+        return chunkCache.computeIfAbsent(pdf, chunkingParams(), () -> extractAndSplitText(pdf),
+                chunk -> new CachedChunk(chunk.content(), chunk.pageLabel()),
+                cached -> new TextChunk(cached.content(), cached.label()));
+    }
+
+    private List<TextChunk> extractAndSplitText(byte[] pdf) throws IOException {
         List<PageContent> pageContents = new ArrayList<>();
         // 1. Extract text from each page to retain page boundary information.
-        try (PDDocument document = Loader.loadPDF(inputStream.readAllBytes())) {
+        try (PDDocument document = Loader.loadPDF(pdf)) {
             PDFTextStripper stripper = new PDFTextStripper();
             for (int i = 1; i <= document.getNumberOfPages(); i++) {
                 stripper.setStartPage(i);
@@ -59,7 +83,8 @@ public class PdfTextExtractorService {
 
     /**
      * Splits the text content from all pages into manageable chunks using a sliding
-     * window.
+     * window, restarted on every page and anchored to line starts (see
+     * {@link ChunkWindows}).
      */
     private List<TextChunk> splitTextIntoChunks(List<PageContent> pages) {
         List<TextChunk> chunks = new ArrayList<>();
@@ -78,34 +103,13 @@ public class PdfTextExtractorService {
             return chunks;
         }
 
-        int textLength = fullText.length();
-        int start = 0;
-
-        // Use a sliding window to create chunks with overlap.
-        while (start < textLength) {
-            int end = Math.min(start + CHUNK_SIZE, textLength);
-
-            // To avoid cutting words in half, find the last space before the hard limit.
-            if (end < textLength) {
-                int lastSpace = fullText.lastIndexOf(' ', end);
-                if (lastSpace > start) {
-                    end = lastSpace;
-                }
-            }
-
-            String chunkText = fullText.substring(start, end).trim();
+        List<ChunkWindows.Window> windows = ChunkWindows.split(fullText, pageStartIndices, CHUNK_SIZE, CHUNK_OVERLAP);
+        for (ChunkWindows.Window window : windows) {
+            String chunkText = fullText.substring(window.start(), window.end()).trim();
             if (!chunkText.isEmpty()) {
-                String pageLabel = getPageLabelForChunk(start, end, pageStartIndices, pages.size());
+                String pageLabel = getPageLabelForChunk(window.start(), window.end(), pageStartIndices, pages.size());
                 chunks.add(new TextChunk(chunkText, pageLabel));
             }
-
-            // Move the window forward, subtracting the overlap.
-            start += CHUNK_SIZE - CHUNK_OVERLAP;
-
-            // Ensure we always make forward progress.
-            if (start >= end) {
-                start = end;
-            }
         }
         return chunks;
     }
@@ -0,0 +1,134 @@
+package com.javallm.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.javallm.config.RetrievalConfig.ResultCache;
+import com.javallm.config.RetrievalConfig.RetrievalProperties;
+import com.javallm.services.MilvusService.QueryResult;
+import com.javallm.services.MilvusService.SearchFilter;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Caches retrieval results for repeated questions. Entries are keyed by the
+ * quantized query vector together with everything else that shapes the result
+ * (filters, search params, topK, query text for hybrid search) and the
+ * collection generation, so any insert or delete makes older entries
+ * unreachable. Writes of other instances and of the command line runners
+ * reach the generation through the database, within a couple of seconds.
+ */
+@Service
+public class RetrievalCache {
+
+    private static final String METRIC_NAME = "retrieval.cache";
+
+    private final MilvusService milvusService;
+    private final RetrievalProperties retrievalProperties;
+    private final Cache<String, List<QueryResult>> cache;
+    private final AtomicLong lastSeenGeneration = new AtomicLong(-1);
+
+    public RetrievalCache(MilvusService milvusService, RetrievalProperties retrievalProperties,
+            MeterRegistry meterRegistry) {
+        this.milvusService = milvusService;
+        this.retrievalProperties = retrievalProperties;
+
+        ResultCache config = retrievalProperties.getCache();
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(config.getMaxSizeBytes())
+                .weigher((String key, List<QueryResult> results) -> estimateBytes(key, results))
+                .expireAfterWrite(config.getTtl())
+                .recordStats()
+                .build();
+
+        GuavaCacheMetrics.monitor(meterRegistry, cache, METRIC_NAME);
+        Gauge.builder(METRIC_NAME + ".hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Share of retrievals answered from the cache")
+                .register(meterRegistry);
+    }
+
+    public List<QueryResult> get(String queryText, float[] queryEmbedding, SearchFilter filter,
+            Map<String, Object> searchParams, Supplier<List<QueryResult>> loader) {
+        ResultCache config = retrievalProperties.getCache();
+        if (!config.isEnabled()) {
+            return loader.get();
+        }
+
+        long generation = milvusService.getGeneration();
+        if (lastSeenGeneration.getAndSet(generation) != generation) {
+            // Keys of older generations can never match again, drop them now instead of waiting for eviction
+            cache.invalidateAll();
+        }
+
+        String key = buildKey(generation, queryText, queryEmbedding, filter, searchParams);
+        List<QueryResult> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<QueryResult> results = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+        boolean settled = System.currentTimeMillis() - milvusService.getLastWriteMillis() > config
+                .getConsistencyWindow().toMillis();
+        if (settled && milvusService.getGeneration() == generation) {
+            cache.put(key, results);
+        }
+        return results;
+    }
+
+    private String buildKey(long generation, String queryText, float[] queryEmbedding, SearchFilter filter,
+            Map<String, Object> searchParams) {
+        int steps = retrievalProperties.getCache().getQuantizationSteps();
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putLong(generation)
+                .putInt(retrievalProperties.getTopK());
+        for (float value : queryEmbedding) {
+            hasher.putInt(Math.round(value * steps));
+        }
+        if (retrievalProperties.getHybrid().isEnabled()) {
+            // The BM25 leg depends on the exact words, not just the embedding
+            hasher.putString(queryText.strip().toLowerCase(Locale.ROOT), StandardCharsets.UTF_8);
+        }
+        putSorted(hasher, filter.fileIds());
+        putSorted(hasher, filter.documentNames());
+        putSorted(hasher, filter.contentTypes());
+        hasher.putString(new TreeMap<>(searchParams).toString(), StandardCharsets.UTF_8);
+        return hasher.hash().toString();
+    }
+
+    private static void putSorted(Hasher hasher, List<String> values) {
+        List<String> sorted = values == null ? new ArrayList<>() : new ArrayList<>(values);
+        Collections.sort(sorted);
+        hasher.putInt(sorted.size());
+        for (String value : sorted) {
+            hasher.putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+    }
+
+    private static int estimateBytes(String key, List<QueryResult> results) {
+        long bytes = 64 + key.length() * 2L;
+        for (QueryResult result : results) {
+            bytes += 96 + 2L * (length(result.getText()) + length(result.getDocumentName())
+                    + length(result.getDocumentPages()) + length(result.getFileId()));
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
@@ -0,0 +1,65 @@
+package com.javallm.services;
+
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.javallm.config.RetrievalConfig.RetrievalProperties;
+import com.javallm.config.RetrievalConfig.TwoStage;
+import com.javallm.services.DocumentIndexService.DocumentHit;
+import com.javallm.services.MilvusService.QueryResult;
+import com.javallm.services.MilvusService.SearchFilter;
+
+import io.milvus.v2.service.vector.request.data.FloatVec;
+
+/**
+ * Entry point for chunk retrieval. Decides between a flat search over every
+ * chunk and a two-stage search that first narrows down to the best documents.
+ */
+@Service
+public class RetrievalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetrievalService.class);
+
+    private final MilvusService milvusService;
+    private final DocumentIndexService documentIndexService;
+    private final RetrievalProperties retrievalProperties;
+    private final RetrievalCache retrievalCache;
+
+    public RetrievalService(MilvusService milvusService, DocumentIndexService documentIndexService,
+            RetrievalProperties retrievalProperties, RetrievalCache retrievalCache) {
+        this.milvusService = milvusService;
+        this.documentIndexService = documentIndexService;
+        this.retrievalProperties = retrievalProperties;
+        this.retrievalCache = retrievalCache;
+    }
+
+    public List<QueryResult> retrieve(String queryText, float[] queryEmbedding, SearchFilter filter,
+            Map<String, Object> searchParams) {
+        return retrievalCache.get(queryText, queryEmbedding, filter, searchParams,
+                () -> search(queryText, new FloatVec(queryEmbedding), filter, searchParams));
+    }
+
+    private List<QueryResult> search(String queryText, FloatVec queryVector, SearchFilter filter,
+            Map<String, Object> searchParams) {
+        TwoStage twoStage = retrievalProperties.getTwoStage();
+        // A request that already names its files is as narrow as stage one could make it
+        if (twoStage.isEnabled() && !filter.hasFileIds() && documentIndexService.isReady()) {
+            List<DocumentHit> documents = documentIndexService.searchDocuments(queryVector,
+                    twoStage.getDocuments(), filter, searchParams);
+            if (!documents.isEmpty() && documents.get(0).score() >= twoStage.getMinScore()) {
+                List<String> fileIds = documents.stream().map(DocumentHit::fileId).toList();
+                logger.info("Stage one selected {} documents (top score {}).", fileIds.size(),
+                        documents.get(0).score());
+                return milvusService.queryCollection(queryText, queryVector, filter.withFileIds(fileIds),
+                        searchParams);
+            }
+            logger.info("Stage one confidence too low (top score {}), falling back to flat search.",
+                    documents.isEmpty() ? 0 : documents.get(0).score());
+        }
+        return milvusService.queryCollection(queryText, queryVector, filter, searchParams);
+    }
+}
@@ -0,0 +1,275 @@
+package com.javallm.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.javallm.config.ChatConfig.AnswerCache;
+import com.javallm.config.ChatConfig.ChatProperties;
+import com.javallm.services.MilvusService.SearchFilter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+
+/**
+ * Semantic cache of final chat answers. A question whose embedding is close
+ * enough to a previously answered one (within the same retrieval scope) gets
+ * the stored answer replayed instead of a new embed + search + generation.
+ * Entries are dropped when any file they were answered from is deleted or
+ * re-ingested, and when a file is written that their search could have
+ * found: an upload may answer a question that had no or worse results
+ * before. Only answers restricted to other files survive that.
+ */
+@Service
+public class SemanticAnswerCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SemanticAnswerCache.class);
+
+    private final ChatProperties chatProperties;
+    private final Counter hits;
+    private final Counter misses;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<Long>> entriesByFile = new HashMap<>();
+    private long nextId;
+    // Bumped by invalidations that could race with an answer being generated
+    private long invalidations;
+
+    public SemanticAnswerCache(ChatProperties chatProperties, MeterRegistry meterRegistry) {
+        this.chatProperties = chatProperties;
+        this.hits = Counter.builder("chat.answer.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("chat.answer.cache").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("chat.answer.cache.size", this, SemanticAnswerCache::size).register(meterRegistry);
+    }
+
+    /**
+     * A cached answer together with the "results" payload it was sent with.
+     */
+    public record CachedAnswer(String answer, List<Map<String, Object>> results) {
+    }
+
+    /**
+     * fileIds are the files the answer cites; searchedFileIds the files its
+     * search was restricted to, or null when it could find any file.
+     */
+    private record Entry(float[] embedding, String scope, CachedAnswer answer, Set<String> fileIds,
+            Set<String> searchedFileIds, long createdAt) {
+
+        boolean couldFind(Set<String> writtenFileIds) {
+            return searchedFileIds == null || writtenFileIds.stream().anyMatch(searchedFileIds::contains);
+        }
+    }
+
+    public boolean isEnabled() {
+        return chatProperties.getAnswerCache().isEnabled();
+    }
+
+    /**
+     * Identifies the retrieval scope of a question; answers are only shared
+     * between questions with the same filters and search params.
+     */
+    public static String scopeKey(SearchFilter filter, Map<String, Object> searchParams) {
+        return String.join("|", sorted(filter.fileIds()), sorted(filter.documentNames()),
+                sorted(filter.contentTypes()), new TreeMap<>(searchParams).toString());
+    }
+
+    private static String sorted(List<String> values) {
+        List<String> copy = values == null ? new ArrayList<>() : new ArrayList<>(values);
+        Collections.sort(copy);
+        return copy.toString();
+    }
+
+    public synchronized long invalidationCount() {
+        return invalidations;
+    }
+
+    public synchronized Optional<CachedAnswer> lookup(float[] queryEmbedding, String scope) {
+        AnswerCache config = chatProperties.getAnswerCache();
+        float[] query = normalize(queryEmbedding);
+        long expiredBefore = System.currentTimeMillis() - config.getTtl().toMillis();
+
+        Long bestId = null;
+        double bestSimilarity = config.getSimilarityThreshold();
+        Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Entry> candidate = iterator.next();
+            Entry entry = candidate.getValue();
+            if (entry.createdAt() < expiredBefore) {
+                iterator.remove();
+                unindex(candidate.getKey(), entry);
+                continue;
+            }
+            if (!entry.scope().equals(scope)) {
+                continue;
+            }
+            double similarity = dot(query, entry.embedding());
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                bestId = candidate.getKey();
+            }
+        }
+
+        if (bestId == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        logger.info("Answer cache hit with similarity {}.", bestSimilarity);
+        // get() refreshes the entry's LRU position
+        return Optional.of(entries.get(bestId).answer());
+    }
+
+    /**
+     * Stores an answer unless an invalidation happened since the lookup that
+     * preceded its generation, in which case it may already be stale.
+     */
+    public synchronized void store(float[] queryEmbedding, String scope, SearchFilter filter, CachedAnswer answer,
+            Set<String> fileIds, long invalidationsAtLookup) {
+        if (invalidations != invalidationsAtLookup || answer.answer().isBlank()) {
+            return;
+        }
+        long id = nextId++;
+        Entry entry = new Entry(normalize(queryEmbedding), scope, answer, Set.copyOf(fileIds),
+                filter.hasFileIds() ? Set.copyOf(filter.fileIds()) : null, System.currentTimeMillis());
+        entries.put(id, entry);
+        for (String fileId : entry.fileIds()) {
+            entriesByFile.computeIfAbsent(fileId, key -> new HashSet<>()).add(id);
+        }
+
+        int maxEntries = chatProperties.getAnswerCache().getMaxEntries();
+        Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            Map.Entry<Long, Entry> eldest = iterator.next();
+            iterator.remove();
+            unindex(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Replays a cached answer as a quick sequence of deltas, split on
+     * whitespace where possible.
+     */
+    public Flux<String> replay(CachedAnswer cached) {
+        int chunkChars = chatProperties.getAnswerCache().getReplayChunkChars();
+        String answer = cached.answer();
+        List<String> pieces = new ArrayList<>();
+        int start = 0;
+        while (start < answer.length()) {
+            int end = Math.min(start + chunkChars, answer.length());
+            if (end < answer.length()) {
+                int lastSpace = answer.lastIndexOf(' ', end);
+                if (lastSpace > start) {
+                    end = lastSpace + 1;
+                }
+            }
+            pieces.add(answer.substring(start, end));
+            start = end;
+        }
+        return Flux.fromIterable(pieces);
+    }
+
+    /**
+     * Any write may make an answer being generated stale, so it is not
+     * stored (see {@link #store}).
+     */
+    @EventListener
+    public synchronized void onEmbeddingsChanged(EmbeddingsChangedEvent event) {
+        invalidations++;
+        if (!event.deleted()) {
+            int dropped = 0;
+            Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Entry> candidate = iterator.next();
+                if (candidate.getValue().couldFind(event.fileIds())) {
+                    iterator.remove();
+                    unindex(candidate.getKey(), candidate.getValue());
+                    dropped++;
+                }
+            }
+            if (dropped > 0) {
+                logger.info("Dropped {} cached answers whose search could find files {}.", dropped,
+                        event.fileIds());
+            }
+        }
+        for (String fileId : event.fileIds()) {
+            Set<Long> ids = entriesByFile.remove(fileId);
+            if (ids == null) {
+                continue;
+            }
+            for (Long id : ids) {
+                Entry entry = entries.remove(id);
+                if (entry != null) {
+                    unindex(id, entry);
+                }
+            }
+            logger.info("Dropped {} cached answers based on file '{}'.", ids.size(), fileId);
+        }
+    }
+
+    /**
+     * Question embeddings of another model are not comparable with new ones.
+     */
+    @EventListener
+    public synchronized void onEmbeddingModelChanged(EmbeddingModelChangedEvent event) {
+        logger.info("Dropped {} cached answers after the embedding model changed.", entries.size());
+        entries.clear();
+        entriesByFile.clear();
+        invalidations++;
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    private void unindex(Long id, Entry entry) {
+        for (String fileId : entry.fileIds()) {
+            Set<Long> ids = entriesByFile.get(fileId);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    entriesByFile.remove(fileId);
+                }
+            }
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = norm == 0 ? 1 : Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+}
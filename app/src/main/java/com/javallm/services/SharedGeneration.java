@@ -0,0 +1,111 @@
+package com.javallm.services;
+
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * The chunk collection's generation as seen by every process writing to it:
+ * the server instances and the command line runners (reindex, bulk import,
+ * migration). MilvusService counts the writes of its own process at once;
+ * this counter in the database (V8) carries the writes of the others, which
+ * then show within about two intervals. Local writes are published at most
+ * once per interval, so storing a chunk costs no database write of its own.
+ */
+@Service
+public class SharedGeneration {
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedGeneration.class);
+
+    private static final long INTERVAL_MS = 1000;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readTemplate;
+    // Set by a local write until it has been published
+    private final AtomicBoolean changed = new AtomicBoolean();
+    private volatile long value;
+    private volatile long readAt;
+    private ScheduledExecutorService publisher;
+
+    public SharedGeneration(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.readTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readTemplate.setReadOnly(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shared-generation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::publish, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishes a pending change before shutting down, so the writes of a
+     * command line run are seen by the servers.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        publisher.shutdown();
+        publisher.awaitTermination(5, TimeUnit.SECONDS);
+        publish();
+    }
+
+    /**
+     * Notes a write of this process, to be published with the next interval.
+     */
+    public void markChanged() {
+        changed.set(true);
+    }
+
+    /**
+     * The shared generation, read from the database at most once per
+     * interval. A failed read keeps the last value.
+     */
+    public long current() {
+        long now = System.currentTimeMillis();
+        if (now - readAt >= INTERVAL_MS) {
+            readAt = now;
+            try {
+                Long read = readTemplate.execute(status -> jdbcTemplate.queryForObject(
+                        "SELECT generation FROM collection_generation WHERE id = 1", new HashMap<>(), Long.class));
+                if (read != null) {
+                    value = read;
+                }
+            } catch (DataAccessException e) {
+                logger.warn("Failed to read the shared collection generation: {}", e.getMessage());
+            }
+        }
+        return value;
+    }
+
+    private void publish() {
+        if (!changed.getAndSet(false)) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                    "UPDATE collection_generation SET generation = generation + 1 WHERE id = 1", new HashMap<>()));
+        } catch (DataAccessException e) {
+            changed.set(true);
+            logger.warn("Failed to publish the collection generation, retrying: {}", e.getMessage());
+        }
+    }
+}
@@ -5,6 +5,9 @@ import org.apache.poi.hwpf.extractor.WordExtractor;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.springframework.stereotype.Service;
 
+import com.javallm.services.ExtractedChunkCache.CachedChunk;
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -19,6 +22,12 @@ public class WordTextExtractorService {
     // Overlap to maintain context between chunks
     private static final int CHUNK_OVERLAP = 200;
 
+    private final ExtractedChunkCache chunkCache;
+
+    public WordTextExtractorService(ExtractedChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+    }
+
     /**
      * A record to hold a chunk of text and its corresponding page/section
      * information.
@@ -32,9 +41,18 @@ public class WordTextExtractorService {
     private record ParagraphContent(String text, int paragraphIndex) {
     }
 
+    /**
+     * Describes how documents are split. Stored chunk positions are only
+     * valid for the settings they were produced with.
+     */
+    public String chunkingParams() {
+        return "word;size=" + CHUNK_SIZE + ";overlap=" + CHUNK_OVERLAP + ";anchors=line";
+    }
+
     /**
      * Extracts text from a Word document (.doc or .docx), then splits it into
-     * overlapping chunks.
+     * overlapping chunks. A document split before with the same settings is
+     * read from the chunk cache.
      *
      * @param inputStream The InputStream of the Word document file.
      * @param filename    The filename to determine the document type (.doc or
@@ -44,6 +62,17 @@ public class WordTextExtractorService {
      * @throws IOException if the document cannot be loaded or read.
      */
     public List<TextChunk> extractAndSplitText(InputStream inputStream, String filename) throws IOException {
+        byte[] document = inputStream.readAllBytes();
+        // The extension picks the parser, so it is part of the key
+        String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase();
+        return chunkCache.computeIfAbsent(document, chunkingParams() + ";" + extension,
+                () -> extractAndSplitText(document, filename),
+                chunk -> new CachedChunk(chunk.content(), chunk.sectionLabel()),
+                cached -> new TextChunk(cached.content(), cached.label()));
+    }
+
+    private List<TextChunk> extractAndSplitText(byte[] document, String filename) throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(document);
         List<ParagraphContent> paragraphContents = new ArrayList<>();
 
         if (filename.toLowerCase().endsWith(".docx")) {
@@ -116,7 +145,8 @@ public class WordTextExtractorService {
 
     /**
      * Splits the text content from all paragraphs into manageable chunks using a
-     * sliding window.
+     * sliding window anchored to paragraph and line starts (see
+     * {@link ChunkWindows}).
      */
     private List<TextChunk> splitTextIntoChunks(List<ParagraphContent> paragraphs) {
         List<TextChunk> chunks = new ArrayList<>();
@@ -135,34 +165,14 @@ public class WordTextExtractorService {
             return chunks;
         }
 
-        int textLength = fullText.length();
-        int start = 0;
-
-        // Use a sliding window to create chunks with overlap.
-        while (start < textLength) {
-            int end = Math.min(start + CHUNK_SIZE, textLength);
-
-            // To avoid cutting words in half, find the last space before the hard limit.
-            if (end < textLength) {
-                int lastSpace = fullText.lastIndexOf(' ', end);
-                if (lastSpace > start) {
-                    end = lastSpace;
-                }
-            }
-
-            String chunkText = fullText.substring(start, end).trim();
+        List<ChunkWindows.Window> windows = ChunkWindows.split(fullText, List.of(), CHUNK_SIZE, CHUNK_OVERLAP);
+        for (ChunkWindows.Window window : windows) {
+            String chunkText = fullText.substring(window.start(), window.end()).trim();
             if (!chunkText.isEmpty()) {
-                String sectionLabel = getSectionLabelForChunk(start, end, paragraphStartIndices, paragraphs.size());
+                String sectionLabel = getSectionLabelForChunk(window.start(), window.end(), paragraphStartIndices,
+                        paragraphs.size());
                 chunks.add(new TextChunk(chunkText, sectionLabel));
             }
-
-            // Move the window forward, subtracting the overlap.
-            start += CHUNK_SIZE - CHUNK_OVERLAP;
-
-            // Ensure we always make forward progress.
-            if (start >= end) {
-                start = end;
-            }
         }
         return chunks;
     }
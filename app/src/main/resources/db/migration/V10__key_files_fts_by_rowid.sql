@@ -0,0 +1,35 @@
+-- Re-keys the file name index of V7 by rowid. Keyed by an UNINDEXED id column, every delete and rename had
+-- to scan the whole index for the file's row.
+
+DROP TRIGGER IF EXISTS files_fts_insert;
+DROP TRIGGER IF EXISTS files_fts_delete;
+DROP TRIGGER IF EXISTS files_fts_update;
+DROP TABLE IF EXISTS files_fts;
+
+-- A stable integer key per file for files_fts to be keyed by; the rowids of files may change on VACUUM.
+CREATE TABLE IF NOT EXISTS file_keys (
+    key INTEGER PRIMARY KEY,
+    file_id TEXT NOT NULL UNIQUE
+);
+INSERT INTO file_keys (file_id) SELECT id FROM files;
+
+CREATE VIRTUAL TABLE IF NOT EXISTS files_fts USING fts5(
+    filename,
+    tokenize = 'unicode61 remove_diacritics 2',
+    prefix = '2 3'
+);
+INSERT INTO files_fts (rowid, filename) SELECT k.key, f.filename FROM files f JOIN file_keys k ON k.file_id = f.id;
+
+CREATE TRIGGER IF NOT EXISTS files_fts_insert AFTER INSERT ON files BEGIN
+    INSERT INTO file_keys (file_id) VALUES (new.id);
+    INSERT INTO files_fts (rowid, filename) VALUES ((SELECT key FROM file_keys WHERE file_id = new.id), new.filename);
+END;
+
+CREATE TRIGGER IF NOT EXISTS files_fts_delete AFTER DELETE ON files BEGIN
+    DELETE FROM files_fts WHERE rowid = (SELECT key FROM file_keys WHERE file_id = old.id);
+    DELETE FROM file_keys WHERE file_id = old.id;
+END;
+
+CREATE TRIGGER IF NOT EXISTS files_fts_update AFTER UPDATE OF filename ON files BEGIN
+    UPDATE files_fts SET filename = new.filename WHERE rowid = (SELECT key FROM file_keys WHERE file_id = new.id);
+END;
@@ -0,0 +1,21 @@
+CREATE TABLE IF NOT EXISTS ingestion_jobs (
+    id TEXT PRIMARY KEY, -- job UUID
+    file_id TEXT NOT NULL, -- UUID of the file being ingested, becomes files.id on success
+    filename TEXT NOT NULL, -- original upload name
+    document_name TEXT NOT NULL, -- unique name stored with the embeddings
+    path TEXT NOT NULL,
+    content_type TEXT NOT NULL,
+    status TEXT NOT NULL, -- QUEUED, RUNNING, COMPLETED, FAILED
+    attempts INTEGER NOT NULL DEFAULT 0,
+    max_attempts INTEGER NOT NULL,
+    lease_owner TEXT, -- token of the worker holding the job
+    lease_expires_at INTEGER, -- epoch millis; an expired RUNNING job is picked up again
+    available_at INTEGER NOT NULL, -- epoch millis; delays retries
+    processed_chunks INTEGER NOT NULL DEFAULT 0,
+    total_chunks INTEGER,
+    last_error TEXT,
+    created_at INTEGER NOT NULL,
+    updated_at INTEGER NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_ingestion_jobs_status_available ON ingestion_jobs (status, available_at);
@@ -0,0 +1,3 @@
+-- processed_chunks doubles as the resume checkpoint: chunks are stored in order, so it counts the
+-- chunks already in Milvus. It is only valid for the chunking settings recorded here.
+ALTER TABLE ingestion_jobs ADD COLUMN chunking_hash TEXT;
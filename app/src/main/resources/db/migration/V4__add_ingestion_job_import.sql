@@ -0,0 +1,6 @@
+-- Jobs created by a bulk import share its id; single uploads have none
+ALTER TABLE ingestion_jobs ADD COLUMN import_id TEXT;
+-- Lower values are claimed first, so interactive uploads are not stuck behind bulk imports
+ALTER TABLE ingestion_jobs ADD COLUMN priority INTEGER NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS idx_ingestion_jobs_import_id ON ingestion_jobs (import_id);
@@ -0,0 +1,2 @@
+-- Set for uploads that replace an existing file; their chunks are diffed against the stored ones
+ALTER TABLE ingestion_jobs ADD COLUMN revision INTEGER NOT NULL DEFAULT 0;
@@ -0,0 +1,4 @@
+-- Keyset pagination of the file listing: each sort key is paired with the id as a tie-breaker.
+-- uploaded_at is nullable, so it is indexed (and queried) as IFNULL(uploaded_at, '').
+CREATE INDEX IF NOT EXISTS idx_files_uploaded_at_id ON files (IFNULL(uploaded_at, ''), id);
+CREATE INDEX IF NOT EXISTS idx_files_filename_id ON files (filename, id);
@@ -0,0 +1,64 @@
+-- Keyword search (FTS5, BM25 ranking) over chunk text and file names.
+
+-- The text of the chunk collection, keyed by the Milvus chunk id. KeywordIndexService keeps it in step with
+-- writes to the serving collection; ./gradlew runKeywordIndex rebuilds it from there.
+CREATE TABLE IF NOT EXISTS chunks (
+    id INTEGER PRIMARY KEY,
+    file_id TEXT NOT NULL,
+    chunk_index INTEGER NOT NULL,
+    document_name TEXT,
+    pages TEXT,
+    text TEXT NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_chunks_file_id ON chunks (file_id);
+
+-- External content: the index refers to the rows of chunks instead of storing the text a second time.
+-- The prefix indexes answer 2 and 3 character prefix queries (e.g. inv*) without scanning the term list.
+CREATE VIRTUAL TABLE IF NOT EXISTS chunks_fts USING fts5(
+    document_name,
+    text,
+    content = 'chunks',
+    content_rowid = 'id',
+    tokenize = 'unicode61 remove_diacritics 2',
+    prefix = '2 3'
+);
+-- ORDER BY rank: BM25 with a match in the document name worth twice one in the text
+INSERT INTO chunks_fts (chunks_fts, rank) VALUES ('rank', 'bm25(2.0, 1.0)');
+
+CREATE TRIGGER IF NOT EXISTS chunks_fts_insert AFTER INSERT ON chunks BEGIN
+    INSERT INTO chunks_fts (rowid, document_name, text) VALUES (new.id, new.document_name, new.text);
+END;
+
+CREATE TRIGGER IF NOT EXISTS chunks_fts_delete AFTER DELETE ON chunks BEGIN
+    INSERT INTO chunks_fts (chunks_fts, rowid, document_name, text)
+    VALUES ('delete', old.id, old.document_name, old.text);
+END;
+
+CREATE TRIGGER IF NOT EXISTS chunks_fts_update AFTER UPDATE OF document_name, text ON chunks BEGIN
+    INSERT INTO chunks_fts (chunks_fts, rowid, document_name, text)
+    VALUES ('delete', old.id, old.document_name, old.text);
+    INSERT INTO chunks_fts (rowid, document_name, text) VALUES (new.id, new.document_name, new.text);
+END;
+
+-- File names, kept in step with files by triggers. files has no INTEGER PRIMARY KEY, so its rowids may change
+-- on VACUUM and cannot back an external content index; names are short, the index keeps its own copy.
+CREATE VIRTUAL TABLE IF NOT EXISTS files_fts USING fts5(
+    filename,
+    id UNINDEXED,
+    tokenize = 'unicode61 remove_diacritics 2',
+    prefix = '2 3'
+);
+INSERT INTO files_fts (filename, id) SELECT filename, id FROM files;
+
+CREATE TRIGGER IF NOT EXISTS files_fts_insert AFTER INSERT ON files BEGIN
+    INSERT INTO files_fts (filename, id) VALUES (new.filename, new.id);
+END;
+
+CREATE TRIGGER IF NOT EXISTS files_fts_delete AFTER DELETE ON files BEGIN
+    DELETE FROM files_fts WHERE id = old.id;
+END;
+
+CREATE TRIGGER IF NOT EXISTS files_fts_update AFTER UPDATE OF filename ON files BEGIN
+    DELETE FROM files_fts WHERE id = old.id;
+    INSERT INTO files_fts (filename, id) VALUES (new.filename, new.id);
+END;
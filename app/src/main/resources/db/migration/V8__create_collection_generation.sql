@@ -0,0 +1,7 @@
+-- A counter bumped after writes to the chunk collection by any process (server instances, command line runners),
+-- so caches keyed by it in every instance notice writes made elsewhere. See SharedGeneration.
+CREATE TABLE IF NOT EXISTS collection_generation (
+    id INTEGER PRIMARY KEY CHECK (id = 1),
+    generation INTEGER NOT NULL
+);
+INSERT OR IGNORE INTO collection_generation (id, generation) VALUES (1, 0);
@@ -0,0 +1,2 @@
+-- Finds the open jobs of a file, e.g. to cancel them when the file is deleted
+CREATE INDEX IF NOT EXISTS idx_ingestion_jobs_file_status ON ingestion_jobs (file_id, status);
@@ -0,0 +1,105 @@
+package com.javallm.controllers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Minimal OpenAI-compatible chat completions endpoint for load tests and local
+ * runs without a model server. It lives with the tests, so it is never part
+ * of the application jar. Add a chat backend with base-url
+ * http://localhost:8081/fake-openai and start with ./gradlew runWithFakeLlm.
+ * Latency is configurable so routing and failover can be exercised.
+ */
+@RestController
+@Profile("fake-llm")
+@RequestMapping("/fake-openai/v1")
+public class FakeOpenAiController {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${fake-llm.first-token-delay:200ms}")
+    private Duration firstTokenDelay;
+    @Value("${fake-llm.token-delay:20ms}")
+    private Duration tokenDelay;
+    @Value("${fake-llm.tokens:50}")
+    private int tokenCount;
+
+    public FakeOpenAiController(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping(value = "/chat/completions", produces = { MediaType.TEXT_EVENT_STREAM_VALUE,
+            MediaType.APPLICATION_JSON_VALUE })
+    public Object completions(@RequestBody Map<String, Object> request) {
+        String id = "chatcmpl-" + UUID.randomUUID();
+        String model = String.valueOf(request.getOrDefault("model", "fake"));
+        List<String> tokens = tokens();
+
+        if (!Boolean.TRUE.equals(request.get("stream"))) {
+            Map<String, Object> response = Map.of(
+                    "id", id,
+                    "object", "chat.completion",
+                    "created", System.currentTimeMillis() / 1000,
+                    "model", model,
+                    "choices", List.of(Map.of(
+                            "index", 0,
+                            "message", Map.of("role", "assistant", "content", String.join("", tokens)),
+                            "finish_reason", "stop")),
+                    "usage", Map.of("prompt_tokens", 0, "completion_tokens", tokens.size(),
+                            "total_tokens", tokens.size()));
+            return Mono.just(response).delayElement(firstTokenDelay.plus(tokenDelay.multipliedBy(tokens.size())));
+        }
+
+        Flux<ServerSentEvent<String>> deltas = Flux.fromIterable(tokens)
+                .delayElements(tokenDelay)
+                .map(token -> chunk(id, model, Map.of("content", token), null));
+        return Flux.just(chunk(id, model, Map.of("role", "assistant", "content", ""), null))
+                .delayElements(firstTokenDelay)
+                .concatWith(deltas)
+                .concatWith(Flux.just(chunk(id, model, Map.of(), "stop"),
+                        ServerSentEvent.builder("[DONE]").build()));
+    }
+
+    private List<String> tokens() {
+        return IntStream.range(0, tokenCount)
+                .mapToObj(i -> (i == 0 ? "Fake" : " token" + i))
+                .toList();
+    }
+
+    private ServerSentEvent<String> chunk(String id, String model, Map<String, Object> delta, String finishReason) {
+        Map<String, Object> choice = new HashMap<>();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        choice.put("finish_reason", finishReason);
+        Map<String, Object> chunk = Map.of(
+                "id", id,
+                "object", "chat.completion.chunk",
+                "created", System.currentTimeMillis() / 1000,
+                "model", model,
+                "choices", List.of(choice));
+        try {
+            return ServerSentEvent.builder(objectMapper.writeValueAsString(chunk)).build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
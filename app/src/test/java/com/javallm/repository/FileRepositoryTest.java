@@ -0,0 +1,81 @@
+package com.javallm.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * Runs the file name search as written on the repository against a database
+ * migrated like the application's, so the index triggers are exercised too.
+ */
+class FileRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private String findByFilenameMatch;
+
+    @BeforeEach
+    void migrate() throws NoSuchMethodException {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:sqlite:" + directory.resolve("test.db"));
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration").load().migrate();
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        findByFilenameMatch = FileRepository.class
+                .getMethod("findByFilenameMatch", String.class, int.class)
+                .getAnnotation(Query.class)
+                .value();
+    }
+
+    @Test
+    void newFilesAreFoundByName() {
+        insertFile("a", "invoice 2024.pdf");
+        insertFile("b", "report.pdf");
+
+        assertEquals(List.of("a"), search("\"invoice\""));
+        assertEquals(List.of("b"), search("\"rep\"*"));
+    }
+
+    @Test
+    void renamedFilesAreFoundByTheirNewNameOnly() {
+        insertFile("a", "draft.pdf");
+
+        jdbcTemplate.update("UPDATE files SET filename = 'contract.pdf' WHERE id = 'a'", Map.of());
+
+        assertEquals(List.of(), search("\"draft\""));
+        assertEquals(List.of("a"), search("\"contract\""));
+    }
+
+    @Test
+    void deletedFilesAreNotFound() {
+        insertFile("a", "invoice march.pdf");
+        insertFile("b", "invoice april.pdf");
+
+        jdbcTemplate.update("DELETE FROM files WHERE id = 'a'", Map.of());
+
+        assertEquals(List.of("b"), search("\"invoice\""));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM file_keys", Map.of(), Integer.class));
+    }
+
+    private void insertFile(String id, String filename) {
+        jdbcTemplate.update("INSERT INTO files (id, filename, path, content_type) "
+                + "VALUES (:id, :filename, '/tmp/file', 'application/pdf')",
+                Map.of("id", id, "filename", filename));
+    }
+
+    private List<String> search(String match) {
+        return jdbcTemplate.query(findByFilenameMatch, Map.of("match", match, "limit", 10),
+                (rs, rowNum) -> rs.getString("id"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.javallm.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * Runs the claim query as written on the repository against a database
+ * migrated like the application's.
+ */
+class IngestionJobRepositoryTest {
+
+    private static final long NOW = 1_000_000;
+    private static final long LEASE = 60_000;
+
+    @TempDir
+    Path directory;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private String claimNext;
+
+    @BeforeEach
+    void migrate() throws NoSuchMethodException {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:sqlite:" + directory.resolve("test.db"));
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration").load().migrate();
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        claimNext = IngestionJobRepository.class
+                .getMethod("claimNext", String.class, long.class, long.class)
+                .getAnnotation(Query.class)
+                .value();
+    }
+
+    @Test
+    void revisionsOfAFileRunOneAfterTheOther() {
+        insertJob("first", "file", 1);
+        insertJob("second", "file", 2);
+
+        assertEquals("first", claim("worker-1", NOW));
+        // Due, but the first revision holds the file
+        assertNull(claim("worker-2", NOW + 1));
+
+        complete("first");
+        assertEquals("second", claim("worker-2", NOW + 2));
+    }
+
+    @Test
+    void otherFilesAreClaimedMeanwhile() {
+        insertJob("first", "file", 1);
+        insertJob("second", "file", 2);
+        insertJob("other", "other-file", 3);
+
+        assertEquals("first", claim("worker-1", NOW));
+        assertEquals("other", claim("worker-2", NOW + 1));
+        assertNull(claim("worker-3", NOW + 2));
+    }
+
+    @Test
+    void expiredLeaseNoLongerHoldsTheFile() {
+        insertJob("first", "file", 1);
+        insertJob("second", "file", 2);
+
+        assertEquals("first", claim("worker-1", NOW));
+        // The first job is older, so it is picked up again before the second one
+        assertEquals("first", claim("worker-2", NOW + LEASE + 1));
+        assertNull(claim("worker-3", NOW + LEASE + 2));
+    }
+
+    private void insertJob(String id, String fileId, long createdAt) {
+        jdbcTemplate.update("INSERT INTO ingestion_jobs (id, file_id, filename, document_name, path, content_type, "
+                + "status, max_attempts, available_at, created_at, updated_at) VALUES (:id, :fileId, 'a.pdf', "
+                + "'a.pdf', '/tmp/a.pdf', 'application/pdf', 'QUEUED', 3, 0, :createdAt, :createdAt)",
+                Map.of("id", id, "fileId", fileId, "createdAt", createdAt));
+    }
+
+    /**
+     * The id of the job claimed, or null if none was.
+     */
+    private String claim(String owner, long now) {
+        int claimed = jdbcTemplate.update(claimNext, new MapSqlParameterSource()
+                .addValue("owner", owner)
+                .addValue("leaseUntil", now + LEASE)
+                .addValue("now", now));
+        if (claimed == 0) {
+            return null;
+        }
+        return jdbcTemplate.queryForObject("SELECT id FROM ingestion_jobs WHERE lease_owner = :owner",
+                Map.of("owner", owner), String.class);
+    }
+
+    private void complete(String id) {
+        jdbcTemplate.update("UPDATE ingestion_jobs SET status = 'COMPLETED', lease_owner = NULL, "
+                + "lease_expires_at = NULL WHERE id = :id", Map.of("id", id));
+    }
+}
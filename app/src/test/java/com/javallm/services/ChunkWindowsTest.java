@@ -0,0 +1,97 @@
+package com.javallm.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.javallm.services.ChunkWindows.Window;
+
+class ChunkWindowsTest {
+
+    private static final int SIZE = 700;
+    private static final int OVERLAP = 200;
+
+    @Test
+    void windowsCoverTheTextWithinTheSizeLimit() {
+        String text = lines(0, 60);
+
+        List<Window> windows = ChunkWindows.split(text, List.of(), SIZE, OVERLAP);
+
+        assertEquals(0, windows.get(0).start());
+        assertEquals(text.length(), windows.get(windows.size() - 1).end());
+        for (int i = 0; i < windows.size(); i++) {
+            assertTrue(windows.get(i).end() - windows.get(i).start() <= SIZE);
+            if (i > 0) {
+                // Consecutive windows overlap, or at least touch
+                assertTrue(windows.get(i).start() <= windows.get(i - 1).end());
+            }
+        }
+    }
+
+    @Test
+    void windowsStartAtLineStarts() {
+        String text = lines(0, 60);
+
+        for (Window window : ChunkWindows.split(text, List.of(), SIZE, OVERLAP)) {
+            assertTrue(window.start() == 0 || text.charAt(window.start() - 1) == '\n');
+        }
+    }
+
+    @Test
+    void anInsertionOnlyShiftsTheWindowsAroundIt() {
+        String original = lines(0, 200);
+        int edit = original.indexOf("line 20 ");
+        String revised = original.substring(0, edit) + "x" + original.substring(edit);
+
+        List<String> before = texts(original, ChunkWindows.split(original, List.of(), SIZE, OVERLAP));
+        List<String> after = texts(revised, ChunkWindows.split(revised, List.of(), SIZE, OVERLAP));
+
+        List<String> changed = after.stream().filter(chunk -> !before.contains(chunk)).toList();
+        assertTrue(changed.size() <= 3, "Changed chunks: " + changed.size());
+        assertEquals(before.get(before.size() - 1), after.get(after.size() - 1));
+    }
+
+    @Test
+    void windowsDoNotCrossSectionStarts() {
+        String first = lines(0, 5);
+        String text = first + lines(5, 10);
+
+        List<Window> windows = ChunkWindows.split(text, List.of(first.length()), SIZE, OVERLAP);
+
+        assertEquals(2, windows.size());
+        assertEquals(new Window(0, first.length()), windows.get(0));
+        assertEquals(new Window(first.length(), text.length()), windows.get(1));
+    }
+
+    @Test
+    void textWithoutLineBreaksStillMovesOn() {
+        String text = "word ".repeat(1000);
+
+        List<Window> windows = ChunkWindows.split(text, List.of(), SIZE, OVERLAP);
+
+        assertEquals(text.length(), windows.get(windows.size() - 1).end());
+        for (int i = 1; i < windows.size(); i++) {
+            assertTrue(windows.get(i).start() > windows.get(i - 1).start());
+        }
+    }
+
+    @Test
+    void emptyTextHasNoWindows() {
+        assertTrue(ChunkWindows.split("", List.of(), SIZE, OVERLAP).isEmpty());
+    }
+
+    private static String lines(int from, int to) {
+        return IntStream.range(from, to)
+                .mapToObj(i -> "line " + i + " of the document, long enough to wrap a few words around\n")
+                .collect(Collectors.joining());
+    }
+
+    private static List<String> texts(String text, List<Window> windows) {
+        return windows.stream().map(window -> text.substring(window.start(), window.end())).toList();
+    }
+}
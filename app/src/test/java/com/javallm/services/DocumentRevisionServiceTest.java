@@ -0,0 +1,138 @@
+package com.javallm.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.javallm.services.DocumentRevisionService.Diff;
+import com.javallm.services.IngestionService.ExtractedChunk;
+import com.javallm.services.MilvusService.StoredChunk;
+
+class DocumentRevisionServiceTest {
+
+    private static final String FILE_ID = "file-1";
+    private static final String DOCUMENT = "report.pdf";
+    private static final String PDF = "application/pdf";
+    private static final long UPLOADED_AT = 1_700_000_000_000L;
+
+    @Test
+    void unchangedRevisionLeavesEveryChunkAlone() {
+        List<StoredChunk> stored = List.of(stored(0, "alpha", "1"), stored(1, "beta", "1-2"));
+
+        Diff diff = DocumentRevisionService.diff(List.of(chunk("alpha", "1"), chunk("beta", "1-2")), stored,
+                DOCUMENT, FILE_ID, PDF);
+
+        assertEquals(2, diff.unchanged());
+        assertTrue(diff.reused().isEmpty());
+        assertTrue(diff.toEmbed().isEmpty());
+        assertTrue(diff.removed().isEmpty());
+        assertEquals(UPLOADED_AT, diff.uploadedAt());
+        assertArrayEquals(vector(0), diff.vectors()[0]);
+        assertArrayEquals(vector(1), diff.vectors()[1]);
+    }
+
+    @Test
+    void onlyNewTextIsEmbedded() {
+        List<StoredChunk> stored = List.of(stored(0, "alpha", "1"), stored(1, "beta", "1"), stored(2, "gamma", "2"));
+
+        Diff diff = DocumentRevisionService.diff(
+                List.of(chunk("alpha", "1"), chunk("beta, edited", "1"), chunk("gamma", "2")), stored, DOCUMENT,
+                FILE_ID, PDF);
+
+        assertEquals(2, diff.unchanged());
+        assertEquals(List.of(1), diff.toEmbed());
+        assertNull(diff.vectors()[1]);
+        assertTrue(diff.reused().isEmpty());
+        assertTrue(diff.removed().isEmpty());
+    }
+
+    @Test
+    void movedTextIsRewrittenWithItsStoredVector() {
+        // A chunk inserted at the front moves the others one position on
+        List<StoredChunk> stored = List.of(stored(0, "alpha", "1"), stored(1, "beta", "2"));
+
+        Diff diff = DocumentRevisionService.diff(List.of(chunk("new", "1"), chunk("alpha", "1"), chunk("beta", "2")),
+                stored, DOCUMENT, FILE_ID, PDF);
+
+        assertEquals(0, diff.unchanged());
+        assertEquals(List.of(0), diff.toEmbed());
+        assertEquals(List.of(
+                MilvusService.chunkRow(FILE_ID, 1, PDF, UPLOADED_AT, "alpha", DOCUMENT, "1", vector(0)),
+                MilvusService.chunkRow(FILE_ID, 2, PDF, UPLOADED_AT, "beta", DOCUMENT, "2", vector(1))),
+                diff.reused());
+        assertArrayEquals(vector(0), diff.vectors()[1]);
+        assertArrayEquals(vector(1), diff.vectors()[2]);
+        assertTrue(diff.removed().isEmpty());
+    }
+
+    @Test
+    void changedPageLabelOrNameRewritesWithoutEmbedding() {
+        List<StoredChunk> stored = List.of(stored(0, "alpha", "1"), stored(1, "beta", "1"));
+
+        Diff relabelled = DocumentRevisionService.diff(List.of(chunk("alpha", "1"), chunk("beta", "2")), stored,
+                DOCUMENT, FILE_ID, PDF);
+        Diff renamed = DocumentRevisionService.diff(List.of(chunk("alpha", "1"), chunk("beta", "1")), stored,
+                "renamed.pdf", FILE_ID, PDF);
+
+        assertEquals(1, relabelled.unchanged());
+        assertEquals(1, relabelled.reused().size());
+        assertTrue(relabelled.toEmbed().isEmpty());
+        assertEquals(0, renamed.unchanged());
+        assertEquals(2, renamed.reused().size());
+        assertTrue(renamed.toEmbed().isEmpty());
+    }
+
+    @Test
+    void chunksPastTheEndAreRemoved() {
+        List<StoredChunk> stored = List.of(stored(0, "alpha", "1"), stored(1, "beta", "1"), stored(2, "gamma", "2"));
+
+        Diff diff = DocumentRevisionService.diff(List.of(chunk("alpha", "1")), stored, DOCUMENT, FILE_ID, PDF);
+
+        assertEquals(1, diff.unchanged());
+        assertEquals(2, diff.removed().size());
+        assertTrue(diff.removed().containsAll(
+                List.of(MilvusService.chunkId(FILE_ID, 1), MilvusService.chunkId(FILE_ID, 2))));
+    }
+
+    @Test
+    void firstRevisionOfAnEmptyFileEmbedsEverything() {
+        long before = System.currentTimeMillis();
+
+        Diff diff = DocumentRevisionService.diff(List.of(chunk("alpha", "1"), chunk("beta", "1")), List.of(),
+                DOCUMENT, FILE_ID, PDF);
+
+        assertEquals(List.of(0, 1), diff.toEmbed());
+        assertEquals(0, diff.unchanged());
+        assertTrue(diff.uploadedAt() >= before);
+    }
+
+    @Test
+    void repeatedTextIsEmbeddedOnce() {
+        List<ExtractedChunk> chunks = IntStream.range(0, 3).mapToObj(i -> chunk("same", "1")).toList();
+
+        Diff diff = DocumentRevisionService.diff(chunks, List.of(stored(0, "same", "1")), DOCUMENT, FILE_ID, PDF);
+
+        assertEquals(1, diff.unchanged());
+        assertEquals(2, diff.reused().size());
+        assertTrue(diff.toEmbed().isEmpty());
+    }
+
+    private static ExtractedChunk chunk(String text, String label) {
+        return new ExtractedChunk(text, label);
+    }
+
+    private static StoredChunk stored(int index, String text, String pages) {
+        return new StoredChunk(MilvusService.chunkId(FILE_ID, index), index, text, DOCUMENT, pages, PDF, UPLOADED_AT,
+                vector(index));
+    }
+
+    private static float[] vector(int index) {
+        return new float[] { index, index + 0.5f };
+    }
+}
@@ -0,0 +1,67 @@
+package com.javallm.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class KeywordIndexServiceTest {
+
+    @Test
+    void wordsAreQuotedAndAllRequired() {
+        assertEquals("\"invoice\" \"total\"", KeywordIndexService.matchExpression("invoice  total"));
+    }
+
+    @Test
+    void quotedTextIsAPhrase() {
+        assertEquals("\"net amount\" \"due\"", KeywordIndexService.matchExpression("\"net amount\" due"));
+    }
+
+    @Test
+    void trailingStarMakesAPrefixQuery() {
+        assertEquals("\"inv\"* \"2024\"", KeywordIndexService.matchExpression("inv** 2024"));
+    }
+
+    @Test
+    void operatorsAndColumnFiltersAreSearchedAsText() {
+        assertEquals("\"cats\" \"OR\" \"NOT\" \"dogs\"", KeywordIndexService.matchExpression("cats OR NOT dogs"));
+        assertEquals("\"text:secret\"", KeywordIndexService.matchExpression("text:secret"));
+        assertEquals("\"(a\" \"b)\"", KeywordIndexService.matchExpression("(a b)"));
+    }
+
+    @Test
+    void quotesInsideATermAreEscaped() {
+        assertEquals("\"say\"\"hi\"", KeywordIndexService.matchExpression("say\"hi"));
+    }
+
+    @Test
+    void punctuationAloneIsSkipped() {
+        assertEquals("\"invoice\"", KeywordIndexService.matchExpression("-- invoice !! * \"...\""));
+    }
+
+    @Test
+    void lettersOutsideAsciiCount() {
+        assertEquals("\"Größe\" \"東京\"", KeywordIndexService.matchExpression("Größe 東京"));
+    }
+
+    @Test
+    void queryWithoutWordsIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> KeywordIndexService.matchExpression(null));
+        assertThrows(IllegalArgumentException.class, () -> KeywordIndexService.matchExpression(""));
+        assertThrows(IllegalArgumentException.class, () -> KeywordIndexService.matchExpression("   "));
+        assertThrows(IllegalArgumentException.class, () -> KeywordIndexService.matchExpression("?! -- \"\""));
+    }
+
+    @Test
+    void tooManyTermsAreRejected() {
+        assertEquals(32, KeywordIndexService.matchExpression(words(32)).split(" ").length);
+        assertThrows(IllegalArgumentException.class, () -> KeywordIndexService.matchExpression(words(33)));
+    }
+
+    private static String words(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "w" + i).collect(Collectors.joining(" "));
+    }
+}
@@ -0,0 +1,191 @@
+package com.javallm.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import com.javallm.config.ChatConfig.Routing;
+import com.javallm.services.LlmRouter.Endpoint;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+class LlmRouterTest {
+
+    private static final Duration FIRST_TOKEN_TIMEOUT = Duration.ofMillis(200);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void backendSilentPastTheFirstTokenTimeoutFailsOverToTheNext() {
+        FakeChatModel silent = new FakeChatModel(Flux::never);
+        FakeChatModel answering = new FakeChatModel(() -> tokens("Hello", " there"));
+        LlmRouter router = router(silent, answering);
+
+        assertEquals(List.of("Hello", " there"), router.stream(null, "question").collectList().block());
+        assertEquals(1, silent.calls.get());
+        assertEquals(1, answering.calls.get());
+        assertEquals(1.0, meterRegistry.counter("llm.backend.failover").count());
+
+        // The silent backend is on cooldown, so the next request does not wait for it again
+        assertEquals(List.of("Hello", " there"), router.stream(null, "question").collectList().block());
+        assertEquals(1, silent.calls.get());
+    }
+
+    @Test
+    void backendFailingBeforeTheFirstTokenFailsOverToTheNext() {
+        FakeChatModel failing = new FakeChatModel(() -> Flux.error(new IllegalStateException("down")));
+        FakeChatModel answering = new FakeChatModel(() -> tokens("ok"));
+        LlmRouter router = router(failing, answering);
+
+        assertEquals(List.of("ok"), router.stream("system", "question").collectList().block());
+        assertEquals(1, failing.calls.get());
+    }
+
+    @Test
+    void failureAfterTheFirstTokenIsNotRetriedElsewhere() {
+        FakeChatModel breaking = new FakeChatModel(
+                () -> tokens("partial").concatWith(Flux.error(new IllegalStateException("connection reset"))));
+        FakeChatModel answering = new FakeChatModel(() -> tokens("ok"));
+        LlmRouter router = router(breaking, answering);
+
+        assertThrows(IllegalStateException.class, () -> router.stream(null, "question").blockLast());
+        assertEquals(0, answering.calls.get());
+    }
+
+    @Test
+    void lastBackendTimingOutFailsTheRequest() {
+        LlmRouter router = router(new FakeChatModel(Flux::never));
+
+        assertThrows(RuntimeException.class, () -> router.stream(null, "question").blockLast());
+    }
+
+    @Test
+    void requestsGoToTheBackendWithTheLowerMeasuredTtft() {
+        FakeChatModel slow = new FakeChatModel(() -> tokens("slow").delaySubscription(Duration.ofMillis(60)));
+        FakeChatModel fast = new FakeChatModel(() -> tokens("fast").delaySubscription(Duration.ofMillis(5)));
+        LlmRouter router = router(slow, fast);
+
+        // Untried backends cost nothing, so each is measured once
+        router.stream(null, "question").blockLast();
+        router.stream(null, "question").blockLast();
+        assertEquals(1, slow.calls.get());
+        assertEquals(1, fast.calls.get());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(List.of("fast"), router.stream(null, "question").collectList().block());
+        }
+        assertEquals(1, slow.calls.get());
+        assertEquals(6, fast.calls.get());
+    }
+
+    @Test
+    void requestsInFlightMakeABackendMoreExpensive() {
+        // The open stream emits its first token and then holds on to the backend
+        AtomicInteger opened = new AtomicInteger();
+        FakeChatModel quick = new FakeChatModel(() -> opened.getAndIncrement() < 1
+                ? tokens("quick").delaySubscription(Duration.ofMillis(30))
+                : tokens("open").delaySubscription(Duration.ofMillis(30)).concatWith(Flux.never()));
+        FakeChatModel steady = new FakeChatModel(() -> tokens("steady").delaySubscription(Duration.ofMillis(45)));
+        LlmRouter router = router(quick, steady);
+
+        router.stream(null, "question").blockLast();
+        router.stream(null, "question").blockLast();
+        assertEquals(1, quick.calls.get());
+        assertEquals(1, steady.calls.get());
+
+        // With no load the quicker backend wins
+        Disposable open = router.stream(null, "question").subscribe();
+        try {
+            assertEquals(1.0, inflight("backend-0"));
+            // One generation in flight doubles its cost, past the other one's
+            assertEquals(List.of("steady"), router.stream(null, "question").collectList().block());
+            assertEquals(2, steady.calls.get());
+        } finally {
+            open.dispose();
+        }
+    }
+
+    @Test
+    void backendAtItsConcurrencyLimitIsSkipped() {
+        FakeChatModel busy = new FakeChatModel(() -> tokens("busy").concatWith(Flux.never()));
+        FakeChatModel other = new FakeChatModel(() -> tokens("other"));
+        LlmRouter router = new LlmRouter(routing(), List.of(
+                new Endpoint("busy", ChatClient.create(busy), 1),
+                new Endpoint("other", ChatClient.create(other), 1)), meterRegistry);
+
+        Disposable open = router.stream(null, "question").subscribe();
+        try {
+            assertEquals(1.0, inflight("busy"));
+            assertEquals(List.of("other"), router.stream(null, "question").collectList().block());
+        } finally {
+            open.dispose();
+        }
+    }
+
+    private LlmRouter router(FakeChatModel... models) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (int i = 0; i < models.length; i++) {
+            endpoints.add(new Endpoint("backend-" + i, ChatClient.create(models[i]), Integer.MAX_VALUE));
+        }
+        return new LlmRouter(routing(), endpoints, meterRegistry);
+    }
+
+    private double inflight(String backend) {
+        return meterRegistry.get("llm.backend.inflight").tag("backend", backend).gauge().value();
+    }
+
+    private static Routing routing() {
+        Routing routing = new Routing();
+        routing.setFirstTokenTimeout(FIRST_TOKEN_TIMEOUT);
+        routing.setTtftSmoothing(1.0);
+        routing.setFailureCooldown(Duration.ofMinutes(1));
+        return routing;
+    }
+
+    private static Flux<ChatResponse> tokens(String... tokens) {
+        return Flux.fromArray(tokens)
+                .map(token -> new ChatResponse(List.of(new Generation(new AssistantMessage(token)))));
+    }
+
+    /**
+     * Streams whatever the supplier returns for each request and counts the
+     * requests.
+     */
+    private static final class FakeChatModel implements ChatModel {
+
+        final AtomicInteger calls = new AtomicInteger();
+        private final Supplier<Flux<ChatResponse>> responses;
+
+        FakeChatModel(Supplier<Flux<ChatResponse>> responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.defer(() -> {
+                calls.incrementAndGet();
+                return responses.get();
+            });
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.javallm.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.javallm.services.MilvusService.SearchFilter;
+
+class MilvusServiceTest {
+
+    @Test
+    void documentNamesMatchAsPrefixesWithTheirWildcardsEscaped() {
+        Map<String, Object> values = new HashMap<>();
+
+        String expression = new SearchFilter(null, List.of("a_b", "100%", "c\\d"), null).toExpression(values);
+
+        assertEquals("(document_name like {document_name_0} or document_name like {document_name_1} "
+                + "or document_name like {document_name_2})", expression);
+        assertEquals("a\\_b%", values.get("document_name_0"));
+        assertEquals("100\\%%", values.get("document_name_1"));
+        assertEquals("c\\\\d%", values.get("document_name_2"));
+    }
+
+    @Test
+    void emptyFilterHasNoExpression() {
+        Map<String, Object> values = new HashMap<>();
+
+        assertEquals("", SearchFilter.NONE.toExpression(values));
+        assertEquals(Map.of(), values);
+    }
+}